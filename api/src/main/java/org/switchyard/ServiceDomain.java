@@ -91,6 +91,13 @@ public interface ServiceDomain {
             ExchangeHandler handler,
             ServiceInterface metadata);
 
+    /**
+     * Unregister a service from the domain.  Exchanges already created for
+     * the service are still delivered to it.
+     * @param service the reference returned when registering the service
+     */
+    void unregisterService(ServiceReference service);
+
     /**
      * Returns a references to the transformer registry for this domain.
      * @return transformer registry instance
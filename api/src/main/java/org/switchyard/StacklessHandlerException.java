@@ -0,0 +1,70 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard;
+
+/**
+ * A {@link HandlerException} which does not capture a stack trace.
+ * <p/>
+ * Filling in the stack trace is usually the most expensive part of raising a
+ * fault.  For expected business faults (e.g. validation failures) the stack
+ * trace carries no useful information, so handlers can throw this type (or a
+ * subclass of it) instead.  Because instances hold no per-invocation state
+ * they can also be created once and thrown repeatedly, e.g.
+ * <pre>
+ * private static final StacklessHandlerException INVALID_ORDER =
+ *     new StacklessHandlerException("Invalid order.");
+ * </pre>
+ * Shared instances should not be given a cause or suppressed exceptions after
+ * construction.
+ */
+public class StacklessHandlerException extends HandlerException {
+
+    /**
+     * Generated serial version UID.
+     */
+    private static final long serialVersionUID = 3496744307917410362L;
+
+    /**
+     * Create a new StacklessHandlerException with the specified error message.
+     * @param message error text
+     */
+    public StacklessHandlerException(final String message) {
+        super(message);
+    }
+
+    /**
+     * Create a new StacklessHandlerException with the specified error message
+     * and cause.
+     * @param message error text
+     * @param cause error causing the handler to fail processing
+     */
+    public StacklessHandlerException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+
+    /**
+     * Skips capturing the stack trace.
+     * @return this exception
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -19,20 +19,34 @@
 
 package org.switchyard.metadata;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Base implementation of ServiceInterface.  Specific interface types such as
  * Java and WSDL will extend this class or provide their own implementation of
  * ServiceInterface.
+ * <p/>
+ * The operations are fixed on construction, and indexed both by name and by
+ * ordinal, so looking up an operation doesn't depend on the number of
+ * operations on the interface.
  */
 public class BaseService implements ServiceInterface {
     
     // The interface type
-    private String _type;
+    private final String _type;
     // The interface operations
-    private Set<ServiceOperation> _operations;
+    private final Set<ServiceOperation> _operations;
+    // The interface operations, by name
+    private final Map<String, ServiceOperation> _operationsByName;
+    // The interface operations, by ordinal (i.e. sorted by name)
+    private final ServiceOperation[] _operationsByOrdinal;
+    // The ordinals of the interface operations, by name
+    private final Map<String, Integer> _ordinals;
     
     /**
      * Create a new ServiceInterface with the specified operation.  The default
@@ -58,17 +72,38 @@ public class BaseService implements ServiceInterface {
      * @param type interface type
      */
     public BaseService(ServiceOperation operation, String type) {
-        _operations = new HashSet<ServiceOperation>(1);
-        _operations.add(operation);
+        this(Collections.singleton(operation), type);
     }
     
     /**
      * Create a new ServiceInterface with the specified operations and type.
+     * The operations are copied, so later changes to the set don't affect
+     * the interface.
      * @param operations interface operations
      * @param type interface type
      */
     public BaseService(Set<ServiceOperation> operations, String type) {
-        _operations = operations;
+        _type = type;
+        _operations = Collections.unmodifiableSet(new HashSet<ServiceOperation>(operations));
+
+        Map<String, ServiceOperation> operationsByName = new HashMap<String, ServiceOperation>(operations.size() * 2);
+        for (ServiceOperation operation : _operations) {
+            // as before, the first of any operations with the same name wins
+            if (!operationsByName.containsKey(operation.getName())) {
+                operationsByName.put(operation.getName(), operation);
+            }
+        }
+        _operationsByName = Collections.unmodifiableMap(operationsByName);
+
+        String[] names = operationsByName.keySet().toArray(new String[operationsByName.size()]);
+        Arrays.sort(names);
+        _operationsByOrdinal = new ServiceOperation[names.length];
+        Map<String, Integer> ordinals = new HashMap<String, Integer>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            _operationsByOrdinal[i] = operationsByName.get(names[i]);
+            ordinals.put(names[i], i);
+        }
+        _ordinals = Collections.unmodifiableMap(ordinals);
     }
 
     /**
@@ -78,23 +113,50 @@ public class BaseService implements ServiceInterface {
      */
     @Override
     public ServiceOperation getOperation(String name) {
-        ServiceOperation operation = null;
-        for (ServiceOperation op : _operations) {
-            if (op.getName().equals(name)) {
-                operation = op;
-                break;
-            }
-        }
-        return operation;
+        return _operationsByName.get(name);
+    }
+
+    /**
+     * Returns the operation with the specified ordinal.
+     * @param ordinal operation ordinal
+     * @return operation details or null if there is no operation with that
+     * ordinal
+     * @see #getOperationOrdinal(String)
+     */
+    public ServiceOperation getOperation(int ordinal) {
+        return ordinal >= 0 && ordinal < _operationsByOrdinal.length ? _operationsByOrdinal[ordinal] : null;
+    }
+
+    /**
+     * Returns the ordinal of the specified operation.  Operations are numbered
+     * from 0 to <code>getOperationCount() - 1</code> in the order of their
+     * names, so ordinals are stable for a given interface, and can be used as
+     * an index into an array of per-operation state.
+     * @param name operation name
+     * @return operation ordinal, or -1 if the named operation is not present
+     * on this interface
+     */
+    public int getOperationOrdinal(String name) {
+        Integer ordinal = _ordinals.get(name);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    /**
+     * The number of operation ordinals, i.e. of distinctly named operations
+     * on this interface.
+     * @return number of operation ordinals
+     */
+    public int getOperationCount() {
+        return _operationsByOrdinal.length;
     }
 
     /**
-     * @return set of service operations
+     * @return unmodifiable set of service operations
      * @see ServiceInterface
      */
     @Override
     public Set<ServiceOperation> getOperations() {
-        return new HashSet<ServiceOperation>(_operations);
+        return _operations;
     }
 
     /**
@@ -52,7 +52,8 @@ public interface ServiceInterface {
      * The set of operations available on this service.
      * @return A Set containing operations available on this service.  If the
      * interface contains no operations, the returned Set will be empty and not
-     * null.
+     * null.  The Set may be unmodifiable (as it is for {@link BaseService}), so
+     * callers which need to change it must copy it first.
      */
     Set<ServiceOperation> getOperations();
     
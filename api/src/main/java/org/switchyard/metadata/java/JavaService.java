@@ -19,10 +19,14 @@
 
 package org.switchyard.metadata.java;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.namespace.QName;
 
@@ -45,6 +49,11 @@ import org.switchyard.metadata.ServiceOperation;
  * Message names are created using the FQ class name. A prefix of 
  * <code>JavaService.TYPE</code> is used to produce a name of the format 
  * <code>java:[class.getName()]</code>, e.g. <code>java:org.example.MyType</code>.
+ * <br><br>
+ * ServiceInterfaces and message names are cached per class (so per classloader)
+ * and namespace, so reusing an interface doesn't reflect over it again.  The
+ * cache is read without locking, and is weak: it doesn't keep classes from
+ * being unloaded.
  */
 public final class JavaService extends BaseService {
     
@@ -53,6 +62,13 @@ public final class JavaService extends BaseService {
      */
     public static final String TYPE = "java";
     
+    // fromClass() results, by class and namespace; the values are weak too, as a
+    // JavaService references its class
+    private static final ClassCache<WeakReference<JavaService>> SERVICES =
+        new ClassCache<WeakReference<JavaService>>();
+    // toMessageType() results, by class and namespace
+    private static final ClassCache<QName> MESSAGE_TYPES = new ClassCache<QName>();
+
     // Java class used to create this ServiceInterface
     private Class<?> _serviceInterface;
 
@@ -80,13 +96,39 @@ public final class JavaService extends BaseService {
     
     /**
      * Creates a ServiceInterface from the specified Java class or interface.
-     * All QNames in the interface will use the specified namespace URI.
+     * All QNames in the interface will use the specified namespace URI.  The
+     * returned instance is cached, and shared by all callers.
      * @param serviceInterface class or interface representing the service 
      * interface
      * @param namespaceURI namespace to be used for type QNames
      * @return ServiceInterface representing the Java class
      */
     public static JavaService fromClass(Class<?> serviceInterface, String namespaceURI) {
+        ConcurrentHashMap<String, WeakReference<JavaService>> services = SERVICES.forClass(serviceInterface);
+        String key = ClassCache.key(namespaceURI);
+        WeakReference<JavaService> cached = services.get(key);
+        JavaService service = cached != null ? cached.get() : null;
+        if (service == null) {
+            // built without locking; if another thread beats us to it, we use its instance
+            service = createFromClass(serviceInterface, namespaceURI);
+            WeakReference<JavaService> reference = new WeakReference<JavaService>(service);
+            cached = services.putIfAbsent(key, reference);
+            while (cached != null) {
+                JavaService cachedService = cached.get();
+                if (cachedService != null) {
+                    return cachedService;
+                }
+                // the cached instance was collected, so ours takes its place
+                if (services.replace(key, cached, reference)) {
+                    break;
+                }
+                cached = services.putIfAbsent(key, reference);
+            }
+        }
+        return service;
+    }
+
+    private static JavaService createFromClass(Class<?> serviceInterface, String namespaceURI) {
         HashSet<ServiceOperation> ops = new HashSet<ServiceOperation>();
         for (Method m : serviceInterface.getDeclaredMethods()) {
             // We only consider public methods
@@ -148,13 +190,28 @@ public final class JavaService extends BaseService {
      * Convert the supplied java type to a payload type name.
      * <p/>
      * Checks for a {@link org.switchyard.metadata.java.PayloadTypeName} on the type.  If not found,
-     * the type name is derived from the Java Class name.
+     * the type name is derived from the Java Class name.  The same QName instance is returned for
+     * the same type and namespace.
      *
      * @param javaType The Java type.
      * @param namespaceURI namespace for the type QName
      * @return The payload type.
      */
     public static QName toMessageType(Class<?> javaType, String namespaceURI) {
+        ConcurrentHashMap<String, QName> messageTypes = MESSAGE_TYPES.forClass(javaType);
+        String key = ClassCache.key(namespaceURI);
+        QName messageType = messageTypes.get(key);
+        if (messageType == null) {
+            messageType = createMessageType(javaType, namespaceURI);
+            QName cached = messageTypes.putIfAbsent(key, messageType);
+            if (cached != null) {
+                messageType = cached;
+            }
+        }
+        return messageType;
+    }
+
+    private static QName createMessageType(Class<?> javaType, String namespaceURI) {
         PayloadTypeName payloadType = javaType.getAnnotation(PayloadTypeName.class);
 
         if (payloadType != null) {
@@ -163,4 +220,96 @@ public final class JavaService extends BaseService {
             return new QName(namespaceURI, TYPE + ":" + javaType.getCanonicalName());
         }
     }
+
+    /**
+     * Values by class and namespace, which can be read without locking.  The classes are
+     * held weakly, and their entries dropped once they are collected.
+     */
+    private static final class ClassCache<V> {
+
+        private final ConcurrentHashMap<Object, ConcurrentHashMap<String, V>> _values =
+            new ConcurrentHashMap<Object, ConcurrentHashMap<String, V>>();
+        private final ReferenceQueue<Class<?>> _collected = new ReferenceQueue<Class<?>>();
+
+        // ConcurrentHashMap doesn't take null keys, and a null namespace means the empty one in a QName
+        private static String key(String namespaceURI) {
+            return namespaceURI != null ? namespaceURI : "";
+        }
+
+        private ConcurrentHashMap<String, V> forClass(Class<?> type) {
+            ConcurrentHashMap<String, V> values = _values.get(new Lookup(type));
+            if (values == null) {
+                for (Reference<? extends Class<?>> key = _collected.poll(); key != null; key = _collected.poll()) {
+                    _values.remove(key);
+                }
+                values = new ConcurrentHashMap<String, V>(2);
+                ConcurrentHashMap<String, V> cached = _values.putIfAbsent(new ClassKey(type, _collected), values);
+                if (cached != null) {
+                    values = cached;
+                }
+            }
+            return values;
+        }
+    }
+
+    /**
+     * A weak key of a {@link ClassCache}.
+     */
+    private static final class ClassKey extends WeakReference<Class<?>> {
+
+        private final int _hash;
+
+        private ClassKey(Class<?> type, ReferenceQueue<Class<?>> queue) {
+            super(type, queue);
+            _hash = System.identityHashCode(type);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            Class<?> type = get();
+            if (type == null) {
+                return false;
+            } else if (obj instanceof ClassKey) {
+                return ((ClassKey)obj).get() == type;
+            } else if (obj instanceof Lookup) {
+                return ((Lookup)obj)._type == type;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A key to look up a {@link ClassKey} with, without creating a reference.
+     */
+    private static final class Lookup {
+
+        private final Class<?> _type;
+
+        private Lookup(Class<?> type) {
+            _type = type;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(_type);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof ClassKey) {
+                return ((ClassKey)obj).get() == _type;
+            } else if (obj instanceof Lookup) {
+                return ((Lookup)obj)._type == _type;
+            }
+            return false;
+        }
+    }
 }
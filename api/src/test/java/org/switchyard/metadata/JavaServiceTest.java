@@ -19,6 +19,10 @@
 
 package org.switchyard.metadata;
 
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+
 import javax.xml.namespace.QName;
 
 import org.junit.Assert;
@@ -85,6 +89,69 @@ public class JavaServiceTest {
         Assert.assertNotNull(method);
     }
     
+    @Test
+    public void testFromClassIsCached() throws Exception {
+        JavaService js = JavaService.fromClass(JavaInterface.class);
+        Assert.assertSame(js, JavaService.fromClass(JavaInterface.class));
+        Assert.assertNotSame(js, JavaService.fromClass(JavaInterface.class, "urn:test"));
+        Assert.assertSame(js.getOperation("method1").getInputType(),
+                JavaService.fromClass(JavaClassImplementsInterface.class).getOperation("method1").getInputType());
+        Assert.assertSame(JavaService.toMessageType(MyStuff.class, "urn:test"), JavaService.toMessageType(MyStuff.class, "urn:test"));
+
+        // the same class loaded by another classloader is another interface
+        URL classes = JavaInterface.class.getProtectionDomain().getCodeSource().getLocation();
+        Class<?> otherInterface = new URLClassLoader(new URL[] {classes}, null).loadClass(JavaInterface.class.getName());
+        JavaService other = JavaService.fromClass(otherInterface);
+        Assert.assertNotSame(js, other);
+        Assert.assertSame(otherInterface, other.getJavaInterface());
+        Assert.assertEquals(METHOD2_OUTPUT, other.getOperation("method2").getOutputType());
+    }
+
+    @Test
+    public void testCacheIsWeak() throws Exception {
+        URL classes = JavaInterface.class.getProtectionDomain().getCodeSource().getLocation();
+        Class<?> otherInterface = new URLClassLoader(new URL[] {classes}, null).loadClass(JavaInterface.class.getName());
+        Assert.assertSame(JavaService.fromClass(otherInterface), JavaService.fromClass(otherInterface));
+        JavaService.toMessageType(otherInterface);
+        WeakReference<Class<?>> collected = new WeakReference<Class<?>>(otherInterface);
+        otherInterface = null;
+        for (int i = 0; i < 50 && collected.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        // neither cache keeps the class (or its class loader) from being collected
+        Assert.assertNull(collected.get());
+    }
+
+    @Test
+    public void testType() throws Exception {
+        Assert.assertEquals(JavaService.TYPE, JavaService.fromClass(JavaInterface.class).getType());
+        Assert.assertEquals(ServiceInterface.DEFAULT_TYPE, new InOnlyService().getType());
+    }
+
+    @Test
+    public void testOperationOrdinals() throws Exception {
+        JavaService js = JavaService.fromClass(JavaClassImplementsInterface.class);
+        Assert.assertEquals(3, js.getOperationCount());
+        // numbered in name order
+        Assert.assertEquals(0, js.getOperationOrdinal("another"));
+        Assert.assertEquals(1, js.getOperationOrdinal("method1"));
+        Assert.assertEquals(2, js.getOperationOrdinal("method2"));
+        Assert.assertEquals(-1, js.getOperationOrdinal("method3"));
+        for (ServiceOperation operation : js.getOperations()) {
+            Assert.assertSame(operation, js.getOperation(js.getOperationOrdinal(operation.getName())));
+        }
+        Assert.assertNull(js.getOperation(3));
+        Assert.assertNull(js.getOperation(-1));
+
+        try {
+            js.getOperations().clear();
+            Assert.fail("Expected the operations to be unmodifiable.");
+        } catch (UnsupportedOperationException uoe) {
+            // expected
+        }
+    }
+
     @Test
     public void testInterfaceWithBadSignature() throws Exception {
         Exception error = null;
@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.validation.Schema;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.switchyard.config.Configuration;
+import org.switchyard.config.Configurations;
+import org.switchyard.config.model.Descriptor;
+import org.switchyard.config.model.ModelResource;
+import org.switchyard.config.model.Validation;
+import org.switchyard.config.model.switchyard.SwitchYardModel;
+
+/**
+ * Parse, merge, validate and write of switchyard.xml documents with 10, 100
+ * and 1000 components, services and references.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigBenchmark {
+
+    /**
+     * Number of components in the generated switchyard.xml.
+     */
+    @Param({"10", "100", "1000"})
+    public int components;
+
+    /**
+     * Whether to parse with StAX rather than DOM.
+     */
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    private String _xml;
+    private Configuration _config;
+    private Configuration _fragment;
+    private SwitchYardModel _model;
+
+    /**
+     * Generate the documents and the pre-parsed models used by the
+     * merge, validate and write benchmarks.
+     * @throws IOException if a generated document can't be parsed
+     */
+    @Setup
+    public void setUp() throws IOException {
+        _xml = SwitchYardXml.generate(components, 0);
+        _model = parse(_xml, streaming);
+        _config = _model.getModelConfiguration();
+        // half of the fragment overlaps the full document, half is new
+        _fragment = parse(SwitchYardXml.generate(components, components / 2), streaming).getModelConfiguration();
+        // validate a separate model, so a streaming _model isn't materialized up front
+        Validation validation = parse(_xml, false).validateModel();
+        if (!validation.isValid()) {
+            throw new IllegalStateException("Generated switchyard.xml is invalid: " + validation.getMessage());
+        }
+    }
+
+    /**
+     * ModelResource.pull of the full document.
+     * @return the model
+     * @throws IOException if the document can't be parsed
+     */
+    @Benchmark
+    public SwitchYardModel parse() throws IOException {
+        return parse(_xml, streaming);
+    }
+
+    /**
+     * Configurations.merge of a partially overlapping fragment into the full document.
+     * @return the merged configuration
+     */
+    @Benchmark
+    public Configuration merge() {
+        return Configurations.merge(_fragment, _config);
+    }
+
+    /**
+     * Descriptor.getSchema on a new Descriptor, i.e. resolving the schema resources and looking up the JVM-wide schema cache.
+     * @return the schema
+     */
+    @Benchmark
+    public Schema getSchema() {
+        return new Descriptor().getSchema(_config);
+    }
+
+    /**
+     * Descriptor.getSchema on the model's own Descriptor, i.e. a cache hit.
+     * @return the schema
+     */
+    @Benchmark
+    public Schema getSchemaCached() {
+        return _model.getModelDescriptor().getSchema(_config);
+    }
+
+    /**
+     * BaseModel.validateModel against the (cached) schema.
+     * @return the validation result
+     */
+    @Benchmark
+    public Validation validate() {
+        return _model.validateModel();
+    }
+
+    /**
+     * DOMConfiguration.write, including the pretty-print transform.
+     * @return the written document
+     * @throws IOException if the document can't be written
+     */
+    @Benchmark
+    public String write() throws IOException {
+        StringWriter writer = new StringWriter();
+        _config.write(writer);
+        return writer.toString();
+    }
+
+    private static SwitchYardModel parse(String xml, boolean streaming) throws IOException {
+        return new ModelResource<SwitchYardModel>(null, streaming).pull(new StringReader(xml));
+    }
+}
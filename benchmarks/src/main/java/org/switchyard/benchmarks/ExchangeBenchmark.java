@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.switchyard.BaseHandler;
+import org.switchyard.Exchange;
+import org.switchyard.ExchangePhase;
+import org.switchyard.HandlerException;
+import org.switchyard.ServiceDomain;
+import org.switchyard.ServiceReference;
+import org.switchyard.internal.DefaultServiceRegistry;
+import org.switchyard.internal.DomainImpl;
+import org.switchyard.internal.LocalExchangeBus;
+import org.switchyard.internal.trace.ExchangeTracer;
+import org.switchyard.internal.transform.BaseTransformerRegistry;
+import org.switchyard.metadata.ExchangeContract;
+
+/**
+ * In-only and in-out round trips through a {@link DomainImpl} on the
+ * {@link LocalExchangeBus}, single threaded and contended.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExchangeBenchmark {
+
+    /**
+     * Whether the exchange tracer is enabled while measuring.
+     */
+    @Param({"true", "false"})
+    public boolean tracing;
+
+    private ServiceDomain _domain;
+    private ServiceReference _inOnlyService;
+    private ServiceReference _inOutService;
+    private BaseHandler _replyHandler = new BaseHandler();
+
+    /**
+     * Create the domain and register the in-only and in-out services.
+     */
+    @Setup
+    public void setUp() {
+        ExchangeTracer.getInstance().setEnabled(tracing);
+        _domain = new DomainImpl(new QName("urn:switchyard:benchmarks", "ExchangeBenchmark"),
+                new DefaultServiceRegistry(),
+                new LocalExchangeBus(),
+                new BaseTransformerRegistry());
+        _inOnlyService = _domain.registerService(new QName("InOnlyService"), new BaseHandler());
+        _inOutService = _domain.registerService(new QName("InOutService"), new ReplyingHandler());
+    }
+
+    /**
+     * Send a single in-only message.
+     * @return the exchange
+     */
+    @Benchmark
+    public Exchange inOnly() {
+        Exchange exchange = _domain.createExchange(_inOnlyService, ExchangeContract.IN_ONLY);
+        exchange.send(exchange.createMessage().setContent("in"));
+        return exchange;
+    }
+
+    /**
+     * Send a single in-out message and receive the reply.
+     * @return the exchange
+     */
+    @Benchmark
+    public Exchange inOut() {
+        Exchange exchange = _domain.createExchange(_inOutService, ExchangeContract.IN_OUT, _replyHandler);
+        exchange.send(exchange.createMessage().setContent("in"));
+        return exchange;
+    }
+
+    /**
+     * In-only round trips from all available cores against the same service.
+     * @return the exchange
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Exchange inOnlyContended() {
+        return inOnly();
+    }
+
+    /**
+     * In-out round trips from all available cores against the same service.
+     * @return the exchange
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Exchange inOutContended() {
+        return inOut();
+    }
+
+    /**
+     * Provider which echoes the input message back as the reply.
+     */
+    private static class ReplyingHandler extends BaseHandler {
+        @Override
+        public void handleMessage(Exchange exchange) throws HandlerException {
+            if (exchange.getPhase() == ExchangePhase.IN) {
+                exchange.send(exchange.createMessage().setContent(exchange.getMessage().getContent()));
+            }
+        }
+    }
+}
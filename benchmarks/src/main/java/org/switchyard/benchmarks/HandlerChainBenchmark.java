@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.switchyard.BaseHandler;
+import org.switchyard.Exchange;
+import org.switchyard.internal.DefaultHandlerChain;
+import org.switchyard.internal.ExchangeImpl;
+import org.switchyard.metadata.ExchangeContract;
+
+/**
+ * Cost of walking a {@link DefaultHandlerChain} as the number of handlers
+ * grows.  The handlers themselves do nothing, so the score is the per-handler
+ * overhead of the chain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerChainBenchmark {
+
+    /**
+     * Number of handlers in the chain.
+     */
+    @Param({"1", "4", "16"})
+    public int chainLength;
+
+    private DefaultHandlerChain _chain;
+    private Exchange _exchange;
+
+    /**
+     * Build the handler chain and the exchange passed through it.
+     */
+    @Setup
+    public void setUp() {
+        _chain = new DefaultHandlerChain();
+        for (int i = 0; i < chainLength; i++) {
+            _chain.addLast("handler" + i, new BaseHandler());
+        }
+        _exchange = new ExchangeImpl(null, ExchangeContract.IN_ONLY, null);
+    }
+
+    /**
+     * Pass the exchange through every handler in the chain.
+     * @return the exchange
+     */
+    @Benchmark
+    public Exchange handleMessage() {
+        _chain.handleMessage(_exchange);
+        return _exchange;
+    }
+
+    /**
+     * Copy the chain, as is done for each exchange with a reply handler.
+     * @return the copy
+     */
+    @Benchmark
+    public DefaultHandlerChain copy() {
+        return _chain.copy();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.benchmarks;
+
+/**
+ * Generates synthetic switchyard.xml documents for the configuration benchmarks.
+ */
+final class SwitchYardXml {
+
+    private static final int LINE_LENGTH_ESTIMATE = 512;
+
+    private SwitchYardXml() {}
+
+    /**
+     * Generate a valid switchyard.xml containing a single composite with the
+     * specified number of components.  Each component has an implementation,
+     * a service and a reference, and is promoted by a composite service.
+     * @param components number of components
+     * @param first index of the first component, so that documents with
+     * overlapping or disjoint component sets can be generated for merging
+     * @return the XML document
+     */
+    static String generate(int components, int first) {
+        StringBuilder xml = new StringBuilder(components * LINE_LENGTH_ESTIMATE);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<switchyard xmlns=\"urn:switchyard-config:switchyard:1.0\"")
+            .append(" xmlns:sca=\"http://docs.oasis-open.org/ns/opencsa/sca/200912\">\n");
+        xml.append("    <sca:composite name=\"benchmark\" targetNamespace=\"urn:switchyard:benchmarks:1.0\">\n");
+        for (int i = first; i < first + components; i++) {
+            xml.append("        <sca:service name=\"Promoted").append(i)
+                .append("\" promote=\"Component").append(i).append("\"/>\n");
+        }
+        for (int i = first; i < first + components; i++) {
+            xml.append("        <sca:component name=\"Component").append(i).append("\">\n");
+            xml.append("            <sca:implementation.java class=\"org.switchyard.benchmarks.Bean")
+                .append(i).append("\"/>\n");
+            xml.append("            <sca:service name=\"Service").append(i).append("\">\n");
+            xml.append("                <sca:interface.java interface=\"org.switchyard.benchmarks.Service")
+                .append(i).append("\"/>\n");
+            xml.append("            </sca:service>\n");
+            xml.append("            <sca:reference name=\"Reference").append(i).append("\">\n");
+            xml.append("                <sca:interface.java interface=\"org.switchyard.benchmarks.Service")
+                .append(i + 1).append("\"/>\n");
+            xml.append("            </sca:reference>\n");
+            xml.append("        </sca:component>\n");
+        }
+        xml.append("    </sca:composite>\n");
+        xml.append("</switchyard>\n");
+        return xml.toString();
+    }
+}
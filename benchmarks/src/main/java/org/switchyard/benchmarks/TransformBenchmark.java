@@ -0,0 +1,130 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.switchyard.Message;
+import org.switchyard.internal.DefaultMessage;
+import org.switchyard.internal.transform.BaseTransformerRegistry;
+import org.switchyard.transform.BaseTransformer;
+import org.switchyard.transform.TransformSequence;
+import org.switchyard.transform.Transformer;
+
+/**
+ * Transformer registry lookups and transform sequence application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+
+    private static final String NS = "urn:switchyard:benchmarks";
+
+    /**
+     * Number of transformers held by the registry.
+     */
+    @Param({"10", "1000"})
+    public int registrySize;
+
+    private BaseTransformerRegistry _registry;
+    private QName _first;
+    private QName _middle;
+    private QName _last;
+    private QName _unknown;
+
+    /**
+     * Populate the registry with a chain of transformers type0 -> type1 -> ...
+     */
+    @Setup
+    public void setUp() {
+        _registry = new BaseTransformerRegistry();
+        for (int i = 0; i < registrySize; i++) {
+            _registry.addTransformer(new PassThroughTransformer(type(i), type(i + 1)));
+        }
+        _first = type(0);
+        _middle = type(1);
+        _last = type(2);
+        _unknown = new QName(NS, "unknown");
+    }
+
+    /**
+     * Look up a registered transformer.
+     * @return the transformer
+     */
+    @Benchmark
+    public Transformer<?, ?> lookupHit() {
+        return _registry.getTransformer(_first, _middle);
+    }
+
+    /**
+     * Look up a transformer which is not registered.
+     * @return null
+     */
+    @Benchmark
+    public Transformer<?, ?> lookupMiss() {
+        return _registry.getTransformer(_first, _unknown);
+    }
+
+    /**
+     * Apply a two step transform sequence to a fresh message.
+     * @return the transformed message
+     */
+    @Benchmark
+    public Message applySequence() {
+        Message message = new DefaultMessage().setContent("content");
+        TransformSequence.from(_first).to(_middle).to(_last).apply(message, _registry);
+        return message;
+    }
+
+    private static QName type(int index) {
+        return new QName(NS, "type" + index);
+    }
+
+    /**
+     * Transformer which returns its input unchanged.
+     */
+    private static class PassThroughTransformer extends BaseTransformer<Object, Object> {
+        PassThroughTransformer(QName from, QName to) {
+            super(from, to);
+        }
+
+        @Override
+        public Object transform(Object from) {
+            return from;
+        }
+    }
+}
@@ -22,8 +22,10 @@
 
 package org.switchyard.bus.hornetq;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.Message;
@@ -36,9 +38,11 @@ import org.hornetq.api.core.client.MessageHandler;
 import org.switchyard.Exchange;
 import org.switchyard.ExchangePattern;
 import org.switchyard.ExchangePhase;
+import org.switchyard.ExchangeState;
 import org.switchyard.ServiceReference;
 import org.switchyard.handlers.HandlerChain;
 import org.switchyard.internal.ExchangeImpl;
+import org.switchyard.internal.InFlightExchanges;
 import org.switchyard.metadata.ExchangeContract;
 import org.switchyard.metadata.ServiceOperation;
 import org.switchyard.spi.Dispatcher;
@@ -51,12 +55,19 @@ import org.switchyard.spi.Dispatcher;
  */
 public class HornetQDispatcher implements Dispatcher, MessageHandler {
 
+    // distinguishes the queues of dispatchers for the same service, e.g. of two
+    // versions of a service during a redeployment
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
     private ServiceReference _service;
+    private String _queuePrefix;
     private DispatchQueue _inQueue;
     private DispatchQueue _outQueue;
     private ClientSessionFactory _sessionFactory;
     private HandlerChain _inputHandler;
     private Map<String, HandlerChain> _outputHandlers = new ConcurrentHashMap<String, HandlerChain>();
+    // replaced when restarted, as a closed tracker admits no exchanges
+    private volatile InFlightExchanges _inFlight = new InFlightExchanges();
     
     /**
      * Create a new Dispatcher instance.
@@ -70,6 +81,7 @@ public class HornetQDispatcher implements Dispatcher, MessageHandler {
         _service = service;
         _sessionFactory = sessionFactory;
         _inputHandler = inputHandler;
+        _queuePrefix = service.getName().toString() + "-" + INSTANCES.incrementAndGet() + "-";
     }
     
     @Override
@@ -80,11 +92,19 @@ public class HornetQDispatcher implements Dispatcher, MessageHandler {
     @Override
     public void dispatch(Exchange exchange) {
         DispatchQueue dispatch = null;
+        InFlightExchanges inFlight = null;
         
         if (exchange.getPhase().equals(ExchangePhase.IN)) {
              dispatch = _inQueue;
-             if (ExchangePattern.IN_OUT.equals(exchange.getContract().getServiceOperation().getExchangePattern())) {
-                 _outputHandlers.put(exchange.getId(), ((ExchangeImpl)exchange).getReplyChain());
+             inFlight = _inFlight;
+             if (!inFlight.begin(exchange)) {
+                 throw new IllegalStateException("HornetQ endpoint " + _service.getName() + " is stopped.");
+             }
+             HandlerChain replyChain = ((ExchangeImpl)exchange).getReplyChain();
+             // without a reply chain, nothing waits for the reply, so the exchange completes once handled
+             if (replyChain != null
+                     && ExchangePattern.IN_OUT.equals(exchange.getContract().getServiceOperation().getExchangePattern())) {
+                 _outputHandlers.put(exchange.getId(), replyChain);
              }
         } else if (exchange.getPhase().equals(ExchangePhase.OUT)) {
             dispatch = _outQueue;
@@ -97,6 +117,10 @@ public class HornetQDispatcher implements Dispatcher, MessageHandler {
             Message msg = exchangeToMessage(exchange, dispatch.getSession());
             dispatch.getProducer().send(msg);
         } catch (HornetQException hqEx) {
+            if (exchange.getPhase().equals(ExchangePhase.IN)) {
+                _outputHandlers.remove(exchange.getId());
+                inFlight.end(exchange);
+            }
             throw new RuntimeException("Send to HornetQ endpoint failed", hqEx);
         }
     }
@@ -105,36 +129,74 @@ public class HornetQDispatcher implements Dispatcher, MessageHandler {
     public void onMessage(ClientMessage message) {
         Exchange exchange = messageToExchange(message);
         if (ExchangePhase.IN.equals(exchange.getPhase())) {
-            _inputHandler.handle(exchange);
+            try {
+                _inputHandler.handle(exchange);
+            } finally {
+                // IN_OUT exchanges (those with a reply chain) complete when the reply is handled
+                if (!_outputHandlers.containsKey(exchange.getId())) {
+                    _inFlight.end(exchange);
+                }
+            }
         } else if (ExchangePhase.OUT.equals(exchange.getPhase())) {
             HandlerChain chain = _outputHandlers.remove(exchange.getId());
-            if (chain != null) {
-                chain.handle(exchange);
+            try {
+                if (chain != null) {
+                    chain.handle(exchange);
+                }
+            } finally {
+                _inFlight.end(exchange);
             }
         }
     }
+
+    @Override
+    public int getInFlightCount() {
+        return _inFlight.size();
+    }
+
+    @Override
+    public boolean awaitInFlight(long timeout) throws InterruptedException {
+        return _inFlight.await(timeout);
+    }
     
     @Override
     public void stop() {
+        stop(0);
+    }
+
+    @Override
+    public synchronized List<String> stop(long timeout) {
+        // exchanges are in flight from their dispatch, so this includes those still queued
+        List<String> abandoned = _inFlight.close(timeout);
+        // no reply to an abandoned exchange is handled any more
+        _outputHandlers.clear();
         try {
+            // the queues are unique to this dispatcher, so nothing would consume their messages
+            // if they were kept: they're deleted, and the messages left reported as abandoned
             if (_inQueue != null) {
                 _inQueue.destroy();
+                _inQueue = null;
             }
             
             if (_outQueue != null) {
                 _outQueue.destroy();
+                _outQueue = null;
             }
         } catch (HornetQException ex) {
             throw new RuntimeException("Failed to stop HornetQ endpoint " + _service.getName(), ex);
         }
+        return abandoned;
     }
     
     @Override
-    public void start() {
+    public synchronized void start() {
+        if (_inFlight.isClosed()) {
+            _inFlight = new InFlightExchanges();
+        }
         try {
             // Create a queue for receiving input messages
             _inQueue = new DispatchQueue(_sessionFactory.createSession(), 
-                    _service.getName().toString() + ExchangePhase.IN, this);
+                    _queuePrefix + ExchangePhase.IN, this);
             _inQueue.init();
             
             // Check to see if a queue is required for output messages based on operation MEPs
@@ -142,7 +204,7 @@ public class HornetQDispatcher implements Dispatcher, MessageHandler {
                 if (op.getExchangePattern().equals(ExchangePattern.IN_OUT)) {
                     // Found at least one InOut, so we need a reply queue
                     _outQueue = new DispatchQueue(_sessionFactory.createSession(), 
-                            _service.getName().toString() + ExchangePhase.OUT, this);
+                            _queuePrefix + ExchangePhase.OUT, this);
                     _outQueue.init();
                     break;
                 }
@@ -152,21 +214,31 @@ public class HornetQDispatcher implements Dispatcher, MessageHandler {
         }
     }
     
+    DispatchQueue getInQueue() {
+        return _inQueue;
+    }
+    
+    DispatchQueue getOutQueue() {
+        return _outQueue;
+    }
+    
     private Exchange messageToExchange(Message message) {
         // Read serialized exchange info from message body:
         //     1: exchange ID
         //     2: message exchange pattern
         //     3: exchange phase
+        //     4: exchange state
         String exchangeId = message.getBodyBuffer().readString();
         String mep = message.getBodyBuffer().readString();
         String phase = message.getBodyBuffer().readString();
+        String state = message.getBodyBuffer().readString();
         
         // This is a hack until we have serialization stuff sorted
         ExchangeContract contract = ExchangePattern.IN_ONLY.equals(mep)
                 ? ExchangeContract.IN_ONLY : ExchangeContract.IN_OUT;
         ExchangePhase exchangePhase = ExchangePhase.valueOf(phase);
         
-        return new ExchangeImpl(exchangeId, this, exchangePhase, contract);
+        return new ExchangeImpl(exchangeId, this, exchangePhase, ExchangeState.valueOf(state), contract);
     }
     
     private static Message exchangeToMessage(Exchange exchange, ClientSession session) {
@@ -175,9 +247,11 @@ public class HornetQDispatcher implements Dispatcher, MessageHandler {
         //     1: exchange ID
         //     2: message exchange pattern
         //     3: exchange phase
+        //     4: exchange state, so a fault is handled as one by the reply chain
         msg.getBodyBuffer().writeString(exchange.getId());
         msg.getBodyBuffer().writeString(exchange.getContract().getServiceOperation().getExchangePattern().toString());
         msg.getBodyBuffer().writeString(exchange.getPhase().toString());
+        msg.getBodyBuffer().writeString(exchange.getState().toString());
         
         return msg;
     }
@@ -213,8 +287,14 @@ class DispatchQueue {
         }
     }
     
+    /**
+     * Close and delete the queue, along with any messages still pending on it.
+     * @throws HornetQException failed to close or delete the queue
+     */
     void destroy() throws HornetQException {
-        _consumer.close();
+        if (_consumer != null) {
+            _consumer.close();
+        }
         _producer.close();
         _session.deleteQueue(_name);
         _session.close();
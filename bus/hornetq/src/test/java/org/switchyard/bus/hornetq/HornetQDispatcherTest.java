@@ -22,11 +22,14 @@
 
 package org.switchyard.bus.hornetq;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.xml.namespace.QName;
 
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientSession;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -98,6 +101,97 @@ public class HornetQDispatcherTest {
         Assert.assertNotNull(outHandler.getLastExchange());
         Assert.assertEquals(exchange, outHandler.getLastExchange());
     }
+
+    @Test
+    public void testDispatchInOutFault() throws Exception {
+        ServiceReference service = new MockServiceReference(
+                new QName("testDispatchInOutFault"),new InOutService());
+        // provider handlers, faulting on the deserialized exchange
+        HandlerChain inHandlers = new DefaultHandlerChain();
+        inHandlers.addLast("in", new BaseHandler() {
+            @Override
+            public void handleMessage(Exchange exchange) throws HandlerException {
+                exchange.sendFault(exchange.createMessage());
+            }
+        });
+        Dispatcher dispatch = _provider.createDispatcher(service, inHandlers);
+        // consumer handlers
+        HandlerChain outHandlers = new DefaultHandlerChain();
+        ExchangeSink outHandler = new ExchangeSink();
+        outHandlers.addLast("out", outHandler);
+
+        Exchange exchange = new ExchangeImpl(service, ExchangeContract.IN_OUT, dispatch, outHandlers);
+        exchange.send(null);
+        Thread.sleep(400);
+
+        // the fault reaches the consumer, which completes the exchange
+        Assert.assertEquals(exchange, outHandler.getLastFault());
+        Assert.assertEquals(0, dispatch.getInFlightCount());
+    }
+
+    @Test
+    public void testStopAbandonsInFlight() throws Exception {
+        ServiceReference service = new MockServiceReference(
+                new QName("testStopAbandonsInFlight"),new InOutService());
+        // provider handlers, which never reply
+        HandlerChain inHandlers = new DefaultHandlerChain();
+        ExchangeSink inHandler = new ExchangeSink();
+        inHandlers.addLast("in", inHandler);
+        HornetQDispatcher dispatch = (HornetQDispatcher)_provider.createDispatcher(service, inHandlers);
+        String inQueue = dispatch.getInQueue().getName();
+        String outQueue = dispatch.getOutQueue().getName();
+        // consumer handlers
+        HandlerChain outHandlers = new DefaultHandlerChain();
+        outHandlers.addLast("out", new ExchangeSink());
+
+        Exchange exchange = new ExchangeImpl(service, ExchangeContract.IN_OUT, dispatch, outHandlers);
+        exchange.send(null);
+        Thread.sleep(200);
+
+        // the exchange is in flight until its reply is handled...
+        Assert.assertEquals(exchange, inHandler.getLastExchange());
+        Assert.assertEquals(1, dispatch.getInFlightCount());
+        // ... so it's abandoned at the timeout
+        Assert.assertEquals(Collections.singletonList(exchange.getId()), dispatch.stop(10));
+
+        // the dispatcher's queues are deleted
+        ClientSession session = _provider.getClientFactory().createSession();
+        try {
+            Assert.assertFalse(session.queueQuery(new SimpleString(inQueue)).isExists());
+            Assert.assertFalse(session.queueQuery(new SimpleString(outQueue)).isExists());
+        } finally {
+            session.close();
+        }
+
+        // and new exchanges are refused
+        Exchange refused = new ExchangeImpl(service, ExchangeContract.IN_ONLY, dispatch, null);
+        try {
+            refused.send(null);
+            Assert.fail("Expected the stopped dispatcher to refuse the exchange.");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(exchange, inHandler.getLastExchange());
+        }
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        ServiceReference service = new MockServiceReference(
+                new QName("testRestart"),new InOnlyService());
+        HandlerChain inHandlers = new DefaultHandlerChain();
+        ExchangeSink sink = new ExchangeSink();
+        inHandlers.addLast("in", sink);
+        Dispatcher dispatch = _provider.createDispatcher(service, inHandlers);
+        dispatch.stop(0);
+
+        // a restarted dispatcher admits exchanges again
+        dispatch.start();
+        Exchange exchange = new ExchangeImpl(service, ExchangeContract.IN_ONLY, dispatch, null);
+        exchange.send(null);
+        Thread.sleep(200);
+
+        Assert.assertEquals(exchange, sink.getLastExchange());
+        Assert.assertEquals(0, dispatch.getInFlightCount());
+    }
     
 }
 
@@ -107,6 +201,7 @@ public class HornetQDispatcherTest {
 class ExchangeSink extends BaseHandler {
    
     private Exchange _lastExchange;
+    private Exchange _lastFault;
     private boolean _reply;
     
     ExchangeSink() {
@@ -125,8 +220,17 @@ class ExchangeSink extends BaseHandler {
         }
     }
     
+    @Override
+    public void handleFault(Exchange exchange) {
+        _lastFault = exchange;
+    }
+    
     Exchange getLastExchange() {
         return _lastExchange;
     }
     
+    Exchange getLastFault() {
+        return _lastFault;
+    }
+    
 }
\ No newline at end of file
@@ -279,6 +279,21 @@ public interface Configuration {
      */
     public Configuration normalize();
 
+    /**
+     * Gets the object associated with a key on the underlying node of this config, as previously set by {@link #setUserData(String, Object)} on this or any other config wrapping the same node.
+     * @param key the key
+     * @return the object, or null if none
+     */
+    public Object getUserData(String key);
+
+    /**
+     * Associates an object with a key on the underlying node of this config, so it can be retrieved through any config wrapping the same node (for example one later returned by {@link #getChildren()}).  The association does not survive {@link #copy()}, and is dropped (along with those of every other node of the same document) when any config of the document is modified, as the object may well be derived from its content.
+     * @param key the key
+     * @param data the object (null means "remove the association")
+     * @return this config (useful for chaining)
+     */
+    public Configuration setUserData(String key, Object data);
+
     /**
      * Gets a source of the underlying config structure.
      * @return the source
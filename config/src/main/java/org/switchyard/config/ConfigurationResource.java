@@ -24,14 +24,12 @@ import java.io.InputStream;
 import java.io.Reader;
 
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 import org.switchyard.config.util.Resource;
+import org.switchyard.config.util.XMLFactories;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 /**
  * Utility class to safely access ("pull") configs from various sources.
@@ -40,6 +38,31 @@ import org.xml.sax.SAXException;
  */
 public class ConfigurationResource extends Resource<Configuration> {
 
+    private boolean _streaming;
+
+    /**
+     * Constructs a default ConfigurationResource, which parses into DOM based configs.
+     */
+    public ConfigurationResource() {
+        this(false);
+    }
+
+    /**
+     * Constructs a ConfigurationResource.
+     * @param streaming whether to parse into compact, read-optimized {@link StAXConfiguration}s rather than DOM based configs
+     */
+    public ConfigurationResource(boolean streaming) {
+        _streaming = streaming;
+    }
+
+    /**
+     * Whether this ConfigurationResource parses into {@link StAXConfiguration}s.
+     * @return true if streaming
+     */
+    public final boolean isStreaming() {
+        return _streaming;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -65,17 +88,10 @@ public class ConfigurationResource extends Resource<Configuration> {
      * @throws IOException if a problem occurred
      */
     public Configuration pull(InputSource is) throws IOException {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setIgnoringComments(true);
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        try {
-            return pull(factory.newDocumentBuilder().parse(is));
-        } catch (ParserConfigurationException pce) {
-            throw new IOException(pce);
-        } catch (SAXException se) {
-            throw new IOException(se);
+        if (_streaming) {
+            return StAXConfiguration.read(is);
         }
+        return pull(XMLFactories.parse(is));
     }
 
     /**
@@ -20,10 +20,12 @@
 package org.switchyard.config;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.xml.namespace.QName;
 
@@ -60,19 +62,32 @@ public final class Configurations {
      * @return the newly merged config
      */
     public static Configuration merge(Configuration fromConfig, Configuration toConfig, boolean fromOverridesTo) {
+        Configuration mergedConfig = mergeInto(fromConfig, toConfig.copy(), fromOverridesTo);
+        mergedConfig.normalize();
+        return mergedConfig;
+    }
+
+    /**
+     * Merges a config into another config, in place.  The fromConfig is left untouched; only those of its children
+     * which have no counterpart in toConfig are copied.  Useful when repeatedly merging into the same config, which
+     * can then be normalized once at the end.
+     * @param fromConfig merge from this config, optionally overriding anything in toConfig
+     * @param toConfig merge into this config
+     * @param fromOverridesTo whether fromConfig attributes/values should override those in toConfig
+     * @return toConfig (useful for chaining)
+     */
+    public static Configuration mergeInto(Configuration fromConfig, Configuration toConfig, boolean fromOverridesTo) {
         QName fromConfigQName = fromConfig.getQName();
         QName toConfigQName = toConfig.getQName();
         if (!fromConfigQName.equals(toConfigQName)) {
             throw new IllegalArgumentException(fromConfigQName + " != " + toConfigQName);
         }
-        Configuration mergedConfig = toConfig.copy();
-        recursiveMerge(fromConfig.copy(), mergedConfig, fromOverridesTo);
-        mergedConfig.normalize();
-        return mergedConfig;
+        recursiveMerge(fromConfig, toConfig, fromOverridesTo);
+        return toConfig;
     }
 
     private static void recursiveMerge(Configuration from_config, Configuration merged_config, boolean from_overrides_merged) {
-        List<QName> merged_attr_qnames = new ArrayList<QName>();
+        Set<QName> merged_attr_qnames = new HashSet<QName>();
         for (QName merged_config_attr_qname : merged_config.getAttributeQNames()) {
             if (from_overrides_merged) {
                 String from_config_attr_value = from_config.getAttribute(merged_config_attr_qname);
@@ -85,10 +100,9 @@ public final class Configurations {
             }
         }
         for (QName from_config_attr_qname : from_config.getAttributeQNames()) {
-            if (!merged_attr_qnames.contains(from_config_attr_qname)) {
+            if (merged_attr_qnames.add(from_config_attr_qname)) {
                 String from_config_attr_value = from_config.getAttribute(from_config_attr_qname);
                 merged_config.setAttribute(from_config_attr_qname, from_config_attr_value);
-                merged_attr_qnames.add(from_config_attr_qname);
             }
         }
         if (from_overrides_merged) {
@@ -97,48 +111,86 @@ public final class Configurations {
                 merged_config.setValue(from_config_value);
             }
         }
-        Map<Key,Configuration> merged_config_orphans = new LinkedHashMap<Key,Configuration>();
-        for (Configuration merged_config_child : merged_config.getChildren()) {
-            Key merged_config_child_key = new Key(merged_config_child);
-            merged_config_orphans.put(merged_config_child_key, merged_config_child);
+        List<Configuration> from_config_children = from_config.getChildren();
+        if (from_config_children.isEmpty()) {
+            // nothing to merge, and the existing children stay where they are, save ordering them
+            merged_config.orderChildren();
+            return;
         }
-        merged_config.removeChildren();
-        for (Configuration from_config_child : from_config.getChildren()) {
-            Key from_config_child_key = new Key(from_config_child);
-            Configuration merged_config_orphan = merged_config_orphans.remove(from_config_child_key);
-            if (merged_config_orphan != null) {
-                recursiveMerge(from_config_child, merged_config_orphan, from_overrides_merged);
-                merged_config.addChild(merged_config_orphan);
-            } else if (COMPOSITE_QNAME.equals(from_config_child.getQName())) {
+        // index the existing children by key; children with equal keys are matched in document order
+        List<Configuration> merged_config_orphans = merged_config.getChildren();
+        boolean[] adopted = new boolean[merged_config_orphans.size()];
+        Map<Key,LinkedList<Integer>> merged_config_orphan_index = new HashMap<Key,LinkedList<Integer>>();
+        for (int i = 0; i < merged_config_orphans.size(); i++) {
+            Key merged_config_orphan_key = new Key(merged_config_orphans.get(i));
+            LinkedList<Integer> positions = merged_config_orphan_index.get(merged_config_orphan_key);
+            if (positions == null) {
+                positions = new LinkedList<Integer>();
+                merged_config_orphan_index.put(merged_config_orphan_key, positions);
+            }
+            positions.add(i);
+        }
+        // the children in their merged order: matched orphans (merged in place) and copies of unmatched from children, in from order, then the remaining orphans
+        List<Configuration> merged_config_children = new ArrayList<Configuration>(merged_config_orphans.size() + from_config_children.size());
+        List<Integer> merged_config_positions = new ArrayList<Integer>(merged_config_orphans.size() + from_config_children.size());
+        for (Configuration from_config_child : from_config_children) {
+            int position = adopt(merged_config_orphan_index.get(new Key(from_config_child)), adopted);
+            if (position < 0 && COMPOSITE_QNAME.equals(from_config_child.getQName())) {
                 // HACK: SWITCHYARD-145
-                boolean candidate_found = false;
-                for (Entry<Key,Configuration> merged_config_orphan_entry : merged_config_orphans.entrySet()) {
-                    Configuration merged_config_orphan_candidate = merged_config_orphan_entry.getValue();
-                    if (COMPOSITE_QNAME.equals(merged_config_orphan_candidate.getQName())) {
-                        candidate_found = true;
-                        merged_config_orphans.remove(merged_config_orphan_entry.getKey());
+                for (int i = 0; i < adopted.length; i++) {
+                    if (!adopted[i] && COMPOSITE_QNAME.equals(merged_config_orphans.get(i).getQName())) {
+                        adopted[i] = true;
+                        position = i;
                         String from_config_child_name_attr = from_config_child.getAttribute("name");
                         if (from_config_child_name_attr != null && from_config_child_name_attr.length() > 0) {
-                            merged_config_orphan_candidate.setAttribute("name", from_config_child_name_attr);
+                            merged_config_orphans.get(i).setAttribute("name", from_config_child_name_attr);
                         }
-                        recursiveMerge(from_config_child, merged_config_orphan_candidate, from_overrides_merged);
-                        merged_config.addChild(merged_config_orphan_candidate);
                         break;
                     }
                 }
-                if (!candidate_found) {
-                    merged_config.addChild(from_config_child);
-                }
+            }
+            if (position >= 0) {
+                Configuration merged_config_orphan = merged_config_orphans.get(position);
+                recursiveMerge(from_config_child, merged_config_orphan, from_overrides_merged);
+                merged_config_children.add(merged_config_orphan);
             } else {
-                merged_config.addChild(from_config_child);
+                merged_config_children.add(from_config_child.copy());
             }
+            merged_config_positions.add(position);
+        }
+        for (int i = 0; i < adopted.length; i++) {
+            if (!adopted[i]) {
+                merged_config_children.add(merged_config_orphans.get(i));
+                merged_config_positions.add(i);
+            }
+        }
+        // only move the existing children if their order changed, otherwise just append the new ones
+        int unmoved = 0;
+        while (unmoved < adopted.length && merged_config_positions.get(unmoved) == unmoved) {
+            unmoved++;
         }
-        for (Configuration merged_config_orphan : merged_config_orphans.values()) {
-            merged_config.addChild(merged_config_orphan);
+        if (unmoved < adopted.length) {
+            unmoved = 0;
+        }
+        for (int i = unmoved; i < merged_config_children.size(); i++) {
+            merged_config.addChild(merged_config_children.get(i));
         }
         merged_config.orderChildren();
     }
 
+    private static int adopt(LinkedList<Integer> positions, boolean[] adopted) {
+        if (positions != null) {
+            while (!positions.isEmpty()) {
+                int position = positions.removeFirst();
+                if (!adopted[position]) {
+                    adopted[position] = true;
+                    return position;
+                }
+            }
+        }
+        return -1;
+    }
+
     private static final class Key {
 
         private static final String[] ID_CANDIDATES = {"id", "name", "class", "interface"};
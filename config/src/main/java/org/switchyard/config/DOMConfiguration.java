@@ -20,25 +20,25 @@
 package org.switchyard.config;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.namespace.QName;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
 
 import org.switchyard.config.util.ElementResource;
 import org.switchyard.config.util.Nodes;
 import org.switchyard.config.util.QNames;
-import org.switchyard.config.util.StringResource;
+import org.switchyard.config.util.XMLFactories;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -53,9 +53,13 @@ import org.w3c.dom.NodeList;
  */
 public class DOMConfiguration extends BaseConfiguration {
 
+    private static final String PRETTY_PRINT_XSL = "/org/switchyard/config/pretty-print.xsl";
+    private static final String USER_DATA_KEY = UserData.class.getName();
+
     private Element _element;
     private Element _parent_element;
     private DOMConfiguration _parent_config;
+    private UserData _user_data;
 
     DOMConfiguration(Document document) {
         _element = new ElementResource().pull(document);
@@ -65,7 +69,7 @@ public class DOMConfiguration extends BaseConfiguration {
         this(element, true);
     }
 
-    private DOMConfiguration(Element element, boolean normalize) {
+    DOMConfiguration(Element element, boolean normalize) {
         _element = new ElementResource().pull(element, normalize);
     }
 
@@ -77,6 +81,8 @@ public class DOMConfiguration extends BaseConfiguration {
         DOMConfiguration config;
         if (from instanceof DOMConfiguration) {
             config = (DOMConfiguration)from;
+        } else if (from instanceof StAXConfiguration) {
+            config = ((StAXConfiguration)from).dom();
         } else {
             Element element = new ElementResource().pull(from.getQName());
             config = new DOMConfiguration(element);
@@ -90,6 +96,10 @@ public class DOMConfiguration extends BaseConfiguration {
         _element = config._element;
     }
 
+    Element getElement() {
+        return _element;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -120,6 +130,7 @@ public class DOMConfiguration extends BaseConfiguration {
      */
     @Override
     public Configuration setValue(String value) {
+        modified();
         if (value != null) {
             Node text_node = getTextNode(true);
             text_node.setNodeValue(value);
@@ -208,7 +219,7 @@ public class DOMConfiguration extends BaseConfiguration {
     @Override
     public boolean hasAttribute(QName qname) {
         if (qname != null) {
-            return _element.hasAttributeNS(qname.getNamespaceURI(), qname.getLocalPart());
+            return _element.hasAttributeNS(namespaceOf(qname), qname.getLocalPart());
         }
         return false;
     }
@@ -230,7 +241,7 @@ public class DOMConfiguration extends BaseConfiguration {
     @Override
     public String getAttribute(QName qname) {
         if (qname != null) {
-            Attr attr = _element.getAttributeNodeNS(qname.getNamespaceURI(), qname.getLocalPart());
+            Attr attr = _element.getAttributeNodeNS(namespaceOf(qname), qname.getLocalPart());
             if (attr != null) {
                 return attr.getValue();
             }
@@ -243,6 +254,7 @@ public class DOMConfiguration extends BaseConfiguration {
      */
     @Override
     public Configuration setAttribute(String name, String value) {
+        modified();
         if (value == null) {
             _element.removeAttribute(name);
         } else {
@@ -256,7 +268,8 @@ public class DOMConfiguration extends BaseConfiguration {
      */
     @Override
     public Configuration setAttribute(QName qname, String value) {
-        Attr attr = _element.getAttributeNodeNS(qname.getNamespaceURI(), qname.getLocalPart());
+        modified();
+        Attr attr = _element.getAttributeNodeNS(namespaceOf(qname), qname.getLocalPart());
         if (attr != null) {
             if (value == null) {
                 _element.removeAttributeNode(attr);
@@ -275,6 +288,12 @@ public class DOMConfiguration extends BaseConfiguration {
         return this;
     }
 
+    private static String namespaceOf(QName qname) {
+        // an unqualified attribute has a null namespace in DOM, but "" in a QName
+        String namespace = qname.getNamespaceURI();
+        return namespace != null && namespace.length() > 0 ? namespace : null;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -296,7 +315,7 @@ public class DOMConfiguration extends BaseConfiguration {
                 _parent_config = null;
             }
             if (_parent_config == null) {
-                _parent_config = new DOMConfiguration(e, false);
+                _parent_config = wrap(e);
                 _parent_element = e;
             }
         }
@@ -368,7 +387,7 @@ public class DOMConfiguration extends BaseConfiguration {
         for (int i=0; i < nodes.getLength(); i++) {
             Node node = nodes.item(i);
             if (node.getNodeType() == Node.ELEMENT_NODE) {
-                configs.add(new DOMConfiguration((Element)node));
+                configs.add(wrap((Element)node));
             }
         }
         return configs;
@@ -386,7 +405,7 @@ public class DOMConfiguration extends BaseConfiguration {
             if (node.getNodeType() == Node.ELEMENT_NODE) {
                 Element element = (Element)node;
                 if (Nodes.nameOf(element).equals(name)) {
-                    configs.add(new DOMConfiguration(element));
+                    configs.add(wrap(element));
                 }
             }
         }
@@ -405,7 +424,7 @@ public class DOMConfiguration extends BaseConfiguration {
             if (node.getNodeType() == Node.ELEMENT_NODE) {
                 Element element = (Element)node;
                 if (Nodes.nameOf(element).startsWith(name)) {
-                    configs.add(new DOMConfiguration(element));
+                    configs.add(wrap(element));
                 }
             }
         }
@@ -420,7 +439,7 @@ public class DOMConfiguration extends BaseConfiguration {
         List<Configuration> configs = new ArrayList<Configuration>();
         NodeList nodes = _element.getElementsByTagNameNS(qname.getNamespaceURI(), qname.getLocalPart());
         for (int i=0; i < nodes.getLength(); i++) {
-            configs.add(new DOMConfiguration((Element)nodes.item(i)));
+            configs.add(wrap((Element)nodes.item(i)));
         }
         return configs;
     }
@@ -436,7 +455,7 @@ public class DOMConfiguration extends BaseConfiguration {
             if (node.getNodeType() == Node.ELEMENT_NODE) {
                 Element element = (Element)node;
                 if (Nodes.nameOf(element).equals(name)) {
-                    return new DOMConfiguration(element);
+                    return wrap(element);
                 }
             }
         }
@@ -454,7 +473,7 @@ public class DOMConfiguration extends BaseConfiguration {
             if (node.getNodeType() == Node.ELEMENT_NODE) {
                 Element element = (Element)node;
                 if (Nodes.nameOf(element).startsWith(name)) {
-                    return new DOMConfiguration(element);
+                    return wrap(element);
                 }
             }
         }
@@ -468,7 +487,7 @@ public class DOMConfiguration extends BaseConfiguration {
     public Configuration getFirstChild(QName qname) {
         NodeList nodes = _element.getElementsByTagNameNS(qname.getNamespaceURI(), qname.getLocalPart());
         if (nodes.getLength() > 0) {
-            return new DOMConfiguration((Element)nodes.item(0));
+            return wrap((Element)nodes.item(0));
         }
         return null;
     }
@@ -479,6 +498,8 @@ public class DOMConfiguration extends BaseConfiguration {
     @Override
     public Configuration addChild(Configuration child) {
         DOMConfiguration config = new DOMConfiguration(child);
+        config.modified();
+        modified();
         _element.getOwnerDocument().adoptNode(config._element);
         _element.appendChild(config._element);
         return this;
@@ -489,6 +510,7 @@ public class DOMConfiguration extends BaseConfiguration {
      */
     @Override
     public Configuration removeChildren() {
+        modified();
         NodeList nodes = _element.getChildNodes();
         for (int i=0; i < nodes.getLength(); i++) {
             Node node = nodes.item(i);
@@ -504,6 +526,7 @@ public class DOMConfiguration extends BaseConfiguration {
      */
     @Override
     public Configuration removeChildren(String name) {
+        modified();
         NodeList nodes = _element.getChildNodes();
         for (int i=0; i < nodes.getLength(); i++) {
             Node node = nodes.item(i);
@@ -522,6 +545,7 @@ public class DOMConfiguration extends BaseConfiguration {
      */
     @Override
     public Configuration removeChildren(QName qname) {
+        modified();
         NodeList nodes = _element.getElementsByTagNameNS(qname.getNamespaceURI(), qname.getLocalPart());
         for (int i=0; i < nodes.getLength(); i++) {
             _element.removeChild(nodes.item(i));
@@ -546,6 +570,52 @@ public class DOMConfiguration extends BaseConfiguration {
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getUserData(String key) {
+        return userData().get(_element, key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration setUserData(String key, Object data) {
+        userData().put(_element, key, data);
+        return this;
+    }
+
+    private DOMConfiguration wrap(Element element) {
+        DOMConfiguration config = new DOMConfiguration(element, false);
+        config._user_data = userData();
+        return config;
+    }
+
+    private UserData userData() {
+        Document document = _element.getOwnerDocument();
+        UserData user_data = _user_data;
+        if (user_data == null || user_data._document != document) {
+            // the DOM's own user data table isn't thread-safe, so it is only used (once per
+            // wrapper, or when the element moves to another document) to find the store
+            synchronized (document) {
+                user_data = (UserData)document.getUserData(USER_DATA_KEY);
+                if (user_data == null) {
+                    user_data = new UserData(document);
+                    document.setUserData(USER_DATA_KEY, user_data, null);
+                }
+            }
+            _user_data = user_data;
+        }
+        return user_data;
+    }
+
+    private void modified() {
+        // objects associated with nodes (e.g. models) may be derived from any part of the document
+        userData().clear();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -561,9 +631,7 @@ public class DOMConfiguration extends BaseConfiguration {
     public void write(Writer writer) throws IOException {
         orderChildren();
         try {
-            TransformerFactory tf = TransformerFactory.newInstance();
-            String xsl = new StringResource().pull("/org/switchyard/config/pretty-print.xsl");
-            Transformer t = tf.newTransformer(new StreamSource(new StringReader(xsl)));
+            Transformer t = XMLFactories.newTransformer(PRETTY_PRINT_XSL);
             t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
             t.transform(getSource(), new StreamResult(writer));
         } catch (TransformerException te) {
@@ -607,4 +675,40 @@ public class DOMConfiguration extends BaseConfiguration {
         return true;
     }
 
+    /**
+     * The user data of a document's elements, which can be read without locking.
+     */
+    private static final class UserData {
+
+        private final Document _document;
+        // elements don't override equals, so by identity; the maps are copy-on-write
+        private final ConcurrentHashMap<Element,Map<String,Object>> _map =
+            new ConcurrentHashMap<Element,Map<String,Object>>();
+
+        private UserData(Document document) {
+            _document = document;
+        }
+
+        private Object get(Element element, String key) {
+            Map<String,Object> map = _map.get(element);
+            return map != null ? map.get(key) : null;
+        }
+
+        private synchronized void put(Element element, String key, Object data) {
+            Map<String,Object> previous = _map.get(element);
+            Map<String,Object> map = previous != null
+                ? new HashMap<String,Object>(previous) : new HashMap<String,Object>(2);
+            if (data != null) {
+                map.put(key, data);
+            } else {
+                map.remove(key);
+            }
+            _map.put(element, map);
+        }
+
+        private void clear() {
+            _map.clear();
+        }
+    }
+
 }
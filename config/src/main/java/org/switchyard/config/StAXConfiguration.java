@@ -0,0 +1,1251 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+
+import org.switchyard.config.util.QNames;
+import org.switchyard.config.util.XMLFactories;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * A compact, read-optimized representation of a Configuration, built from a single StAX pass.
+ * <p/>
+ * The parsed tree is immutable: names are interned per document and attributes are held in arrays,
+ * so it is considerably smaller and quicker to build than a DOM.  Copies share the tree.  The first
+ * time a config needs a DOM - on a mutation, {@link #getSource()} or {@link #write(Writer)} - the
+ * whole tree it belongs to is materialized as a DOM, after which every config of that tree delegates
+ * to a {@link DOMConfiguration}.  Reads behave exactly as they would on a DOMConfiguration of the
+ * same document, before and after materialization.  Comments and processing instructions are not
+ * retained.
+ */
+public class StAXConfiguration extends BaseConfiguration {
+
+    private static final String XMLNS = XMLConstants.XMLNS_ATTRIBUTE;
+    private static final String WILDCARD = "*";
+
+    private final Tree _tree;
+    private ElementNode _node;
+    private Element _element;
+    private DOMConfiguration _dom;
+    private StAXConfiguration _parent_config;
+
+    private StAXConfiguration(Tree tree, ElementNode node) {
+        _tree = tree;
+        _node = node;
+    }
+
+    private StAXConfiguration(Tree tree, ElementNode node, Element element) {
+        _tree = tree;
+        _node = node;
+        _element = element;
+    }
+
+    /**
+     * Parses a config from an InputSource in a single StAX pass.
+     * @param is the InputSource
+     * @return the config
+     * @throws IOException if a problem occurred
+     */
+    static StAXConfiguration read(InputSource is) throws IOException {
+        InputStream opened = null;
+        try {
+            XMLStreamReader reader;
+            if (is.getCharacterStream() != null) {
+                reader = XMLFactories.createXMLStreamReader(is.getCharacterStream());
+            } else if (is.getByteStream() != null) {
+                reader = XMLFactories.createXMLStreamReader(is.getByteStream(), is.getEncoding());
+            } else if (is.getSystemId() != null) {
+                opened = new URL(is.getSystemId()).openStream();
+                reader = XMLFactories.createXMLStreamReader(opened, null);
+            } else {
+                throw new IOException("InputSource has no character stream, byte stream or system id");
+            }
+            try {
+                ElementNode root = new Builder().build(reader);
+                return new StAXConfiguration(new Tree(root), root);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException xse) {
+            throw new IOException(xse);
+        } finally {
+            if (opened != null) {
+                opened.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a config written by {@link #writeCompiled(DataOutput)}, without parsing any XML.
+     * The input is trusted: use {@link #readCompiled(DataInput, long)} if it may be corrupt.
+     * @param in the compiled config
+     * @return the config
+     * @throws IOException if a problem occurred, or the input is not a compiled config
+     */
+    public static StAXConfiguration readCompiled(DataInput in) throws IOException {
+        return readCompiled(in, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads a config written by {@link #writeCompiled(DataOutput)}, without parsing any XML,
+     * from an input of known length.  Counts and lengths read are checked against the bytes
+     * remaining, so a corrupt input fails with an IOException rather than exhausting memory.
+     * @param in the compiled config
+     * @param length the number of bytes which may be read from the input
+     * @return the config
+     * @throws IOException if a problem occurred, or the input is not a compiled config
+     */
+    public static StAXConfiguration readCompiled(DataInput in, long length) throws IOException {
+        ElementNode root = new Loader(length).element(in);
+        return new StAXConfiguration(new Tree(root), root);
+    }
+
+    /**
+     * Writes this config (and its descendants) in a compact binary form which can be read back,
+     * much quicker than parsing the XML, with {@link #readCompiled(DataInput)}.  Only configs that
+     * haven't been materialized as a DOM (i.e. that haven't been modified) can be compiled.
+     * @param out where to write the compiled config
+     * @throws IOException if a problem occurred
+     */
+    public void writeCompiled(DataOutput out) throws IOException {
+        if (_tree.isMaterialized()) {
+            throw new IllegalStateException("Only unmodified configs can be compiled.");
+        }
+        new Compiler().element(_node, out);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        if (_node != null) {
+            return _node._name._local;
+        }
+        return dom().getName();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public QName getQName() {
+        if (_node != null) {
+            return _node._name._qname;
+        }
+        return dom().getQName();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getValue() {
+        if (_tree.isMaterialized()) {
+            return dom().getValue();
+        }
+        for (Object content : _node._content) {
+            if (content instanceof String) {
+                return (String)content;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration setValue(String value) {
+        dom().setValue(value);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getAttributeNames() {
+        if (_tree.isMaterialized()) {
+            return dom().getAttributeNames();
+        }
+        Name[] attr_names = _node._attr_names;
+        List<String> names = new ArrayList<String>(attr_names.length);
+        for (Name attr_name : attr_names) {
+            names.add(attr_name._local);
+        }
+        return names;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<QName> getAttributeQNames() {
+        if (_tree.isMaterialized()) {
+            return dom().getAttributeQNames();
+        }
+        Name[] attr_names = _node._attr_names;
+        List<QName> qnames = new ArrayList<QName>(attr_names.length);
+        for (Name attr_name : attr_names) {
+            qnames.add(attr_name._qname);
+        }
+        return qnames;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasAttribute(String name) {
+        if (_tree.isMaterialized()) {
+            return dom().hasAttribute(name);
+        }
+        return name != null && _node.indexOf(name) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasAttribute(QName qname) {
+        if (_tree.isMaterialized()) {
+            return dom().hasAttribute(qname);
+        }
+        return qname != null && _node.indexOf(qname) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getAttribute(String name) {
+        if (_tree.isMaterialized()) {
+            return dom().getAttribute(name);
+        }
+        if (name != null) {
+            int index = _node.indexOf(name);
+            // same as DOM: an absent attribute is an empty string
+            return index >= 0 ? _node._attr_values[index] : "";
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getAttribute(QName qname) {
+        if (_tree.isMaterialized()) {
+            return dom().getAttribute(qname);
+        }
+        if (qname != null) {
+            int index = _node.indexOf(qname);
+            if (index >= 0) {
+                return _node._attr_values[index];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration setAttribute(String name, String value) {
+        dom().setAttribute(name, value);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration setAttribute(QName qname, String value) {
+        dom().setAttribute(qname, value);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasParent() {
+        if (_tree.isMaterialized()) {
+            return element().getParentNode() instanceof Element;
+        }
+        return _node != _tree._root;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration getParent() {
+        if (_tree.isMaterialized()) {
+            Node node = element().getParentNode();
+            if (node instanceof Element) {
+                Element e = (Element)node;
+                if (_parent_config == null || _parent_config.element() != e) {
+                    // (re)wrap, as the document structure may have changed underneath us
+                    _parent_config = _tree.wrap(e);
+                }
+                return _parent_config;
+            }
+            return null;
+        }
+        if (_parent_config == null && _node != _tree._root) {
+            _parent_config = new StAXConfiguration(_tree, _node._parent);
+        }
+        return _parent_config;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasChildren() {
+        if (_tree.isMaterialized()) {
+            return dom().hasChildren();
+        }
+        return _node._children.length > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasChildren(String name) {
+        if (_tree.isMaterialized()) {
+            return dom().hasChildren(name);
+        }
+        if (name != null) {
+            for (ElementNode child : _node._children) {
+                if (child._name._local.equals(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasChildren(QName qname) {
+        if (_tree.isMaterialized()) {
+            return dom().hasChildren(qname);
+        }
+        if (qname != null) {
+            for (ElementNode child : _node._children) {
+                if (child._name._qname.equals(qname)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Configuration> getChildren() {
+        if (_tree.isMaterialized()) {
+            return wrap(dom().getChildren());
+        }
+        ElementNode[] children = _node._children;
+        List<Configuration> configs = new ArrayList<Configuration>(children.length);
+        for (ElementNode child : children) {
+            configs.add(new StAXConfiguration(_tree, child));
+        }
+        return configs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Configuration> getChildren(String name) {
+        if (_tree.isMaterialized()) {
+            return wrap(dom().getChildren(name));
+        }
+        List<Configuration> configs = new ArrayList<Configuration>();
+        for (ElementNode child : _node._children) {
+            if (child._name._local.equals(name)) {
+                configs.add(new StAXConfiguration(_tree, child));
+            }
+        }
+        return configs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Configuration> getChildrenStartsWith(String name) {
+        if (_tree.isMaterialized()) {
+            return wrap(dom().getChildrenStartsWith(name));
+        }
+        List<Configuration> configs = new ArrayList<Configuration>();
+        for (ElementNode child : _node._children) {
+            if (child._name._local.startsWith(name)) {
+                configs.add(new StAXConfiguration(_tree, child));
+            }
+        }
+        return configs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Configuration> getChildren(QName qname) {
+        if (_tree.isMaterialized()) {
+            return wrap(dom().getChildren(qname));
+        }
+        // same as DOMConfiguration, which matches all descendants (getElementsByTagNameNS)
+        List<Configuration> configs = new ArrayList<Configuration>();
+        collectDescendants(_node, qname.getNamespaceURI(), qname.getLocalPart(), configs, false);
+        return configs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration getFirstChild(String name) {
+        if (_tree.isMaterialized()) {
+            return wrap(dom().getFirstChild(name));
+        }
+        for (ElementNode child : _node._children) {
+            if (child._name._local.equals(name)) {
+                return new StAXConfiguration(_tree, child);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration getFirstChildStartsWith(String name) {
+        if (_tree.isMaterialized()) {
+            return wrap(dom().getFirstChildStartsWith(name));
+        }
+        for (ElementNode child : _node._children) {
+            if (child._name._local.startsWith(name)) {
+                return new StAXConfiguration(_tree, child);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration getFirstChild(QName qname) {
+        if (_tree.isMaterialized()) {
+            return wrap(dom().getFirstChild(qname));
+        }
+        List<Configuration> configs = new ArrayList<Configuration>(1);
+        collectDescendants(_node, qname.getNamespaceURI(), qname.getLocalPart(), configs, true);
+        return configs.isEmpty() ? null : configs.get(0);
+    }
+
+    private boolean collectDescendants(ElementNode node, String namespace, String localName, List<Configuration> configs, boolean first) {
+        for (ElementNode child : node._children) {
+            if (child._name.matches(namespace, localName)) {
+                configs.add(new StAXConfiguration(_tree, child));
+                if (first) {
+                    return true;
+                }
+            }
+            if (collectDescendants(child, namespace, localName, configs, first)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration addChild(Configuration child) {
+        if (child instanceof StAXConfiguration) {
+            child = ((StAXConfiguration)child).dom();
+        }
+        dom().addChild(child);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration removeChildren() {
+        dom().removeChildren();
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration removeChildren(String name) {
+        dom().removeChildren(name);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration removeChildren(QName qname) {
+        dom().removeChildren(qname);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration copy() {
+        if (_tree.isMaterialized()) {
+            return dom().copy();
+        }
+        // the tree is immutable, so the copy can share it
+        return new StAXConfiguration(new Tree(_node), _node);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration normalize() {
+        if (_tree.isMaterialized()) {
+            dom().normalize();
+        }
+        // else: a parsed tree is already normalized
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getUserData(String key) {
+        if (_tree.isMaterialized()) {
+            return dom().getUserData(key);
+        }
+        return _tree.getUserData(_node, key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Configuration setUserData(String key, Object data) {
+        if (!_tree.setUserData(_node, key, data)) {
+            dom().setUserData(key, data);
+        }
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Source getSource() {
+        return new DOMSource(element());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(Writer writer) throws IOException {
+        orderChildren();
+        dom().write(writer);
+    }
+
+    /**
+     * Whether this config's tree has been materialized as a DOM.
+     * @return true if materialized
+     */
+    boolean isMaterialized() {
+        return _tree.isMaterialized();
+    }
+
+    private Element element() {
+        if (_element == null) {
+            _element = _tree.materialize(_node);
+        }
+        return _element;
+    }
+
+    /**
+     * Gets a DOM view of this config, materializing the tree if necessary.
+     * @return the DOM view
+     */
+    DOMConfiguration dom() {
+        DOMConfiguration dom = _dom;
+        if (dom == null) {
+            dom = new DOMConfiguration(element(), false);
+            _dom = dom;
+        }
+        return dom;
+    }
+
+    private Configuration wrap(Configuration config) {
+        if (config == null) {
+            return null;
+        }
+        DOMConfiguration dom = (DOMConfiguration)config;
+        StAXConfiguration wrapped = _tree.wrap(dom.getElement());
+        wrapped._dom = dom;
+        return wrapped;
+    }
+
+    private List<Configuration> wrap(List<Configuration> configs) {
+        List<Configuration> wrapped = new ArrayList<Configuration>(configs.size());
+        for (Configuration config : configs) {
+            wrapped.add(wrap(config));
+        }
+        return wrapped;
+    }
+
+    private Object identity() {
+        return _node != null ? _node : _element;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(identity());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        StAXConfiguration other = (StAXConfiguration)obj;
+        return _tree == other._tree && identity() == other.identity();
+    }
+
+    /**
+     * The (shared) state of a parsed document, or of a copied subtree of one.
+     */
+    private static final class Tree {
+
+        private final ElementNode _root;
+        private volatile boolean _materialized;
+        private Map<ElementNode,Element> _node_elements;
+        private Map<Element,ElementNode> _element_nodes;
+        // user data by node (nodes don't override equals, so by identity), kept per tree, as
+        // copies share nodes; the maps are copy-on-write, as reads (model lookups) vastly
+        // outnumber writes, and only used until the tree is materialized, after which the
+        // user data moves to the DOM
+        private volatile ConcurrentHashMap<ElementNode,Map<String,Object>> _user_data;
+
+        private Tree(ElementNode root) {
+            _root = root;
+        }
+
+        private Object getUserData(ElementNode node, String key) {
+            ConcurrentHashMap<ElementNode,Map<String,Object>> user_data = _user_data;
+            Map<String,Object> map = user_data != null ? user_data.get(node) : null;
+            return map != null ? map.get(key) : null;
+        }
+
+        /**
+         * Sets user data on a node, as long as this tree isn't materialized.
+         * @return false if the tree is materialized, and the user data belongs on the DOM
+         */
+        private synchronized boolean setUserData(ElementNode node, String key, Object data) {
+            if (_materialized) {
+                return false;
+            }
+            if (_user_data == null) {
+                _user_data = new ConcurrentHashMap<ElementNode,Map<String,Object>>();
+            }
+            Map<String,Object> previous = _user_data.get(node);
+            Map<String,Object> map = previous != null
+                ? new HashMap<String,Object>(previous) : new HashMap<String,Object>(2);
+            if (data != null) {
+                map.put(key, data);
+            } else {
+                map.remove(key);
+            }
+            _user_data.put(node, map);
+            return true;
+        }
+
+        private boolean isMaterialized() {
+            return _materialized;
+        }
+
+        private synchronized Element materialize(ElementNode node) {
+            if (!_materialized) {
+                Document document = XMLFactories.newDocument();
+                _node_elements = new IdentityHashMap<ElementNode,Element>();
+                _element_nodes = new IdentityHashMap<Element,ElementNode>();
+                document.appendChild(toElement(document, _root));
+                // the DOM takes over the user data, and drops it if the DOM is modified
+                if (_user_data != null) {
+                    for (Map.Entry<ElementNode,Map<String,Object>> entry : _user_data.entrySet()) {
+                        DOMConfiguration config = new DOMConfiguration(_node_elements.get(entry.getKey()), false);
+                        for (Map.Entry<String,Object> data : entry.getValue().entrySet()) {
+                            config.setUserData(data.getKey(), data.getValue());
+                        }
+                    }
+                    _user_data = null;
+                }
+                _materialized = true;
+            }
+            return _node_elements.get(node);
+        }
+
+        private Element toElement(Document document, ElementNode node) {
+            Name name = node._name;
+            Element element = document.createElementNS(name._namespace, name._nodeName);
+            for (int i = 0; i < node._attr_names.length; i++) {
+                Name attr_name = node._attr_names[i];
+                element.setAttributeNS(attr_name._namespace, attr_name._nodeName, node._attr_values[i]);
+            }
+            for (Object content : node._content) {
+                if (content instanceof ElementNode) {
+                    element.appendChild(toElement(document, (ElementNode)content));
+                } else if (content instanceof String) {
+                    element.appendChild(document.createTextNode((String)content));
+                } else {
+                    element.appendChild(document.createCDATASection(((CData)content)._text));
+                }
+            }
+            _node_elements.put(node, element);
+            _element_nodes.put(element, node);
+            return element;
+        }
+
+        private synchronized StAXConfiguration wrap(Element element) {
+            return new StAXConfiguration(this, _element_nodes.get(element), element);
+        }
+    }
+
+    /**
+     * An interned element or attribute name.
+     */
+    private static final class Name {
+
+        private final String _namespace;
+        private final String _local;
+        private final String _prefix;
+        private final String _nodeName;
+        private final QName _qname;
+
+        private Name(String namespace, String local, String prefix) {
+            _namespace = namespace;
+            _local = local;
+            _prefix = prefix;
+            _nodeName = prefix != null ? prefix + ':' + local : local;
+            _qname = QNames.create(namespace, local, prefix);
+        }
+
+        private boolean matches(String namespace, String localName) {
+            // same as getElementsByTagNameNS: wildcards, and "" is no namespace
+            if (!WILDCARD.equals(localName) && !_local.equals(localName)) {
+                return false;
+            }
+            if (WILDCARD.equals(namespace)) {
+                return true;
+            }
+            if (namespace == null || namespace.length() == 0) {
+                return _namespace == null;
+            }
+            return namespace.equals(_namespace);
+        }
+    }
+
+    /**
+     * A CDATA section; kept distinct from text, which is what DOM returns as the value.
+     */
+    private static final class CData {
+
+        private final String _text;
+
+        private CData(String text) {
+            _text = text;
+        }
+    }
+
+    /**
+     * An immutable element.  Attributes (including namespace declarations) are sorted by qualified
+     * name, which is the order DOM reports them in.
+     */
+    private static final class ElementNode {
+
+        private static final ElementNode[] NO_CHILDREN = new ElementNode[0];
+        private static final Name[] NO_NAMES = new Name[0];
+        private static final String[] NO_VALUES = new String[0];
+        private static final Object[] NO_CONTENT = new Object[0];
+
+        private final Name _name;
+        private final Name[] _attr_names;
+        private final String[] _attr_values;
+        private final ElementNode[] _children;
+        private final Object[] _content;
+        private ElementNode _parent;
+
+        private ElementNode(Name name, Name[] attr_names, String[] attr_values, ElementNode[] children, Object[] content) {
+            _name = name;
+            _attr_names = attr_names;
+            _attr_values = attr_values;
+            _children = children;
+            _content = content;
+            for (ElementNode child : children) {
+                child._parent = this;
+            }
+        }
+
+        private int indexOf(String nodeName) {
+            for (int i = 0; i < _attr_names.length; i++) {
+                if (_attr_names[i]._nodeName.equals(nodeName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int indexOf(QName qname) {
+            // same as DOMConfiguration: "" matches an attribute without a namespace
+            String namespace = qname.getNamespaceURI();
+            if (namespace != null && namespace.length() == 0) {
+                namespace = null;
+            }
+            String local = qname.getLocalPart();
+            for (int i = 0; i < _attr_names.length; i++) {
+                Name attr_name = _attr_names[i];
+                if (attr_name._local.equals(local)
+                        && (namespace == null ? attr_name._namespace == null : namespace.equals(attr_name._namespace))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Writes an ElementNode tree in compiled form.  Each string and name is written once, and
+     * referred to by its index from then on.
+     */
+    private static final class Compiler {
+
+        private static final int CONTENT_ELEMENT = 0;
+        private static final int CONTENT_TEXT = 1;
+        private static final int CONTENT_CDATA = 2;
+        private static final int NEW = -1;
+
+        private final Map<String,Integer> _strings = new HashMap<String,Integer>();
+        private final Map<Name,Integer> _names = new IdentityHashMap<Name,Integer>();
+
+        private void element(ElementNode node, DataOutput out) throws IOException {
+            name(node._name, out);
+            out.writeInt(node._attr_names.length);
+            for (int i = 0; i < node._attr_names.length; i++) {
+                name(node._attr_names[i], out);
+                string(node._attr_values[i], out);
+            }
+            out.writeInt(node._content.length);
+            for (Object content : node._content) {
+                if (content instanceof ElementNode) {
+                    out.writeByte(CONTENT_ELEMENT);
+                    element((ElementNode)content, out);
+                } else if (content instanceof String) {
+                    out.writeByte(CONTENT_TEXT);
+                    string((String)content, out);
+                } else {
+                    out.writeByte(CONTENT_CDATA);
+                    string(((CData)content)._text, out);
+                }
+            }
+        }
+
+        private void name(Name name, DataOutput out) throws IOException {
+            Integer index = _names.get(name);
+            if (index != null) {
+                out.writeInt(index);
+                return;
+            }
+            _names.put(name, _names.size());
+            out.writeInt(NEW);
+            string(name._namespace, out);
+            string(name._local, out);
+            string(name._prefix, out);
+        }
+
+        private void string(String str, DataOutput out) throws IOException {
+            // 0 is null, and strings are numbered from 1
+            if (str == null) {
+                out.writeInt(0);
+                return;
+            }
+            Integer index = _strings.get(str);
+            if (index != null) {
+                out.writeInt(index);
+                return;
+            }
+            _strings.put(str, _strings.size() + 1);
+            out.writeInt(NEW);
+            // not writeUTF, which is limited to 64K
+            byte[] bytes = str.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads an ElementNode tree written by a {@link Compiler}.
+     */
+    private static final class Loader {
+
+        // the smallest encoding of an attribute (name and value indexes) and of a content item
+        private static final int MIN_ATTR_SIZE = 8;
+        private static final int MIN_CONTENT_SIZE = 5;
+
+        private final List<String> _strings = new ArrayList<String>();
+        private final List<Name> _names = new ArrayList<Name>();
+        private long _remaining;
+
+        private Loader(long remaining) {
+            _strings.add(null);
+            _remaining = remaining;
+        }
+
+        private ElementNode element(DataInput in) throws IOException {
+            Name name = name(in);
+            int attr_count = count(in, MIN_ATTR_SIZE);
+            Name[] attr_names = ElementNode.NO_NAMES;
+            String[] attr_values = ElementNode.NO_VALUES;
+            if (attr_count > 0) {
+                attr_names = new Name[attr_count];
+                attr_values = new String[attr_count];
+                for (int i = 0; i < attr_count; i++) {
+                    attr_names[i] = name(in);
+                    attr_values[i] = string(in);
+                }
+            }
+            int content_count = count(in, MIN_CONTENT_SIZE);
+            if (content_count == 0) {
+                return new ElementNode(name, attr_names, attr_values, ElementNode.NO_CHILDREN, ElementNode.NO_CONTENT);
+            }
+            Object[] content = new Object[content_count];
+            List<ElementNode> children = new ArrayList<ElementNode>();
+            for (int i = 0; i < content_count; i++) {
+                take(1);
+                int type = in.readByte();
+                switch (type) {
+                    case Compiler.CONTENT_ELEMENT:
+                        ElementNode child = element(in);
+                        children.add(child);
+                        content[i] = child;
+                        break;
+                    case Compiler.CONTENT_TEXT:
+                        content[i] = string(in);
+                        break;
+                    case Compiler.CONTENT_CDATA:
+                        content[i] = new CData(string(in));
+                        break;
+                    default:
+                        throw new IOException("Unknown content type " + type + ".");
+                }
+            }
+            return new ElementNode(name, attr_names, attr_values, children.toArray(new ElementNode[children.size()]), content);
+        }
+
+        private Name name(DataInput in) throws IOException {
+            take(4);
+            int index = in.readInt();
+            if (index == Compiler.NEW) {
+                Name name = new Name(string(in), string(in), string(in));
+                _names.add(name);
+                return name;
+            }
+            if (index < 0 || index >= _names.size()) {
+                throw new IOException("Unknown name " + index + ".");
+            }
+            return _names.get(index);
+        }
+
+        private String string(DataInput in) throws IOException {
+            take(4);
+            int index = in.readInt();
+            if (index == Compiler.NEW) {
+                int length = count(in, 1);
+                take(length);
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                String str = new String(bytes, "UTF-8");
+                _strings.add(str);
+                return str;
+            }
+            if (index < 0 || index >= _strings.size()) {
+                throw new IOException("Unknown string " + index + ".");
+            }
+            return _strings.get(index);
+        }
+
+        private int count(DataInput in, int minItemSize) throws IOException {
+            take(4);
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Negative count " + count + ".");
+            }
+            if ((long)count * minItemSize > _remaining) {
+                throw new IOException("Count " + count + " exceeds the " + _remaining + " bytes remaining.");
+            }
+            return count;
+        }
+
+        private void take(int bytes) throws IOException {
+            if (bytes > _remaining) {
+                throw new IOException("Unexpected end of compiled config.");
+            }
+            _remaining -= bytes;
+        }
+    }
+
+    /**
+     * Builds the ElementNode tree from a StAX event stream, interning names and strings per document.
+     */
+    private static final class Builder {
+
+        private static final Comparator<Object[]> ATTR_ORDER = new Comparator<Object[]>() {
+            public int compare(Object[] a1, Object[] a2) {
+                return ((Name)a1[0])._nodeName.compareTo(((Name)a2[0])._nodeName);
+            }
+        };
+
+        private final Map<String,List<Name>> _names = new HashMap<String,List<Name>>();
+        private final Map<String,String> _strings = new HashMap<String,String>();
+        private final StringBuilder _text = new StringBuilder();
+        private final List<String> _indents = new ArrayList<String>();
+
+        private ElementNode build(XMLStreamReader reader) throws XMLStreamException {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    return element(reader);
+                }
+            }
+            throw new XMLStreamException("No root element");
+        }
+
+        private ElementNode element(XMLStreamReader reader) throws XMLStreamException {
+            Name name = name(reader.getNamespaceURI(), reader.getLocalName(), reader.getPrefix());
+            int ns_count = reader.getNamespaceCount();
+            int attr_count = reader.getAttributeCount();
+            Name[] attr_names = ElementNode.NO_NAMES;
+            String[] attr_values = ElementNode.NO_VALUES;
+            if (ns_count + attr_count > 0) {
+                Object[][] attrs = new Object[ns_count + attr_count][];
+                for (int i = 0; i < ns_count; i++) {
+                    String prefix = empty(reader.getNamespacePrefix(i));
+                    Name attr_name = prefix != null
+                            ? name(DEFAULT_XMLNS_URI, prefix, XMLNS)
+                            : name(DEFAULT_XMLNS_URI, XMLNS, null);
+                    attrs[i] = new Object[] {attr_name, string(reader.getNamespaceURI(i))};
+                }
+                for (int i = 0; i < attr_count; i++) {
+                    Name attr_name = name(reader.getAttributeNamespace(i), reader.getAttributeLocalName(i), reader.getAttributePrefix(i));
+                    attrs[ns_count + i] = new Object[] {attr_name, reader.getAttributeValue(i)};
+                }
+                Arrays.sort(attrs, ATTR_ORDER);
+                attr_names = new Name[attrs.length];
+                attr_values = new String[attrs.length];
+                for (int i = 0; i < attrs.length; i++) {
+                    attr_names[i] = (Name)attrs[i][0];
+                    attr_values[i] = (String)attrs[i][1];
+                }
+            }
+            List<ElementNode> children = null;
+            List<Object> content = null;
+            while (true) {
+                int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        _text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        // dropped, so the text either side of it merges (as in a normalized DOM)
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        content = add(content, flushText());
+                        content = add(content, new CData(reader.getText()));
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        content = add(content, flushText());
+                        break;
+                    case XMLStreamConstants.START_ELEMENT:
+                        content = add(content, flushText());
+                        ElementNode child = element(reader);
+                        if (children == null) {
+                            children = new ArrayList<ElementNode>();
+                        }
+                        children.add(child);
+                        content = add(content, child);
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        content = add(content, flushText());
+                        return new ElementNode(name, attr_names, attr_values,
+                                children != null ? children.toArray(new ElementNode[children.size()]) : ElementNode.NO_CHILDREN,
+                                content != null ? content.toArray() : ElementNode.NO_CONTENT);
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private List<Object> add(List<Object> content, Object item) {
+            if (item == null) {
+                return content;
+            }
+            if (content == null) {
+                content = new ArrayList<Object>();
+            }
+            content.add(item);
+            return content;
+        }
+
+        private String flushText() {
+            if (_text.length() == 0) {
+                return null;
+            }
+            // indentation repeats throughout a document, so share it rather than copying it out each time
+            String text = indent();
+            if (text == null) {
+                text = _text.toString();
+            }
+            _text.setLength(0);
+            return text;
+        }
+
+        private String indent() {
+            int length = _text.length();
+            if (_text.charAt(0) != '\n') {
+                return null;
+            }
+            for (int i = 1; i < length; i++) {
+                if (_text.charAt(i) != ' ') {
+                    return null;
+                }
+            }
+            while (_indents.size() < length) {
+                _indents.add(null);
+            }
+            String indent = _indents.get(length - 1);
+            if (indent == null) {
+                indent = _text.toString();
+                _indents.set(length - 1, indent);
+            }
+            return indent;
+        }
+
+        private Name name(String namespace, String local, String prefix) {
+            namespace = empty(namespace);
+            prefix = empty(prefix);
+            List<Name> names = _names.get(local);
+            if (names == null) {
+                names = new ArrayList<Name>(1);
+                _names.put(local, names);
+            } else {
+                for (Name name : names) {
+                    if (equal(namespace, name._namespace) && equal(prefix, name._prefix)) {
+                        return name;
+                    }
+                }
+            }
+            Name name = new Name(string(namespace), string(local), string(prefix));
+            names.add(name);
+            return name;
+        }
+
+        private static boolean equal(String str1, String str2) {
+            return str1 == null ? str2 == null : str1.equals(str2);
+        }
+
+        private String string(String str) {
+            if (str == null) {
+                return null;
+            }
+            String interned = _strings.get(str);
+            if (interned == null) {
+                _strings.put(str, str);
+                interned = str;
+            }
+            return interned;
+        }
+
+        private static String empty(String str) {
+            return str != null && str.length() > 0 ? str : null;
+        }
+    }
+
+}
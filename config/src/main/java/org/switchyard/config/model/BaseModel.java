@@ -23,8 +23,6 @@ import java.io.OutputStream;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
 
 import javax.xml.namespace.QName;
 import javax.xml.transform.Source;
@@ -41,9 +39,11 @@ import org.switchyard.config.ConfigurationResource;
  */
 public abstract class BaseModel implements Model {
 
+    // user data key under which a config's model is attached to its underlying node
+    private static final String MODEL_KEY = Model.class.getName();
+
     private Configuration _config;
     private Descriptor _desc;
-    private Map<Configuration,Model> _config_model_map;
     private Model _parent;
 
     protected BaseModel(QName qname) {
@@ -56,8 +56,7 @@ public abstract class BaseModel implements Model {
 
     protected BaseModel(Configuration config, Descriptor desc) {
         _config = config;
-        _desc = desc != null ? desc : new Descriptor();
-        _config_model_map = new WeakHashMap<Configuration,Model>();
+        _desc = desc != null ? desc : Descriptor.getDefault();
     }
 
     /**
@@ -232,22 +231,31 @@ public abstract class BaseModel implements Model {
 
     /**
      * Reads (constructs) a Model based on the specified Configuration.
+     * <p/>
+     * The Model is attached to the Configuration's underlying node, so reading any Configuration wrapping the same node
+     * (for example on a later traversal) returns the same Model instance, until the Configuration is modified.
      * @param config the Configuration
-     * @return the new Model
+     * @return the Model
      */
-    protected final synchronized Model readModel(Configuration config) {
+    protected final Model readModel(Configuration config) {
         if (config != null) {
-            Model model = _config_model_map.get(config);
-            if (model == null) {
-                Marshaller marsh = _desc.getMarshaller(config);
-                if (marsh != null) {
-                    model = marsh.read(config);
-                    if (model != null) {
-                        _config_model_map.put(config, model);
-                    }
+            Object data = config.getUserData(MODEL_KEY);
+            if (data instanceof Model) {
+                Model model = (Model)data;
+                Descriptor desc = model.getModelDescriptor();
+                if ((desc == _desc || _desc.equals(desc)) && config.equals(model.getModelConfiguration())) {
                     return model;
                 }
             }
+            Marshaller marsh = _desc.getMarshaller(config);
+            if (marsh != null) {
+                // a race here only means one of two equivalent models is kept
+                Model model = marsh.read(config);
+                if (model != null) {
+                    config.setUserData(MODEL_KEY, model);
+                }
+                return model;
+            }
         }
         return null;
     }
@@ -18,34 +18,37 @@
  */
 package org.switchyard.config.model;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
-import java.io.StringReader;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 
 import org.switchyard.config.Configuration;
 import org.switchyard.config.util.Classes;
 import org.switchyard.config.util.PropertiesResource;
-import org.switchyard.config.util.StringResource;
+import org.switchyard.config.util.XMLFactories;
 import org.w3c.dom.ls.LSInput;
 import org.w3c.dom.ls.LSResourceResolver;
 
@@ -71,35 +74,25 @@ public final class Descriptor {
     /** The "marshaller" property. */
     public static final String MARSHALLER = "marshaller";
 
-    private Map<String,String> _all_properties_map = new TreeMap<String,String>();
-    private Map<String,Map<String,String>> _prefix_config_map = new HashMap<String,Map<String,String>>();
-    private Map<String,String> _namespace_prefix_map = new HashMap<String,String>();
+    private static final ConcurrentMap<SchemaKey,SchemaHolder> SCHEMAS = new ConcurrentHashMap<SchemaKey,SchemaHolder>();
 
-    private Map<Set<String>,Schema> _namespaces_schema_map = new HashMap<Set<String>,Schema>();;
-    private Map<String,Marshaller> _namespace_marshaller_map = new HashMap<String,Marshaller>();
+    // weakly keyed and weakly held, as a default Descriptor's Marshallers will usually come from the very same ClassLoader
+    private static final Map<ClassLoader,WeakReference<Descriptor>> DEFAULTS =
+        Collections.synchronizedMap(new WeakHashMap<ClassLoader,WeakReference<Descriptor>>());
+
+    private final Map<String,String> _all_properties_map;
+    private final Map<String,Map<String,String>> _prefix_config_map;
+    private final Map<String,String> _namespace_prefix_map;
+
+    private ConcurrentMap<Set<String>,SchemaSources> _namespaces_sources_map = new ConcurrentHashMap<Set<String>,SchemaSources>();
+    private ConcurrentMap<String,Marshaller> _namespace_marshaller_map = new ConcurrentHashMap<String,Marshaller>();
 
     /**
      * Constructs a new Descriptor based on discovered default properties.
+     * @see #getDefault()
      */
     public Descriptor() {
-        String dp = DEFAULT_PROPERTIES.substring(1);
-        Properties props = new Properties();
-        PropertiesResource props_res = new PropertiesResource();
-        try {
-            List<URL> urls = Classes.getResources(dp, Descriptor.class);
-            for (URL url : urls) {
-                Properties url_props = props_res.pull(url);
-                Enumeration<?> pn_enum = url_props.propertyNames();
-                while (pn_enum.hasMoreElements()) {
-                    String pn = (String)pn_enum.nextElement();
-                    props.setProperty(pn, url_props.getProperty(pn));
-                }
-            }
-        } catch (IOException ioe) {
-            // should never happen
-            throw new RuntimeException(ioe);
-        }
-        setProperties(props);
+        this(discoverProperties());
     }
 
     /**
@@ -107,30 +100,78 @@ public final class Descriptor {
      * @param props the Properties
      */
     public Descriptor(Properties props) {
-        setProperties(props);
-    }
-
-    private void setProperties(Properties props) {
+        Map<String,String> all_properties_map = new TreeMap<String,String>();
+        Map<String,Map<String,String>> prefix_config_map = new HashMap<String,Map<String,String>>();
+        Map<String,String> namespace_prefix_map = new HashMap<String,String>();
         Enumeration<?> e = props.propertyNames();
         while (e.hasMoreElements()) {
             String prop_name = (String)e.nextElement();
             String prop_value = props.getProperty(prop_name);
             if (prop_value != null) {
-                _all_properties_map.put(prop_name, prop_value);
+                all_properties_map.put(prop_name, prop_value);
                 StringTokenizer tokenizer = new StringTokenizer(prop_name, ".");
                 String prop_prefix = tokenizer.nextToken().trim();
                 String prop_suffix = tokenizer.nextToken().trim();
-                Map<String,String> config = _prefix_config_map.get(prop_prefix);
+                Map<String,String> config = prefix_config_map.get(prop_prefix);
                 if (config == null) {
                     config = new HashMap<String,String>();
-                    _prefix_config_map.put(prop_prefix, config);
+                    prefix_config_map.put(prop_prefix, config);
                 }
                 config.put(prop_suffix, prop_value);
                 if (NAMESPACE.equals(prop_suffix)) {
-                    _namespace_prefix_map.put(prop_value, prop_prefix);
+                    namespace_prefix_map.put(prop_value, prop_prefix);
+                }
+            }
+        }
+        for (Map.Entry<String,Map<String,String>> entry : prefix_config_map.entrySet()) {
+            entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+        }
+        _all_properties_map = Collections.unmodifiableMap(all_properties_map);
+        _prefix_config_map = Collections.unmodifiableMap(prefix_config_map);
+        _namespace_prefix_map = Collections.unmodifiableMap(namespace_prefix_map);
+    }
+
+    /**
+     * Gets the Descriptor based on the default properties discovered by the current Thread's Context ClassLoader.
+     * <p/>
+     * Unlike {@link #Descriptor()}, which discovers and parses the default properties every time, the Descriptor
+     * is shared per ClassLoader for as long as it is in use, so are its (lazily created) Marshallers and Schemas.
+     * @return the default Descriptor, never null
+     */
+    public static Descriptor getDefault() {
+        ClassLoader loader = Classes.getTCCL();
+        if (loader == null) {
+            loader = Descriptor.class.getClassLoader();
+        }
+        WeakReference<Descriptor> ref = DEFAULTS.get(loader);
+        Descriptor desc = ref != null ? ref.get() : null;
+        if (desc == null) {
+            // a race here only means a Descriptor is discovered twice
+            desc = new Descriptor();
+            DEFAULTS.put(loader, new WeakReference<Descriptor>(desc));
+        }
+        return desc;
+    }
+
+    private static Properties discoverProperties() {
+        String dp = DEFAULT_PROPERTIES.substring(1);
+        Properties props = new Properties();
+        PropertiesResource props_res = new PropertiesResource();
+        try {
+            List<URL> urls = Classes.getResources(dp, Descriptor.class);
+            for (URL url : urls) {
+                Properties url_props = props_res.pull(url);
+                Enumeration<?> pn_enum = url_props.propertyNames();
+                while (pn_enum.hasMoreElements()) {
+                    String pn = (String)pn_enum.nextElement();
+                    props.setProperty(pn, url_props.getProperty(pn));
                 }
             }
+        } catch (IOException ioe) {
+            // should never happen
+            throw new RuntimeException(ioe);
         }
+        return props;
     }
 
     /**
@@ -152,40 +193,72 @@ public final class Descriptor {
 
     /**
      * Creates a Schema based on the combined schema documents/definitions found that are associated with the specified namespace.
+     * <p/>
+     * Compiled schemas are shared JVM-wide (softly referenced, so they can be reclaimed under memory pressure) between all
+     * Descriptors with the same properties, keyed by the namespaces and the resolved schema resources, so the same schemas
+     * are only compiled once no matter how many Descriptors (and therefore deployments) ask for them.
      * @param namespaces the namespaces of the schemas
      * @return the new Schema
      */
-    public synchronized Schema getSchema(Set<String> namespaces) {
-        Schema schema = _namespaces_schema_map.get(namespaces);
-        if (schema == null) {
-            List<Source> sourceList = new ArrayList<Source>();
+    public Schema getSchema(Set<String> namespaces) {
+        SchemaSources sources = _namespaces_sources_map.get(namespaces);
+        if (sources == null) {
+            List<URL> resources = new ArrayList<URL>();
             try {
                 for (String namespace : namespaces) {
                     String schemaLocation = getSchemaLocation(namespace);
                     if (schemaLocation != null) {
                         URL resource = Classes.getResource(schemaLocation);
                         if (resource != null) {
-                            String xsd = new StringResource().pull(resource);
-                            sourceList.add(new StreamSource(new StringReader(xsd)));
+                            resources.add(resource);
                         }
                     }
                 }
-                if (sourceList.size() > 0) {
-                    Source[] sources = sourceList.toArray(new Source[sourceList.size()]);
-                    SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-                    factory.setResourceResolver(new DescriptorLSResourceResolver(this));
-                    //long start = System.currentTimeMillis();
-                    schema = factory.newSchema(sources); // TODO: Fix poor performance.
-                    //long stop = System.currentTimeMillis();
-                    //long total = stop - start;
-                    //System.err.println("SchemaFactory.newSchema(Source[]):Schema is taking " + total + " milliseconds!");
-                    _namespaces_schema_map.put(namespaces, schema);
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe);
+            }
+            sources = new SchemaSources(new SchemaKey(namespaces, resources, _all_properties_map), resources);
+            SchemaSources existing = _namespaces_sources_map.putIfAbsent(sources._key._namespaces, sources);
+            if (existing != null) {
+                sources = existing;
+            }
+        }
+        if (sources._resources.isEmpty()) {
+            return null;
+        }
+        SchemaHolder holder = SCHEMAS.get(sources._key);
+        if (holder == null) {
+            holder = new SchemaHolder();
+            SchemaHolder existing = SCHEMAS.putIfAbsent(sources._key, holder);
+            if (existing != null) {
+                holder = existing;
+            }
+        }
+        return holder.getSchema(this, sources._resources);
+    }
+
+    private Schema compileSchema(List<URL> resources) {
+        List<InputStream> opened = new ArrayList<InputStream>();
+        try {
+            Source[] sources = new Source[resources.size()];
+            for (int i = 0; i < sources.length; i++) {
+                URL resource = resources.get(i);
+                InputStream is = resource.openStream();
+                opened.add(is);
+                sources[i] = new StreamSource(is, resource.toExternalForm());
+            }
+            return XMLFactories.newSchema(sources, new DescriptorLSResourceResolver(this, opened));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (InputStream is : opened) {
+                try {
+                    is.close();
+                } catch (IOException ioe) {
+                    // ignore
                 }
-            } catch (Exception e) {
-                throw new RuntimeException(e);
             }
         }
-        return schema;
     }
 
     /**
@@ -253,7 +326,10 @@ public final class Descriptor {
      * @param namespace the namespace
      * @return the appropriate Marshaller to use
      */
-    public synchronized Marshaller getMarshaller(String namespace) {
+    public Marshaller getMarshaller(String namespace) {
+        if (namespace == null) {
+            return null;
+        }
         Marshaller marshaller = _namespace_marshaller_map.get(namespace);
         if (marshaller == null) {
             String name = getProperty(MARSHALLER, namespace);
@@ -265,6 +341,10 @@ public final class Descriptor {
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
+                Marshaller existing = _namespace_marshaller_map.putIfAbsent(namespace, marshaller);
+                if (existing != null) {
+                    marshaller = existing;
+                }
             }
         }
         return marshaller;
@@ -350,21 +430,104 @@ public final class Descriptor {
         return true;
     }
 
+    /**
+     * Identifies a compiled schema: the namespaces, the external forms of the schema resources, and the properties
+     * (which govern how imports and includes are resolved).  Only Strings are held, so the JVM-wide cache never
+     * pins a deployment's classloader.
+     */
+    private static final class SchemaKey {
+
+        private final Set<String> _namespaces;
+        private final List<String> _resource_ids;
+        private final Map<String,String> _properties;
+        private final int _hash;
+
+        private SchemaKey(Set<String> namespaces, List<URL> resources, Map<String,String> properties) {
+            _namespaces = Collections.unmodifiableSet(new HashSet<String>(namespaces));
+            List<String> resource_ids = new ArrayList<String>(resources.size());
+            for (URL resource : resources) {
+                resource_ids.add(resource.toExternalForm());
+            }
+            _resource_ids = resource_ids;
+            _properties = properties;
+            _hash = (_namespaces.hashCode() * 31 + _resource_ids.hashCode()) * 31 + _properties.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SchemaKey)) {
+                return false;
+            }
+            SchemaKey other = (SchemaKey)obj;
+            return _hash == other._hash
+                && _namespaces.equals(other._namespaces)
+                && _resource_ids.equals(other._resource_ids)
+                && _properties.equals(other._properties);
+        }
+    }
+
+    private static final class SchemaSources {
+
+        private final SchemaKey _key;
+        private final List<URL> _resources;
+
+        private SchemaSources(SchemaKey key, List<URL> resources) {
+            _key = key;
+            _resources = resources;
+        }
+    }
+
+    private static final class SchemaHolder {
+
+        private volatile SoftReference<Schema> _schema;
+
+        private Schema getSchema(Descriptor descriptor, List<URL> resources) {
+            Schema schema = get();
+            if (schema == null) {
+                synchronized (this) {
+                    schema = get();
+                    if (schema == null) {
+                        schema = descriptor.compileSchema(resources);
+                        _schema = new SoftReference<Schema>(schema);
+                    }
+                }
+            }
+            return schema;
+        }
+
+        private Schema get() {
+            SoftReference<Schema> ref = _schema;
+            return ref != null ? ref.get() : null;
+        }
+    }
+
     private static final class DescriptorLSResourceResolver implements LSResourceResolver {
 
         private Descriptor _descriptor;
+        private List<InputStream> _opened;
 
-        private DescriptorLSResourceResolver(Descriptor descriptor) {
+        private DescriptorLSResourceResolver(Descriptor descriptor, List<InputStream> opened) {
             _descriptor = descriptor;
+            _opened = opened;
         }
 
         public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, String baseURI) {
             String schemaLocation = _descriptor.getSchemaLocation(namespaceURI, systemId);
             if (schemaLocation != null) {
                 try {
-                    String xsd = new StringResource().pull(schemaLocation);
-                    if (xsd != null) {
-                        return new DescriptorLSInput(xsd, publicId, systemId, baseURI);
+                    URL resource = Classes.getResource(schemaLocation);
+                    if (resource != null) {
+                        InputStream is = resource.openStream();
+                        _opened.add(is);
+                        return new DescriptorLSInput(is, publicId, systemId, baseURI);
                     }
                 } catch (IOException ioe) {
                     throw new RuntimeException(ioe);
@@ -385,14 +548,12 @@ public final class Descriptor {
         private String _encoding;
         private boolean _certifiedText;
 
-        private DescriptorLSInput(String xsd, String publicId, String systemId, String baseURI) {
-            setCharacterStream(new StringReader(xsd));
-            setByteStream(new ByteArrayInputStream(xsd.getBytes()));
-            setStringData(xsd);
+        private DescriptorLSInput(InputStream xsd, String publicId, String systemId, String baseURI) {
+            // the encoding is left to the parser to detect
+            setByteStream(xsd);
             setPublicId(publicId);
             setSystemId(systemId);
             setBaseURI(baseURI);
-            setEncoding("UTF-8");
             setCertifiedText(false);
         }
 
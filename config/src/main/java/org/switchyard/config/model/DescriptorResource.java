@@ -62,12 +62,13 @@ public class DescriptorResource extends Resource<Descriptor> {
     }
 
     /**
-     * Creates a default Descriptor.
+     * Gets the (shared) default Descriptor.
      * @return the resource, never null
      * @throws IOException shouldn't happen, but might ;)
+     * @see Descriptor#getDefault()
      */
     public Descriptor pull() throws IOException {
-        return new Descriptor();
+        return Descriptor.getDefault();
     }
 
 }
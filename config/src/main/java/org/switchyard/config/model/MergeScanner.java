@@ -22,6 +22,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.switchyard.config.Configuration;
+import org.switchyard.config.Configurations;
+
 /**
  * A {@link Scanner} that merges all {@link Model}s from other Scanners into one.
  *
@@ -46,7 +49,7 @@ public class MergeScanner<M extends Model> implements Scanner<M> {
         _fromOverridesTo = fromOverridesTo;
         List<Scanner<M>> list = new ArrayList<Scanner<M>>();
         if (scanners != null) {
-            for (Scanner<M> scanner : list) {
+            for (Scanner<M> scanner : scanners) {
                 if (scanner != null) {
                     list.add(scanner);
                 }
@@ -85,16 +88,26 @@ public class MergeScanner<M extends Model> implements Scanner<M> {
         } catch (Exception e) {
             throw new IOException(e);
         }
+        // merge everything into the one config, and only read the merged model back once at the end
+        Configuration merged_config = merged.getModelConfiguration();
+        boolean modified = false;
         for (Scanner<M> scanner : _scanners) {
             List<M> scanned_list = scanner.scan(input).getModels();
             if (scanned_list != null) {
                 for (M scanned : scanned_list) {
                     if (scanned != null) {
-                        merged = Models.merge(scanned, merged, _fromOverridesTo);
+                        Configurations.mergeInto(scanned.getModelConfiguration(), merged_config, _fromOverridesTo);
+                        modified = true;
                     }
                 }
             }
         }
+        if (modified) {
+            merged_config.normalize();
+            @SuppressWarnings("unchecked")
+            M merged_model = (M)Descriptor.getMarshaller(merged).read(merged_config);
+            merged = merged_model;
+        }
         return new ScannerOutput<M>().setModel(merged);
     }
 
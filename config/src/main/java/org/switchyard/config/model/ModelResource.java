@@ -24,6 +24,7 @@ import java.io.Reader;
 
 import javax.xml.namespace.QName;
 
+import org.switchyard.config.Configuration;
 import org.switchyard.config.ConfigurationResource;
 import org.switchyard.config.util.ElementResource;
 import org.switchyard.config.util.Resource;
@@ -40,7 +41,14 @@ import org.xml.sax.InputSource;
  */
 public class ModelResource<M extends Model> extends Resource<M> {
 
+    /**
+     * System property which, when "true", makes ModelResources parse with StAX by default.
+     * @see #ModelResource(Descriptor, boolean)
+     */
+    public static final String STREAMING_PROPERTY = "org.switchyard.config.streaming";
+
     private Descriptor _desc;
+    private boolean _streaming;
 
     /**
      * Constructs a default ModelResource with a default Descriptor.
@@ -54,7 +62,21 @@ public class ModelResource<M extends Model> extends Resource<M> {
      * @param desc the Descriptor
      */
     public ModelResource(Descriptor desc) {
-        _desc = desc != null ? desc : new Descriptor();
+        this(desc, Boolean.getBoolean(STREAMING_PROPERTY));
+    }
+
+    /**
+     * Constructs a ModelResource with the specified Descriptor, optionally parsing with StAX.
+     * <p/>
+     * Streaming parses build a compact, read-optimized {@link org.switchyard.config.StAXConfiguration}
+     * instead of a DOM, which is quicker and much smaller for large documents that are mostly read.
+     * A DOM is still built on demand, the first time the model is modified, validated or written.
+     * @param desc the Descriptor
+     * @param streaming whether to parse with StAX
+     */
+    public ModelResource(Descriptor desc, boolean streaming) {
+        _desc = desc != null ? desc : Descriptor.getDefault();
+        _streaming = streaming;
     }
 
     /**
@@ -65,11 +87,22 @@ public class ModelResource<M extends Model> extends Resource<M> {
         return _desc;
     }
 
+    /**
+     * Whether this ModelResource parses with StAX.
+     * @return true if streaming
+     */
+    public final boolean isStreaming() {
+        return _streaming;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public M pull(InputStream is) throws IOException {
+        if (_streaming) {
+            return pull(new ConfigurationResource(true).pull(is));
+        }
         return pull(new ElementResource().pull(is));
     }
 
@@ -80,6 +113,9 @@ public class ModelResource<M extends Model> extends Resource<M> {
      * @throws IOException if a problem occurred
      */
     public M pull(Reader reader) throws IOException {
+        if (_streaming) {
+            return pull(new ConfigurationResource(true).pull(reader));
+        }
         return pull(new ElementResource().pull(reader));
     }
 
@@ -90,6 +126,9 @@ public class ModelResource<M extends Model> extends Resource<M> {
      * @throws IOException if a problem occurred
      */
     public M pull(InputSource is) throws IOException {
+        if (_streaming) {
+            return pull(new ConfigurationResource(true).pull(is));
+        }
         return pull(new ElementResource().pull(is));
     }
 
@@ -119,6 +158,25 @@ public class ModelResource<M extends Model> extends Resource<M> {
         return null;
     }
 
+    /**
+     * Safely constructs a Model from a Configuration.
+     * @param config the Model configuration
+     * @return the Model, or null if config is null or no Marshaller is registered for its namespace
+     */
+    @SuppressWarnings("unchecked")
+    public M pull(Configuration config) {
+        if (config != null) {
+            String namespace = config.getQName().getNamespaceURI();
+            if (namespace != null && namespace.length() > 0) {
+                Marshaller marshaller = _desc.getMarshaller(namespace);
+                if (marshaller != null) {
+                    return (M)marshaller.read(config);
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * Safely pulls (constructs) a basic Model from a qualified name.
      * @param qname the qualified name
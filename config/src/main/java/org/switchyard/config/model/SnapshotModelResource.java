@@ -0,0 +1,257 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.switchyard.config.Configuration;
+import org.switchyard.config.ConfigurationResource;
+import org.switchyard.config.StAXConfiguration;
+
+/**
+ * A streaming {@link ModelResource} which keeps a compiled snapshot of each document it pulls.
+ * <p/>
+ * Snapshots are kept in a directory, one file per document, named after a digest of the
+ * document's content.  Pulling the same document again - typically when a deployment is
+ * restarted - reads the snapshot with {@link StAXConfiguration#readCompiled} rather than
+ * parsing the XML.  A changed document has a different digest, so never reads a stale
+ * snapshot.  Snapshots are versioned; an unreadable, corrupt or outdated one is ignored and
+ * replaced.  Only the most recently used snapshots are kept, so snapshots of documents which
+ * changed since are evicted eventually.
+ *
+ * @param <M> the Model type being pulled
+ * @see #DIRECTORY_PROPERTY
+ * @see #MAX_SNAPSHOTS_PROPERTY
+ */
+public class SnapshotModelResource<M extends Model> extends ModelResource<M> {
+
+    /**
+     * System property holding the path of the default snapshot directory.
+     */
+    public static final String DIRECTORY_PROPERTY = "org.switchyard.config.snapshotDirectory";
+
+    /**
+     * System property holding the default maximum number of snapshots kept in a directory.
+     */
+    public static final String MAX_SNAPSHOTS_PROPERTY = "org.switchyard.config.maxSnapshots";
+
+    private static final int DEFAULT_MAX_SNAPSHOTS = 64;
+
+    private static final int MAGIC = 0x5359534E; // "SYSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final String SUFFIX = ".snapshot";
+    private static final int BUFFER_SIZE = 8192;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static Logger _logger = Logger.getLogger(SnapshotModelResource.class);
+
+    private final File _directory;
+    private final int _maxSnapshots;
+
+    /**
+     * Constructs a SnapshotModelResource with a default Descriptor.
+     * @param directory the snapshot directory
+     */
+    public SnapshotModelResource(File directory) {
+        this(null, directory);
+    }
+
+    /**
+     * Constructs a SnapshotModelResource with the specified Descriptor.
+     * @param desc the Descriptor
+     * @param directory the snapshot directory
+     */
+    public SnapshotModelResource(Descriptor desc, File directory) {
+        this(desc, directory, Integer.getInteger(MAX_SNAPSHOTS_PROPERTY, DEFAULT_MAX_SNAPSHOTS));
+    }
+
+    /**
+     * Constructs a SnapshotModelResource with the specified Descriptor.
+     * @param desc the Descriptor
+     * @param directory the snapshot directory
+     * @param maxSnapshots the maximum number of snapshots kept in the directory
+     */
+    public SnapshotModelResource(Descriptor desc, File directory, int maxSnapshots) {
+        super(desc, true);
+        _directory = directory;
+        _maxSnapshots = Math.max(1, maxSnapshots);
+    }
+
+    /**
+     * Gets the default snapshot directory.
+     * @return the directory named by the {@link #DIRECTORY_PROPERTY} system property, or null if it isn't set
+     */
+    public static File getDefaultDirectory() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        return directory != null && directory.trim().length() > 0 ? new File(directory.trim()) : null;
+    }
+
+    /**
+     * Gets the snapshot directory.
+     * @return the directory
+     */
+    public final File getDirectory() {
+        return _directory;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public M pull(InputStream is) throws IOException {
+        byte[] document = toByteArray(is);
+        File snapshot = new File(_directory, digest(document) + SUFFIX);
+        Configuration config = null;
+        if (snapshot.isFile()) {
+            try {
+                config = load(snapshot);
+                // the last modified time tells the most recently used snapshots
+                snapshot.setLastModified(System.currentTimeMillis());
+            } catch (IOException ioe) {
+                _logger.warn("Ignoring unreadable snapshot '" + snapshot.getAbsolutePath() + "': " + ioe.getMessage());
+            }
+        }
+        if (config == null) {
+            StAXConfiguration parsed = (StAXConfiguration)new ConfigurationResource(true).pull(new ByteArrayInputStream(document));
+            try {
+                save(parsed, snapshot);
+                evict();
+            } catch (IOException ioe) {
+                _logger.warn("Unable to write snapshot '" + snapshot.getAbsolutePath() + "': " + ioe.getMessage());
+            }
+            config = parsed;
+        }
+        return pull(config);
+    }
+
+    private static StAXConfiguration load(File snapshot) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " snapshot.");
+            }
+            StAXConfiguration config = StAXConfiguration.readCompiled(in, snapshot.length() - HEADER_SIZE);
+            if (in.read() != -1) {
+                throw new IOException("Unexpected data after the compiled config.");
+            }
+            return config;
+        } catch (RuntimeException re) {
+            // e.g. a corrupt snapshot which reads as an inconsistent tree
+            throw new IOException("Corrupt snapshot.", re);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void save(StAXConfiguration config, File snapshot) throws IOException {
+        if (!_directory.exists() && !_directory.mkdirs()) {
+            throw new IOException("mkdirs() on " + _directory + " failed.");
+        }
+        // write aside and then rename, so a reader never sees half a snapshot
+        File temp = File.createTempFile(snapshot.getName(), ".tmp", _directory);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            config.writeCompiled(out);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(snapshot)) {
+            // e.g. Windows, which won't rename over an existing file
+            if (!snapshot.delete() || !temp.renameTo(snapshot)) {
+                temp.delete();
+                throw new IOException("Unable to rename " + temp + " to " + snapshot + ".");
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used snapshots beyond the maximum.
+     */
+    private void evict() {
+        File[] snapshots = _directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SUFFIX);
+            }
+        });
+        if (snapshots == null || snapshots.length <= _maxSnapshots) {
+            return;
+        }
+        final Map<File, Long> lastModified = new HashMap<File, Long>();
+        for (File snapshot : snapshots) {
+            lastModified.put(snapshot, snapshot.lastModified());
+        }
+        Arrays.sort(snapshots, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return lastModified.get(f2).compareTo(lastModified.get(f1));
+            }
+        });
+        for (int i = _maxSnapshots; i < snapshots.length; i++) {
+            if (!snapshots[i].delete()) {
+                _logger.warn("Unable to delete snapshot '" + snapshots[i].getAbsolutePath() + "'.");
+            }
+        }
+    }
+
+    private static byte[] toByteArray(InputStream is) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String digest(byte[] document) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(document);
+        } catch (NoSuchAlgorithmException nsae) {
+            // every Java platform supports SHA-1
+            throw new IllegalStateException(nsae);
+        }
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+        }
+        return hex.toString();
+    }
+}
@@ -25,13 +25,10 @@ import java.io.Reader;
 import java.io.StringReader;
 
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 /**
  * Utility class to safely access ("pull") DOM elements from various sources.
@@ -65,17 +62,7 @@ public class ElementResource extends Resource<Element> {
      * @throws IOException if a problem occurred
      */
     public Element pull(InputSource is) throws IOException {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setIgnoringComments(true);
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        try {
-            return pull(factory.newDocumentBuilder().parse(is));
-        } catch (ParserConfigurationException pce) {
-            throw new IOException(pce);
-        } catch (SAXException se) {
-            throw new IOException(se);
-        }
+        return pull(XMLFactories.parse(is));
     }
 
     /**
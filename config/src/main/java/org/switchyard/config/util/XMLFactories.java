@@ -0,0 +1,267 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Utility class holding shared, thread-safe access to the JAXP factories used by the config layer.
+ * <p/>
+ * Looking up a JAXP factory (and compiling a stylesheet) is far more expensive than using one, so the
+ * factories are created once and reused.  They are looked up with the class loader of the config layer,
+ * rather than the context class loader of whichever thread comes first, so every deployment gets the
+ * same JAXP implementation, and none keeps a deployment's class loader reachable.  As JAXP does not
+ * require factories, parsers or schema factories to be thread-safe, DocumentBuilders and SchemaFactories
+ * are taken from small bounded pools (see {@link #clear()}), the shared XMLInputFactory and
+ * TransformerFactory are only used under their own lock, and compiled stylesheets are cached as
+ * (thread-safe) Templates, from which a new Transformer is handed out for each use.
+ */
+public final class XMLFactories {
+
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+    private static final int MAX_POOLED = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY;
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+    private static final TransformerFactory TRANSFORMER_FACTORY;
+    static {
+        ClassLoader previous = Classes.setTCCL(XMLFactories.class.getClassLoader());
+        try {
+            DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+            DOCUMENT_BUILDER_FACTORY.setIgnoringComments(true);
+            DOCUMENT_BUILDER_FACTORY.setNamespaceAware(true);
+            DOCUMENT_BUILDER_FACTORY.setValidating(false);
+            XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+            if (XML_INPUT_FACTORY.isPropertySupported(REPORT_CDATA)) {
+                XML_INPUT_FACTORY.setProperty(REPORT_CDATA, Boolean.TRUE);
+            }
+            TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+        } finally {
+            Classes.setTCCL(previous);
+        }
+    }
+
+    private static final Pool<DocumentBuilder> BUILDERS = new Pool<DocumentBuilder>();
+    private static final Pool<SchemaFactory> SCHEMA_FACTORIES = new Pool<SchemaFactory>();
+    private static ConcurrentMap<String,Templates> _resource_templates_map = new ConcurrentHashMap<String,Templates>();
+
+    private XMLFactories() {}
+
+    /**
+     * Parses a namespace aware, non-validating DOM document (ignoring comments) from an InputSource.
+     * @param is the InputSource
+     * @return the document
+     * @throws IOException if a problem occurred
+     */
+    public static Document parse(InputSource is) throws IOException {
+        // the builder is taken out of the pool while in use, so a re-entrant parse gets its own
+        DocumentBuilder builder = BUILDERS.take();
+        if (builder == null) {
+            builder = newDocumentBuilder();
+        }
+        try {
+            return builder.parse(is);
+        } catch (SAXException se) {
+            throw new IOException(se);
+        } finally {
+            builder.reset();
+            BUILDERS.give(builder);
+        }
+    }
+
+    /**
+     * Creates a new, empty, namespace aware DOM document.
+     * @return the document
+     */
+    public static Document newDocument() {
+        DocumentBuilder builder = BUILDERS.take();
+        if (builder == null) {
+            builder = newDocumentBuilder();
+        }
+        try {
+            return builder.newDocument();
+        } finally {
+            BUILDERS.give(builder);
+        }
+    }
+
+    private static DocumentBuilder newDocumentBuilder() {
+        try {
+            synchronized (DOCUMENT_BUILDER_FACTORY) {
+                return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+            }
+        } catch (ParserConfigurationException pce) {
+            throw new RuntimeException(pce);
+        }
+    }
+
+    /**
+     * Creates a namespace aware, non-coalescing XMLStreamReader which reports CDATA sections (where supported).
+     * @param reader the character stream
+     * @return the XMLStreamReader
+     * @throws XMLStreamException if a problem occurred
+     */
+    public static XMLStreamReader createXMLStreamReader(Reader reader) throws XMLStreamException {
+        synchronized (XML_INPUT_FACTORY) {
+            return XML_INPUT_FACTORY.createXMLStreamReader(reader);
+        }
+    }
+
+    /**
+     * Creates a namespace aware, non-coalescing XMLStreamReader which reports CDATA sections (where supported).
+     * @param is the byte stream
+     * @param encoding the encoding of the byte stream, or null to detect it
+     * @return the XMLStreamReader
+     * @throws XMLStreamException if a problem occurred
+     */
+    public static XMLStreamReader createXMLStreamReader(InputStream is, String encoding) throws XMLStreamException {
+        synchronized (XML_INPUT_FACTORY) {
+            if (encoding != null) {
+                return XML_INPUT_FACTORY.createXMLStreamReader(is, encoding);
+            }
+            return XML_INPUT_FACTORY.createXMLStreamReader(is);
+        }
+    }
+
+    /**
+     * Creates a new Transformer from the (cached) compiled form of the XSL stylesheet found at the specified resource.
+     * @param resource the location of the stylesheet, as understood by {@link Classes#getResource(String)}
+     * @return the new Transformer
+     * @throws IOException if the stylesheet could not be read
+     * @throws TransformerConfigurationException if the stylesheet could not be compiled
+     */
+    public static Transformer newTransformer(String resource) throws IOException, TransformerConfigurationException {
+        Templates templates = _resource_templates_map.get(resource);
+        if (templates == null) {
+            String xsl = new StringResource().pull(resource);
+            if (xsl == null) {
+                throw new IOException("stylesheet not found: " + resource);
+            }
+            synchronized (TRANSFORMER_FACTORY) {
+                templates = TRANSFORMER_FACTORY.newTemplates(new StreamSource(new StringReader(xsl)));
+            }
+            Templates existing = _resource_templates_map.putIfAbsent(resource, templates);
+            if (existing != null) {
+                templates = existing;
+            }
+        }
+        return templates.newTransformer();
+    }
+
+    /**
+     * Compiles a W3C XML Schema from the specified sources.
+     * @param sources the schema documents
+     * @param resolver the resolver for imported and included schema documents, or null
+     * @return the Schema
+     * @throws SAXException if the schema could not be compiled
+     */
+    public static Schema newSchema(Source[] sources, LSResourceResolver resolver) throws SAXException {
+        SchemaFactory factory = SCHEMA_FACTORIES.take();
+        if (factory == null) {
+            ClassLoader previous = Classes.setTCCL(XMLFactories.class.getClassLoader());
+            try {
+                factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            } finally {
+                Classes.setTCCL(previous);
+            }
+        }
+        try {
+            factory.setResourceResolver(resolver);
+            return factory.newSchema(sources);
+        } finally {
+            factory.setResourceResolver(null);
+            SCHEMA_FACTORIES.give(factory);
+        }
+    }
+
+    /**
+     * Drops the pooled DocumentBuilders and SchemaFactories, e.g. when undeploying, so nothing
+     * they may still reference is kept reachable.  They are created again as needed.
+     */
+    public static void clear() {
+        BUILDERS.clear();
+        SCHEMA_FACTORIES.clear();
+    }
+
+    /**
+     * A bounded pool of instances which aren't thread-safe: each is used by one thread at a time.
+     */
+    private static final class Pool<T> {
+
+        private final Queue<T> _idle = new ConcurrentLinkedQueue<T>();
+        private final AtomicInteger _size = new AtomicInteger();
+
+        // returns null if there is no idle instance
+        private T take() {
+            T instance = _idle.poll();
+            if (instance != null) {
+                _size.decrementAndGet();
+            }
+            return instance;
+        }
+
+        // drops the instance if the pool is full
+        private void give(T instance) {
+            if (_size.incrementAndGet() <= MAX_POOLED) {
+                _idle.offer(instance);
+            } else {
+                _size.decrementAndGet();
+            }
+        }
+
+        private void clear() {
+            while (take() != null) {
+                continue;
+            }
+        }
+    }
+
+}
@@ -19,27 +19,39 @@
 
 package org.switchyard.config.util.classpath;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.switchyard.config.util.Classes;
 
 /**
  * Abstract Java type filter.
+ * <p/>
+ * Candidate types are first checked against their class file header, using a {@link TypeIndex}
+ * to resolve their type hierarchy, and only the types which (may) match are loaded.
  * 
  * @author <a href="mailto:tom.fennelly@gmail.com">tom.fennelly@gmail.com</a>
  */
-abstract class AbstractTypeFilter implements Filter {
+abstract class AbstractTypeFilter implements IndexedFilter {
 
     private Logger _logger;
-    private List<Class<?>> _classes = new ArrayList<Class<?>>();
+    // synchronized, as the filter may be called by a parallel ClasspathScanner
+    private List<Class<?>> _classes = Collections.synchronizedList(new ArrayList<Class<?>>());
+    private Set<String> _resources = Collections.synchronizedSet(new HashSet<String>());
+    private TypeIndex _index;
 
     /**
      * Protected constructor.
      */
     protected AbstractTypeFilter() {
         _logger = Logger.getLogger(getClass());
+        _index = new TypeIndex(getClass().getClassLoader());
     }
 
     /**
@@ -57,6 +69,15 @@ abstract class AbstractTypeFilter implements Filter {
      */
     protected abstract boolean matches(Class<?> clazz);
 
+    /**
+     * Is the Java type a filter match, judging by its class file header.
+     * @param header The class file header of the Java type to be checked.
+     * @param index The index to resolve the type hierarchy through.
+     * @return True if the Java type is a match, false if it is not, or null if it
+     * can't be told without loading the type.
+     */
+    abstract Boolean matches(ClassFileHeader header, TypeIndex index);
+
     /**
      * Get the set of filtered (i.e. matching) types.
      * @return The set of filtered (i.e. matching) types.
@@ -70,6 +91,24 @@ abstract class AbstractTypeFilter implements Filter {
      */
     public void clear() {
         _classes.clear();
+        _resources.clear();
+        _index.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean needsContent(String resourceName) {
+        return resourceName.endsWith(".class");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isMatch(String resourceName) {
+        return _resources.contains(toResourcePath(resourceName));
     }
 
     /**
@@ -77,21 +116,64 @@ abstract class AbstractTypeFilter implements Filter {
      * @param resourceName The classpath resource file name.
      */
     public void filter(String resourceName) {
-        if (resourceName.endsWith(".class")) {
-            String className = toClassName(resourceName);
-
+        if (needsContent(resourceName)) {
+            // Assumption here is that these classes are on the scanner's classpath...
             try {
-                // Assumption here is that these classes are on the scanner's classpath...
-                Class<?> clazz = Classes.forName(className, getClass());
-                if (matches(clazz)) {
-                    _classes.add(clazz);
+                InputStream content = Classes.getResourceAsStream(toResourcePath(resourceName), getClass());
+                if (content == null) {
+                    _logger.debug("Resource '" + resourceName + "' presented to '" + getClass().getName() + "', but not found by classloader.  Ignoring.");
+                    return;
+                }
+                try {
+                    filter(resourceName, content);
+                } finally {
+                    content.close();
                 }
-            } catch (Throwable throwable) {
-                _logger.debug("Resource '" + resourceName + "' presented to '" + InstanceOfFilter.class.getName() + "', but not loadable by classloader.  Ignoring.", throwable);
+            } catch (IOException ioe) {
+                _logger.debug("Resource '" + resourceName + "' presented to '" + getClass().getName() + "', but not readable by classloader.  Ignoring.", ioe);
+            }
+        }
+    }
+
+    /**
+     * Filter the specified class file.
+     * @param resourceName The classpath resource file name.
+     * @param content The class file content.
+     */
+    public void filter(String resourceName, InputStream content) {
+        if (!needsContent(resourceName)) {
+            return;
+        }
+
+        ClassFileHeader header;
+        try {
+            header = ClassFileHeader.read(content);
+        } catch (IOException ioe) {
+            _logger.debug("Resource '" + resourceName + "' presented to '" + getClass().getName() + "', but not a readable class file.  Ignoring.", ioe);
+            return;
+        }
+        _index.add(header);
+        if (Boolean.FALSE.equals(matches(header, _index))) {
+            return;
+        }
+
+        String className = toClassName(resourceName);
+        try {
+            // Assumption here is that these classes are on the scanner's classpath...
+            Class<?> clazz = Classes.forName(className, getClass());
+            if (matches(clazz)) {
+                _classes.add(clazz);
+                _resources.add(toResourcePath(resourceName));
             }
+        } catch (Throwable throwable) {
+            _logger.debug("Resource '" + resourceName + "' presented to '" + getClass().getName() + "', but not loadable by classloader.  Ignoring.", throwable);
         }
     }
 
+    private String toResourcePath(String resourceName) {
+        return resourceName.startsWith("/") ? resourceName.substring(1) : resourceName;
+    }
+
     private String toClassName(String resourceName) {
         if (resourceName.startsWith("/")) {
             resourceName = resourceName.substring(1);
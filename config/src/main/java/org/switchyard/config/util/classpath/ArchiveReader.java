@@ -0,0 +1,359 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config.util.classpath;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Reads the entries of a zip archive through a {@link FileChannel}.
+ * <p/>
+ * Only the central directory is read to list the entries, so entry names can be filtered
+ * without touching (or inflating) the entry data.  Entries are read with positional reads,
+ * and all native resources are released on {@link #close()}.
+ */
+final class ArchiveReader {
+
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int EOCD_LENGTH = 22;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int ZIP64_EOCD_SIG = 0x06064b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int CEN_LENGTH = 46;
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int LOC_LENGTH = 30;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File _file;
+    private final RandomAccessFile _raf;
+    private final FileChannel _channel;
+    private final List<Entry> _entries;
+
+    /**
+     * Opens the archive and reads its central directory.
+     * @param file The archive.
+     * @throws IOException Error reading the archive, or it is not a (supported) zip archive.
+     */
+    ArchiveReader(File file) throws IOException {
+        _file = file;
+        _raf = new RandomAccessFile(file, "r");
+        _channel = _raf.getChannel();
+        try {
+            _entries = readCentralDirectory();
+        } catch (IOException ioe) {
+            close();
+            throw ioe;
+        } catch (RuntimeException re) {
+            close();
+            throw new IOException("Invalid zip archive " + file + ".", re);
+        }
+    }
+
+    /**
+     * The entries of the archive, in central directory order.
+     * @return The entries.
+     */
+    List<Entry> getEntries() {
+        return _entries;
+    }
+
+    /**
+     * Opens the data of an entry.  The stream must be closed by the caller.
+     * @param entry The entry.
+     * @return The (inflated) entry data.
+     * @throws IOException Error reading the entry.
+     */
+    InputStream open(Entry entry) throws IOException {
+        ByteBuffer header = read(entry._offset, LOC_LENGTH);
+        if (header.getInt(0) != LOC_SIG) {
+            throw new IOException("Invalid local header for " + entry._name + " in " + _file + ".");
+        }
+        long start = entry._offset + LOC_LENGTH + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        InputStream data = new ChannelInputStream(_channel, start, entry._compressedSize);
+        switch (entry._method) {
+            case ZipEntry.STORED:
+                return data;
+            case ZipEntry.DEFLATED:
+                return new EntryInflaterInputStream(data);
+            default:
+                data.close();
+                throw new IOException("Unsupported compression method " + entry._method + " for " + entry._name + " in " + _file + ".");
+        }
+    }
+
+    /**
+     * Closes the archive.
+     * @throws IOException Error closing the archive.
+     */
+    void close() throws IOException {
+        _raf.close();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        long length = _channel.size();
+        int tailLength = (int)Math.min(length, EOCD_LENGTH + MAX_COMMENT_LENGTH);
+        long tailStart = length - tailLength;
+        ByteBuffer tail = read(tailStart, tailLength);
+        int eocd = -1;
+        for (int i = tailLength - EOCD_LENGTH; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIG) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd == -1) {
+            throw new IOException("No zip central directory found in " + _file + ".");
+        }
+
+        long count = tail.getShort(eocd + 10) & 0xFFFF;
+        long size = tail.getInt(eocd + 12) & ZIP64_MAGIC;
+        long offset = tail.getInt(eocd + 16) & ZIP64_MAGIC;
+        // data prepended to the archive (e.g. a self-extracting stub) shifts all offsets
+        long base = tailStart + eocd - size - offset;
+        if (count == 0xFFFF || size == ZIP64_MAGIC || offset == ZIP64_MAGIC) {
+            long locator = tailStart + eocd - ZIP64_LOCATOR_LENGTH;
+            ByteBuffer locatorBuffer = read(locator, ZIP64_LOCATOR_LENGTH);
+            if (locatorBuffer.getInt(0) == ZIP64_LOCATOR_SIG) {
+                ByteBuffer zip64 = read(locatorBuffer.getLong(8), 56);
+                if (zip64.getInt(0) != ZIP64_EOCD_SIG) {
+                    throw new IOException("Invalid zip64 central directory in " + _file + ".");
+                }
+                count = zip64.getLong(32);
+                size = zip64.getLong(40);
+                offset = zip64.getLong(48);
+                base = 0;
+            }
+        }
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Zip central directory too large in " + _file + ".");
+        }
+
+        ByteBuffer cen = read(base + offset, (int)size);
+        List<Entry> entries = new ArrayList<Entry>((int)Math.min(count, size / CEN_LENGTH));
+        int pos = 0;
+        while (pos + CEN_LENGTH <= size) {
+            if (cen.getInt(pos) != CEN_SIG) {
+                throw new IOException("Invalid zip central directory entry in " + _file + ".");
+            }
+            int method = cen.getShort(pos + 10) & 0xFFFF;
+            long compressedSize = cen.getInt(pos + 20) & ZIP64_MAGIC;
+            long uncompressedSize = cen.getInt(pos + 24) & ZIP64_MAGIC;
+            int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+            long localOffset = cen.getInt(pos + 42) & ZIP64_MAGIC;
+            String name = decodeName(cen, pos + CEN_LENGTH, nameLength);
+
+            if (compressedSize == ZIP64_MAGIC || uncompressedSize == ZIP64_MAGIC || localOffset == ZIP64_MAGIC) {
+                // the real values are in the zip64 extra field, in this order, but only those that overflowed
+                int extra = pos + CEN_LENGTH + nameLength;
+                int extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd) {
+                    int id = cen.getShort(extra) & 0xFFFF;
+                    int dataLength = cen.getShort(extra + 2) & 0xFFFF;
+                    if (id == ZIP64_EXTRA_ID) {
+                        int field = extra + 4;
+                        if (uncompressedSize == ZIP64_MAGIC) {
+                            uncompressedSize = cen.getLong(field);
+                            field += 8;
+                        }
+                        if (compressedSize == ZIP64_MAGIC) {
+                            compressedSize = cen.getLong(field);
+                            field += 8;
+                        }
+                        if (localOffset == ZIP64_MAGIC) {
+                            localOffset = cen.getLong(field);
+                        }
+                        break;
+                    }
+                    extra += 4 + dataLength;
+                }
+            }
+
+            entries.add(new Entry(name, method, compressedSize, base + localOffset));
+            pos += CEN_LENGTH + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static String decodeName(ByteBuffer buffer, int pos, int length) {
+        // nearly all names are ASCII, which doesn't need a decoder
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(pos + i);
+            if (b < 0) {
+                byte[] bytes = new byte[length];
+                for (int j = 0; j < length; j++) {
+                    bytes[j] = buffer.get(pos + j);
+                }
+                return new String(bytes, UTF8);
+            }
+            chars[i] = (char)b;
+        }
+        return new String(chars);
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            int read = _channel.read(buffer, pos);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of zip archive " + _file + ".");
+            }
+            pos += read;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * An archive entry.
+     */
+    static final class Entry {
+
+        private final String _name;
+        private final int _method;
+        private final long _compressedSize;
+        private final long _offset;
+
+        private Entry(String name, int method, long compressedSize, long offset) {
+            _name = name;
+            _method = method;
+            _compressedSize = compressedSize;
+            _offset = offset;
+        }
+
+        /**
+         * The entry name.
+         * @return The entry name.
+         */
+        String getName() {
+            return _name;
+        }
+    }
+
+    /**
+     * Reads a range of a file channel, using positional reads, so streams on the same channel don't interfere.
+     */
+    private static final class ChannelInputStream extends InputStream {
+
+        private final FileChannel _channel;
+        private long _position;
+        private long _remaining;
+
+        private ChannelInputStream(FileChannel channel, long position, long length) {
+            _channel = channel;
+            _position = position;
+            _remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (_remaining <= 0) {
+                return -1;
+            }
+            int read = _channel.read(ByteBuffer.wrap(b, off, (int)Math.min(len, _remaining)), _position);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of zip entry.");
+            }
+            _position += read;
+            _remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, _remaining));
+            _position += skipped;
+            _remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int)Math.min(_remaining, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Inflates raw entry data, releasing the inflater when closed.
+     */
+    private static final class EntryInflaterInputStream extends InflaterInputStream {
+
+        private static final int BUFFER_SIZE = 8192;
+        private boolean _eof;
+        private boolean _closed;
+
+        private EntryInflaterInputStream(InputStream data) {
+            super(data, new Inflater(true), BUFFER_SIZE);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (_eof) {
+                throw new EOFException("Unexpected end of zip entry.");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                // a "nowrap" inflater may need one byte past the end of the data (as with ZipFile)
+                buf[0] = 0;
+                len = 1;
+                _eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!_closed) {
+                _closed = true;
+                inf.end();
+                super.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config.util.classpath;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The type information at the head of a Java class file: the class name, its super
+ * class, its interfaces and its runtime visible class annotations.
+ * <p/>
+ * Read straight from the class file bytes, so a type can be filtered without being loaded.
+ */
+final class ClassFileHeader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    private final String _name;
+    private final String _superName;
+    private final List<String> _interfaceNames;
+    private final List<String> _annotationNames;
+    private final boolean _interface;
+
+    private ClassFileHeader(String name, String superName, List<String> interfaceNames, List<String> annotationNames, boolean isInterface) {
+        _name = name;
+        _superName = superName;
+        _interfaceNames = interfaceNames;
+        _annotationNames = annotationNames;
+        _interface = isInterface;
+    }
+
+    /**
+     * The class name, e.g. "java.lang.String".
+     * @return The class name.
+     */
+    String getName() {
+        return _name;
+    }
+
+    /**
+     * The super class name.
+     * @return The super class name, or null for java.lang.Object.
+     */
+    String getSuperName() {
+        return _superName;
+    }
+
+    /**
+     * The names of the directly implemented (or, for an interface, extended) interfaces.
+     * @return The interface names.
+     */
+    List<String> getInterfaceNames() {
+        return _interfaceNames;
+    }
+
+    /**
+     * The names of the runtime visible annotation types declared on the class.
+     * @return The annotation type names.
+     */
+    List<String> getAnnotationNames() {
+        return _annotationNames;
+    }
+
+    /**
+     * Is the type an interface (or annotation type).
+     * @return True if the type is an interface, otherwise false.
+     */
+    boolean isInterface() {
+        return _interface;
+    }
+
+    /**
+     * Read the header from a class file.  The stream is not closed.
+     * @param classFile The class file stream.
+     * @return The header.
+     * @throws IOException Error reading the stream, or the stream is not a class file.
+     */
+    static ClassFileHeader read(InputStream classFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(classFile));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file.");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        // only the UTF8 and Class constants are kept, everything else is skipped
+        int poolCount = in.readUnsignedShort();
+        String[] utf8s = new String[poolCount];
+        int[] classes = new int[poolCount];
+        for (int i = 1; i < poolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8s[i] = in.readUTF();
+                    break;
+                case 7: // Class
+                    classes[i] = in.readUnsignedShort();
+                    break;
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    skipFully(in, 2);
+                    break;
+                case 15: // MethodHandle
+                    skipFully(in, 3);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    skipFully(in, 4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    skipFully(in, 8);
+                    i++; // takes two pool slots
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag + ".");
+            }
+        }
+
+        int access = in.readUnsignedShort();
+        String name = className(utf8s, classes, in.readUnsignedShort());
+        String superName = className(utf8s, classes, in.readUnsignedShort());
+        int interfaceCount = in.readUnsignedShort();
+        List<String> interfaceNames = new ArrayList<String>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaceNames.add(className(utf8s, classes, in.readUnsignedShort()));
+        }
+        skipMembers(in); // fields
+        skipMembers(in); // methods
+
+        List<String> annotationNames = Collections.emptyList();
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attributeName = utf8s[in.readUnsignedShort()];
+            int length = in.readInt();
+            if (RUNTIME_VISIBLE_ANNOTATIONS.equals(attributeName)) {
+                int annotationCount = in.readUnsignedShort();
+                annotationNames = new ArrayList<String>(annotationCount);
+                for (int a = 0; a < annotationCount; a++) {
+                    annotationNames.add(descriptorClassName(utf8s[in.readUnsignedShort()]));
+                    skipAnnotationPairs(in);
+                }
+                // nothing else after the class annotations is of interest
+                break;
+            }
+            skipFully(in, length);
+        }
+
+        return new ClassFileHeader(name, superName, interfaceNames, annotationNames, (access & ACC_INTERFACE) != 0);
+    }
+
+    private static String className(String[] utf8s, int[] classes, int classIndex) {
+        if (classIndex == 0) {
+            return null;
+        }
+        return utf8s[classes[classIndex]].replace('/', '.');
+    }
+
+    private static String descriptorClassName(String descriptor) {
+        // "Lorg/example/Annotation;"
+        return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+    }
+
+    private static void skipMembers(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            skipFully(in, 6); // access flags, name and descriptor
+            int attributeCount = in.readUnsignedShort();
+            for (int a = 0; a < attributeCount; a++) {
+                skipFully(in, 2);
+                skipFully(in, in.readInt());
+            }
+        }
+    }
+
+    private static void skipAnnotationPairs(DataInputStream in) throws IOException {
+        int pairCount = in.readUnsignedShort();
+        for (int i = 0; i < pairCount; i++) {
+            skipFully(in, 2);
+            skipElementValue(in);
+        }
+    }
+
+    private static void skipElementValue(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'e':
+                skipFully(in, 4);
+                break;
+            case '@':
+                skipFully(in, 2);
+                skipAnnotationPairs(in);
+                break;
+            case '[':
+                int count = in.readUnsignedShort();
+                for (int i = 0; i < count; i++) {
+                    skipElementValue(in);
+                }
+                break;
+            default:
+                // constants and classes: a single constant pool index
+                skipFully(in, 2);
+                break;
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                // skipBytes may stop short, so fall back to reading
+                if (in.read() == -1) {
+                    throw new IOException("Unexpected end of class file.");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -21,13 +21,24 @@ package org.switchyard.config.util.classpath;
 
 import org.apache.log4j.Logger;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLDecoder;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 /**
  * Classpath scanner.
@@ -37,34 +48,124 @@ import java.util.zip.ZipFile;
 public class ClasspathScanner {
 
     private static Logger _logger = Logger.getLogger(ClasspathScanner.class);
+    private static final String WEB_INF_CLASSES = "WEB-INF/classes/";
+    private static final String WEB_INF_LIB = "WEB-INF/lib/";
     private Filter _filter;
+    private int _parallelism;
+    private ScanIndex _index;
 
     /**
      * Public contractor.
      * @param filter Filter instance.
      */
     public ClasspathScanner(Filter filter) {
+        this(filter, 1);
+    }
+
+    /**
+     * Public constructor for a scanner which scans multiple URLs, and the directories within them, concurrently.
+     * <p/>
+     * The filter will then be called from multiple threads, so it must be thread-safe, like the filters in this package are.
+     * @param filter Filter instance.
+     * @param parallelism The maximum number of threads to scan with (1 means scan on the calling thread).
+     * @see #scan(List)
+     */
+    public ClasspathScanner(Filter filter, int parallelism) {
         this._filter = filter;
+        this._parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Sets the index to keep the scan results of {@link IndexedFilter}s in.  Archives and directories
+     * which are unchanged since they were indexed are then not scanned again.
+     * @param index The index, or null for none.
+     * @return this ClasspathScanner (useful for chaining)
+     */
+    public ClasspathScanner setIndex(ScanIndex index) {
+        _index = index;
+        return this;
     }
 
     /**
      * Scan the specified URL.
      * <p/>
-     * The URL can be a folder or an Archive file.
+     * The URL can be a folder or an Archive file.  Archives nested in an Archive
+     * (".jar" and ".war" entries, e.g. the libraries in a WAR or the modules of an EAR)
+     * are scanned too, except by type filters ({@link InstanceOfFilter}, {@link IsAnnotationPresentFilter}):
+     * the types in a nested archive can't be loaded through the class loader of the filter.
+     * The resources of a nested WAR are presented as they appear on the classpath of the web
+     * application: "WEB-INF/classes/" is stripped from their names, and other resources, apart
+     * from the archives in "WEB-INF/lib/", are skipped.
      * @param url URL to scan.
      * @throws IOException Error reading from URL target.
      */
     public void scan(URL url) throws IOException {
-        File file = toClassPathFile(url);
+        scan(Collections.singletonList(url));
+    }
 
-        if (file.exists()) {
-            if (file.isDirectory()) {
-                handleDirectory(file, null);
+    /**
+     * Scan the specified URLs.
+     * <p/>
+     * If this scanner was constructed with a parallelism greater than 1, the URLs, and the
+     * directory trees within them, are scanned concurrently.  The index, if any, is saved
+     * once all the URLs have been scanned.
+     * @param urls URLs to scan.
+     * @throws IOException Error reading from a URL target.
+     */
+    public void scan(List<URL> urls) throws IOException {
+        if (_index != null) {
+            _index.beginScan();
+        }
+        try {
+            if (_parallelism == 1) {
+                for (URL url : urls) {
+                    Location location = locate(url);
+                    if (location != null) {
+                        if (location._file.isDirectory()) {
+                            handleDirectory(location._file, null, null, location);
+                        } else {
+                            handleArchive(location._file, location);
+                        }
+                        index(location);
+                    }
+                }
             } else {
-                handleArchive(file);
+                scanInParallel(urls);
             }
-        } else {
-            _logger.warn("Unknown Classpath URL File '" +  file.getAbsolutePath() + "'.");
+            saveIndex();
+        } finally {
+            if (_index != null) {
+                _index.endScan();
+            }
+        }
+    }
+
+    private void scanInParallel(List<URL> urls) throws IOException {
+        List<Location> locations = new ArrayList<Location>();
+        ParallelScan scan = new ParallelScan(_parallelism);
+        try {
+            for (URL url : urls) {
+                final Location location = locate(url);
+                if (location == null) {
+                    continue;
+                }
+                locations.add(location);
+                if (location._file.isDirectory()) {
+                    scan.submitDirectory(location._file, null, location);
+                } else {
+                    scan.submit(new ScanTask() {
+                        public void run(ParallelScan scan) throws IOException {
+                            handleArchive(location._file, location);
+                        }
+                    });
+                }
+            }
+            scan.await();
+        } finally {
+            scan.shutdown();
+        }
+        for (Location location : locations) {
+            index(location);
         }
     }
 
@@ -89,31 +190,170 @@ public class ClasspathScanner {
         return new File(urlPath);
     }
 
-    private void handleArchive(File file) throws IOException {
+    /**
+     * Resolve the URL to the archive or directory to scan.  If the scan index is
+     * up to date for it, the filter is handed the indexed resources instead.
+     * @return The location to scan, or null if there is nothing (more) to scan.
+     */
+    private Location locate(URL url) throws IOException {
+        File file = toClassPathFile(url);
+        if (!file.exists()) {
+            _logger.warn("Unknown Classpath URL File '" +  file.getAbsolutePath() + "'.");
+            return null;
+        }
+
+        Location location = new Location(file);
+        String indexKey = getIndexKey();
+        if (indexKey != null) {
+            List<String> indexed = _index.get(file, indexKey);
+            if (indexed != null) {
+                if (_logger.isDebugEnabled()) {
+                    _logger.debug("Using scan index for: " + file.getAbsolutePath());
+                }
+                for (String resourceName : indexed) {
+                    if (!_filter.continueScanning()) {
+                        break;
+                    }
+                    _filter.filter(resourceName);
+                }
+                return null;
+            }
+            location._matches = Collections.synchronizedList(new ArrayList<String>());
+        }
+        return location;
+    }
+
+    private String getIndexKey() {
+        if (_index != null && _filter instanceof IndexedFilter) {
+            return ((IndexedFilter)_filter).getIndexKey();
+        }
+        return null;
+    }
+
+    private void index(Location location) {
+        // a scan cut short by the filter isn't complete, so can't be indexed
+        if (location._matches != null && _filter.continueScanning()) {
+            _index.put(location._file, getIndexKey(), location._matches);
+        }
+    }
+
+    private void saveIndex() {
+        if (_index != null) {
+            try {
+                _index.save();
+            } catch (IOException ioe) {
+                _logger.warn("Unable to save scan index '" + _index.getFile().getAbsolutePath() + "': " + ioe.getMessage());
+            }
+        }
+    }
+
+    private void handleArchive(File file, Location location) throws IOException {
         if (_logger.isDebugEnabled()) {
             _logger.debug("Scanning archive: " + file.getAbsolutePath());
         }
 
-        ZipFile zip = new ZipFile(file);
-        Enumeration<? extends ZipEntry> entries = zip.entries();
+        ArchiveReader archive = new ArchiveReader(file);
+        try {
+            for (ArchiveReader.Entry entry : archive.getEntries()) {
+                if (!_filter.continueScanning()) {
+                    break;
+                }
 
-        while (entries.hasMoreElements()) {
-            if (!_filter.continueScanning()) {
-                break;
+                String name = entry.getName();
+                filter(name, needsContent(name) ? archive.open(entry) : null, location);
+                if (isNestedArchive(name) && scansNestedArchives()) {
+                    InputStream nested = archive.open(entry);
+                    try {
+                        handleNestedArchive(file.getAbsolutePath() + '!' + name, nested, location);
+                    } finally {
+                        nested.close();
+                    }
+                }
+            }
+        } finally {
+            archive.close();
+        }
+    }
+
+    private static boolean isNestedArchive(String name) {
+        return endsWithIgnoreCase(name, ".jar") || endsWithIgnoreCase(name, ".war");
+    }
+
+    private static boolean endsWithIgnoreCase(String name, String suffix) {
+        return name.regionMatches(true, name.length() - suffix.length(), suffix, 0, suffix.length());
+    }
+
+    private boolean scansNestedArchives() {
+        // type filters load what they match through their own class loader, which can't see into nested archives
+        return !(_filter instanceof AbstractTypeFilter);
+    }
+
+    private void handleNestedArchive(String path, InputStream in, Location location) throws IOException {
+        if (_logger.isDebugEnabled()) {
+            _logger.debug("Scanning nested archive: " + path);
+        }
+
+        boolean war = endsWithIgnoreCase(path, ".war");
+        // streamed, as nested archives can't be read randomly without extracting them
+        ZipInputStream zip = new ZipInputStream(new EntryInputStream(in));
+        try {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                if (!_filter.continueScanning()) {
+                    break;
+                }
+
+                String name = entry.getName();
+                String nestedPath = path + '!' + name;
+                boolean archive;
+                if (war) {
+                    // only WEB-INF/classes and the libraries in WEB-INF/lib are on the classpath of a web application
+                    archive = name.startsWith(WEB_INF_LIB) && endsWithIgnoreCase(name, ".jar");
+                    if (!archive) {
+                        if (!name.startsWith(WEB_INF_CLASSES) || name.length() == WEB_INF_CLASSES.length()) {
+                            continue;
+                        }
+                        name = name.substring(WEB_INF_CLASSES.length());
+                    }
+                } else {
+                    archive = isNestedArchive(name);
+                }
+                if (!archive) {
+                    filter(name, needsContent(name) ? new EntryInputStream(zip) : null, location);
+                } else if (needsContent(name)) {
+                    // the stream can only be read once, but both the filter and the scan need it
+                    byte[] nested = toByteArray(zip);
+                    filter(name, new ByteArrayInputStream(nested), location);
+                    handleNestedArchive(nestedPath, new ByteArrayInputStream(nested), location);
+                } else {
+                    filter(name, null, location);
+                    handleNestedArchive(nestedPath, zip, location);
+                }
             }
+        } finally {
+            zip.close();
+        }
+    }
 
-            ZipEntry entry = entries.nextElement();
-            String name = entry.getName();
-            _filter.filter(name);
+    private static byte[] toByteArray(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
         }
+        return out.toByteArray();
     }
 
-    private void handleDirectory(File file, String path) {
+    private void handleDirectory(File file, String path, ParallelScan scan, Location location) throws IOException {
         if (_logger.isDebugEnabled()) {
             _logger.debug("Scanning directory: " + file.getAbsolutePath());
         }
 
-        for (File child : file.listFiles()) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            _logger.warn("Unable to list Classpath directory '" +  file.getAbsolutePath() + "'.");
+            return;
+        }
+        for (File child : children) {
             if (!_filter.continueScanning()) {
                 break;
             }
@@ -121,10 +361,146 @@ public class ClasspathScanner {
             String newPath = path == null ? child.getName() : path + '/' + child.getName();
 
             if (child.isDirectory()) {
-                handleDirectory(child, newPath);
+                if (scan != null) {
+                    // let an idle thread pick up the subtree
+                    scan.submitDirectory(child, newPath, location);
+                } else {
+                    handleDirectory(child, newPath, null, location);
+                }
             } else {
-                _filter.filter(newPath);
+                filter(newPath, needsContent(newPath) ? new FileInputStream(child) : null, location);
+            }
+        }
+    }
+
+    private boolean needsContent(String resourceName) {
+        return _filter instanceof ContentFilter && ((ContentFilter)_filter).needsContent(resourceName);
+    }
+
+    private void filter(String resourceName, InputStream content, Location location) throws IOException {
+        if (content != null) {
+            try {
+                ((ContentFilter)_filter).filter(resourceName, content);
+            } finally {
+                content.close();
             }
+        } else {
+            _filter.filter(resourceName);
+        }
+        if (location._matches != null && ((IndexedFilter)_filter).isMatch(resourceName)) {
+            location._matches.add(resourceName);
+        }
+    }
+
+    /**
+     * The stream of an entry in a streamed (nested) archive.  Closing it leaves the archive stream open.
+     */
+    private static final class EntryInputStream extends FilterInputStream {
+
+        private EntryInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // the archive stream is closed by its owner
+        }
+    }
+
+    /**
+     * An archive or directory being scanned, and the resources matched in it so far, if they are to be indexed.
+     */
+    private static final class Location {
+
+        private final File _file;
+        private List<String> _matches;
+
+        private Location(File file) {
+            _file = file;
+        }
+    }
+
+    /**
+     * A unit of work in a parallel scan.
+     */
+    private interface ScanTask {
+        void run(ParallelScan scan) throws IOException;
+    }
+
+    /**
+     * The state of one parallel scan: the threads, the number of tasks still pending, and the first failure.
+     */
+    private final class ParallelScan {
+
+        private final ExecutorService _executor;
+        private final AtomicInteger _pending = new AtomicInteger();
+        private volatile IOException _failure;
+
+        private ParallelScan(int parallelism) {
+            _executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                private final AtomicInteger _count = new AtomicInteger();
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ClasspathScanner-" + _count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        private void submitDirectory(final File directory, final String path, final Location location) {
+            submit(new ScanTask() {
+                public void run(ParallelScan scan) throws IOException {
+                    handleDirectory(directory, path, scan, location);
+                }
+            });
+        }
+
+        private void submit(final ScanTask task) {
+            _pending.incrementAndGet();
+            _executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (_failure == null && _filter.continueScanning()) {
+                            task.run(ParallelScan.this);
+                        }
+                    } catch (IOException ioe) {
+                        fail(ioe);
+                    } catch (RuntimeException re) {
+                        fail(new IOException(re));
+                    } finally {
+                        if (_pending.decrementAndGet() == 0) {
+                            synchronized (ParallelScan.this) {
+                                ParallelScan.this.notifyAll();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        private synchronized void fail(IOException ioe) {
+            if (_failure == null) {
+                _failure = ioe;
+            }
+        }
+
+        private synchronized void await() throws IOException {
+            // all URLs have been submitted, and a task submits its subtasks before it completes, so nothing pending means done
+            while (_pending.get() > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while scanning the classpath.", ie);
+                }
+            }
+            if (_failure != null) {
+                throw _failure;
+            }
+        }
+
+        private void shutdown() {
+            _executor.shutdownNow();
         }
     }
 
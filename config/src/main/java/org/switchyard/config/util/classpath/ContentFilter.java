@@ -0,0 +1,46 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config.util.classpath;
+
+import java.io.InputStream;
+
+/**
+ * Classpath resource filter which also looks at the content of (some of) the resources.
+ * <p/>
+ * The {@link ClasspathScanner} hands the filter the content of each resource it asks for, so
+ * the filter doesn't need to find the resource again through a classloader.
+ */
+public interface ContentFilter extends Filter {
+
+    /**
+     * Does the filter want the content of the specified resource.
+     * @param resourceName The classpath resource file name.
+     * @return True if the scanner should call {@link #filter(String, InputStream)} for the resource,
+     * otherwise false, in which case the scanner calls {@link #filter(String)}.
+     */
+    boolean needsContent(String resourceName);
+
+    /**
+     * Classpath resource filter method.
+     * @param resourceName The classpath resource file name.
+     * @param content The resource content.  Closed by the scanner.
+     */
+    void filter(String resourceName, InputStream content);
+}
@@ -21,6 +21,8 @@ package org.switchyard.config.util.classpath;
 
 /**
  * Classpath resource filter.
+ * <p/>
+ * Filters used by a parallel {@link ClasspathScanner} are called from multiple threads, and must be thread-safe.
  *
  * @author <a href="mailto:tom.fennelly@gmail.com">tom.fennelly@gmail.com</a>
  */
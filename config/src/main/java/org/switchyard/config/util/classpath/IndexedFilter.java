@@ -0,0 +1,43 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config.util.classpath;
+
+/**
+ * Classpath resource filter whose results can be kept in a {@link ScanIndex}.
+ * <p/>
+ * When an archive or directory is unchanged, the {@link ClasspathScanner} only hands the
+ * filter the resources it matched there before, through {@link #filter(String)}.
+ */
+public interface IndexedFilter extends ContentFilter {
+
+    /**
+     * Gets the key the filter's results are indexed under.  Filters with the same key
+     * must match the same resources.
+     * @return the index key, or null if the results should not be indexed
+     */
+    String getIndexKey();
+
+    /**
+     * Was the resource matched by the filter.
+     * @param resourceName The classpath resource file name.
+     * @return True if the resource was matched, otherwise false.
+     */
+    boolean isMatch(String resourceName);
+}
@@ -36,6 +36,14 @@ public class InstanceOfFilter extends AbstractTypeFilter {
         this._searchType = searchType;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getIndexKey() {
+        return "instanceof:" + _searchType.getName();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -43,4 +51,9 @@ public class InstanceOfFilter extends AbstractTypeFilter {
     protected boolean matches(Class<?> clazz) {
         return _searchType.isAssignableFrom(clazz);
     }
+
+    @Override
+    Boolean matches(ClassFileHeader header, TypeIndex index) {
+        return index.isSubtype(header.getName(), _searchType.getName());
+    }
 }
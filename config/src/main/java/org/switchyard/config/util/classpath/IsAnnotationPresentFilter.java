@@ -20,6 +20,7 @@
 package org.switchyard.config.util.classpath;
 
 import java.lang.annotation.Annotation;
+import java.lang.annotation.Inherited;
 
 /**
  * Filter classpath classes based on presence of an annotation.
@@ -29,6 +30,7 @@ import java.lang.annotation.Annotation;
 public class IsAnnotationPresentFilter extends AbstractTypeFilter {
 
     private Class<? extends Annotation> _searchType;
+    private boolean _inherited;
 
     /**
      * Public constructor.
@@ -36,6 +38,15 @@ public class IsAnnotationPresentFilter extends AbstractTypeFilter {
      */
     public IsAnnotationPresentFilter(Class<? extends Annotation> searchType) {
         this._searchType = searchType;
+        this._inherited = searchType.isAnnotationPresent(Inherited.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getIndexKey() {
+        return "annotation:" + _searchType.getName();
     }
 
     /**
@@ -45,4 +56,21 @@ public class IsAnnotationPresentFilter extends AbstractTypeFilter {
     protected boolean matches(Class<?> clazz) {
         return clazz.isAnnotationPresent(_searchType);
     }
+
+    @Override
+    Boolean matches(ClassFileHeader header, TypeIndex index) {
+        String searchName = _searchType.getName();
+        // an @Inherited annotation may also be declared on any of the super classes
+        ClassFileHeader type = header;
+        while (type != null) {
+            if (type.getAnnotationNames().contains(searchName)) {
+                return Boolean.TRUE;
+            }
+            if (!_inherited || type.isInterface() || type.getSuperName() == null) {
+                return Boolean.FALSE;
+            }
+            type = index.get(type.getSuperName());
+        }
+        return null;
+    }
 }
@@ -25,7 +25,7 @@ package org.switchyard.config.util.classpath;
 public class ResourceExistsFilter implements Filter {
 
     private String _resourceName;
-    private boolean _resourceFound = false;
+    private volatile boolean _resourceFound = false;
 
     /**
      * Public constructor.
@@ -40,7 +40,10 @@ public class ResourceExistsFilter implements Filter {
      */
     @Override
     public void filter(String resourceName) {
-        _resourceFound = resourceName.equals(_resourceName);
+        // only ever set, as another (parallel) scanning thread may already have found it
+        if (resourceName.equals(_resourceName)) {
+            _resourceFound = true;
+        }
     }
 
     /**
@@ -0,0 +1,351 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config.util.classpath;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Persistent index of classpath scan results.
+ * <p/>
+ * The index holds an entry per scanned archive or directory, stamped with its size and
+ * modification time (for a directory, a fingerprint of the sizes and modification times of
+ * all the files in it), and the names of the resources each {@link IndexedFilter} matched in it.
+ * While the stamp still matches, a {@link ClasspathScanner} hands the filter the indexed
+ * resources instead of scanning the archive or directory again.
+ * <p/>
+ * Filters resolve type hierarchies through the classloader, so an entry does not notice
+ * changes to the super types of its classes made in <i>other</i> archives.  Use the index for
+ * builds and restarts, where dependencies are replaced as a whole, not for development time
+ * hot-swapping.
+ * <p/>
+ * The index is kept in a compact binary file, read once and rewritten on {@link #save()}.
+ *
+ * @see #FILE_PROPERTY
+ */
+public final class ScanIndex {
+
+    /**
+     * System property holding the path of the default index file.  No default index is used if not set.
+     */
+    public static final String FILE_PROPERTY = "org.switchyard.config.scanIndex";
+
+    private static final int MAGIC = 0x53594958; // "SYIX"
+    private static final int VERSION = 1;
+
+    private static Logger _logger = Logger.getLogger(ScanIndex.class);
+    private static final Map<File, ScanIndex> INDEXES = new HashMap<File, ScanIndex>();
+
+    private final File _file;
+    private Map<String, Entry> _entries;
+    private final Map<String, Stamp> _lookup_stamps = new HashMap<String, Stamp>();
+    // the stamps computed while scans are in progress, so each location is only stamped once
+    private final Map<String, Stamp> _scan_stamps = new HashMap<String, Stamp>();
+    private int _scans;
+    private boolean _dirty;
+
+    /**
+     * Package-private, use {@link #forFile(File)}, so all scanners share the index in memory.
+     */
+    ScanIndex(File file) {
+        _file = file;
+    }
+
+    /**
+     * Gets the default index, as named by the {@link #FILE_PROPERTY} system property.
+     * @return the default index, or null if there is none
+     */
+    public static ScanIndex getDefault() {
+        String path = System.getProperty(FILE_PROPERTY);
+        if (path == null || path.trim().length() == 0) {
+            return null;
+        }
+        return forFile(new File(path.trim()));
+    }
+
+    /**
+     * Gets the index kept in the specified file.  The file does not have to exist yet.
+     * @param file the index file
+     * @return the index, shared by all callers for the same file
+     */
+    public static ScanIndex forFile(File file) {
+        File key = file.getAbsoluteFile();
+        synchronized (INDEXES) {
+            ScanIndex index = INDEXES.get(key);
+            if (index == null) {
+                index = new ScanIndex(key);
+                INDEXES.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Gets the index file.
+     * @return the index file
+     */
+    public File getFile() {
+        return _file;
+    }
+
+    /**
+     * Gets the resources the filter matched in the archive or directory, if the archive or
+     * directory is unchanged since they were {@link #put(File, String, List) put}.
+     * @param location the archive or directory
+     * @param filterKey the {@link IndexedFilter#getIndexKey() filter key}
+     * @return the matched resource names, or null if the location has to be scanned
+     */
+    public synchronized List<String> get(File location, String filterKey) {
+        String path = location.getAbsolutePath();
+        Stamp stamp = stamp(location, path);
+        // a following put records the results against the stamp from before the scan,
+        // so changes made during the scan are picked up next time
+        _lookup_stamps.put(path, stamp);
+        Entry entry = entries().get(path);
+        if (entry == null || !entry._stamp.equals(stamp)) {
+            return null;
+        }
+        return entry._results.get(filterKey);
+    }
+
+    /**
+     * Records the resources the filter matched in the archive or directory.
+     * @param location the archive or directory
+     * @param filterKey the {@link IndexedFilter#getIndexKey() filter key}
+     * @param resourceNames the matched resource names
+     */
+    public synchronized void put(File location, String filterKey, List<String> resourceNames) {
+        String path = location.getAbsolutePath();
+        Stamp stamp = _lookup_stamps.remove(path);
+        if (stamp == null) {
+            stamp = stamp(location, path);
+        }
+        Entry entry = entries().get(path);
+        if (entry == null || !entry._stamp.equals(stamp)) {
+            entry = new Entry(stamp);
+            entries().put(path, entry);
+        }
+        entry._results.put(filterKey, Collections.unmodifiableList(new ArrayList<String>(resourceNames)));
+        _dirty = true;
+    }
+
+    /**
+     * Marks the start of a scan.  Until every scan started has {@link #endScan() ended}, each
+     * archive or directory is stamped (for a directory, its whole tree walked) only once, however
+     * many filters look it up.
+     */
+    synchronized void beginScan() {
+        _scans++;
+    }
+
+    /**
+     * Marks the end of a scan started with {@link #beginScan()}.
+     */
+    synchronized void endScan() {
+        if (_scans > 0 && --_scans == 0) {
+            _scan_stamps.clear();
+        }
+    }
+
+    private Stamp stamp(File location, String path) {
+        Stamp stamp = _scan_stamps.get(path);
+        if (stamp == null) {
+            stamp = Stamp.of(location);
+            if (_scans > 0) {
+                _scan_stamps.put(path, stamp);
+            }
+        }
+        return stamp;
+    }
+
+    /**
+     * Writes the index file, if the index changed.  Entries for archives and directories
+     * which no longer exist are dropped.
+     * @throws IOException error writing the file
+     */
+    public synchronized void save() throws IOException {
+        if (!_dirty) {
+            return;
+        }
+        Iterator<String> paths = entries().keySet().iterator();
+        while (paths.hasNext()) {
+            if (!new File(paths.next()).exists()) {
+                paths.remove();
+            }
+        }
+        File dir = _file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("mkdirs() on " + dir + " failed.");
+        }
+        // write aside and then rename, so a reader never sees half an index
+        File temp = new File(_file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                Entry entry = e.getValue();
+                out.writeLong(entry._stamp._size);
+                out.writeLong(entry._stamp._modified);
+                out.writeInt(entry._results.size());
+                for (Map.Entry<String, List<String>> result : entry._results.entrySet()) {
+                    out.writeUTF(result.getKey());
+                    out.writeInt(result.getValue().size());
+                    for (String resourceName : result.getValue()) {
+                        out.writeUTF(resourceName);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(_file)) {
+            // e.g. Windows, which won't rename over an existing file
+            if (!_file.delete() || !temp.renameTo(_file)) {
+                throw new IOException("Unable to rename " + temp + " to " + _file + ".");
+            }
+        }
+        _dirty = false;
+    }
+
+    private Map<String, Entry> entries() {
+        if (_entries == null) {
+            _entries = new LinkedHashMap<String, Entry>();
+            if (_file.isFile()) {
+                try {
+                    load();
+                } catch (IOException ioe) {
+                    _logger.warn("Ignoring unreadable scan index '" + _file.getAbsolutePath() + "': " + ioe.getMessage());
+                    _entries.clear();
+                }
+            }
+        }
+        return _entries;
+    }
+
+    private void load() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(_file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " scan index.");
+            }
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String path = in.readUTF();
+                Entry entry = new Entry(new Stamp(in.readLong(), in.readLong()));
+                int resultCount = in.readInt();
+                for (int r = 0; r < resultCount; r++) {
+                    String filterKey = in.readUTF();
+                    int nameCount = in.readInt();
+                    List<String> resourceNames = new ArrayList<String>(nameCount);
+                    for (int n = 0; n < nameCount; n++) {
+                        resourceNames.add(in.readUTF());
+                    }
+                    entry._results.put(filterKey, Collections.unmodifiableList(resourceNames));
+                }
+                _entries.put(path, entry);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static final class Entry {
+
+        private final Stamp _stamp;
+        private final Map<String, List<String>> _results = new LinkedHashMap<String, List<String>>();
+
+        private Entry(Stamp stamp) {
+            _stamp = stamp;
+        }
+    }
+
+    private static final class Stamp {
+
+        private final long _size;
+        private final long _modified;
+
+        private Stamp(long size, long modified) {
+            _size = size;
+            _modified = modified;
+        }
+
+        private static Stamp of(File location) {
+            if (!location.isDirectory()) {
+                return new Stamp(location.length(), location.lastModified());
+            }
+            // a directory's own modification time doesn't change with the files deeper down
+            long[] fingerprint = new long[2];
+            fingerprint(location, "", fingerprint);
+            return new Stamp(fingerprint[0], fingerprint[1]);
+        }
+
+        private static void fingerprint(File dir, String path, long[] fingerprint) {
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                String childPath = path + '/' + child.getName();
+                if (child.isDirectory()) {
+                    fingerprint(child, childPath, fingerprint);
+                } else {
+                    // order independent, as listFiles() order isn't defined
+                    long hash = childPath.hashCode();
+                    hash = hash * 31 + child.length();
+                    hash = hash * 31 + child.lastModified();
+                    fingerprint[0] += child.length();
+                    fingerprint[1] += hash * 0x9E3779B97F4A7C15L;
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Stamp)) {
+                return false;
+            }
+            Stamp other = (Stamp)obj;
+            return _size == other._size && _modified == other._modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int)(_modified ^ (_modified >>> 32));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config.util.classpath;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.switchyard.config.util.Classes;
+
+/**
+ * Index of class file headers, used to resolve type hierarchies without loading the types.
+ * <p/>
+ * Headers of scanned classes are added as they are read.  Other types (e.g. the JDK and library
+ * super types of the scanned classes) are read from the classloader on demand.
+ */
+final class TypeIndex {
+
+    private static Logger _logger = Logger.getLogger(TypeIndex.class);
+
+    private final ClassLoader _loader;
+    private final ConcurrentMap<String, ClassFileHeader> _headers = new ConcurrentHashMap<String, ClassFileHeader>();
+    private final Set<String> _missing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentMap<String, Boolean> _subtypes = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * Create an index.
+     * @param loader The classloader used to read the types which were not scanned.
+     */
+    TypeIndex(ClassLoader loader) {
+        _loader = loader;
+    }
+
+    /**
+     * Add a scanned class to the index.
+     * @param header The class file header.
+     */
+    void add(ClassFileHeader header) {
+        _headers.put(header.getName(), header);
+    }
+
+    /**
+     * Get the header of the named type.
+     * @param className The type name.
+     * @return The header, or null if the type can't be found.
+     */
+    ClassFileHeader get(String className) {
+        ClassFileHeader header = _headers.get(className);
+        if (header == null && !_missing.contains(className)) {
+            header = read(className);
+            if (header != null) {
+                ClassFileHeader existing = _headers.putIfAbsent(className, header);
+                if (existing != null) {
+                    header = existing;
+                }
+            } else {
+                _missing.add(className);
+            }
+        }
+        return header;
+    }
+
+    /**
+     * Is the named type a subtype of (or the same as) the target type.
+     * <p/>
+     * Results are remembered, so the index must always be asked about the same target type.
+     * @param className The type name.
+     * @param targetName The target type name.
+     * @return True or false, or null if part of the type hierarchy can't be found.
+     */
+    Boolean isSubtype(String className, String targetName) {
+        if (className.equals(targetName)) {
+            return Boolean.TRUE;
+        }
+        Boolean subtype = _subtypes.get(className);
+        if (subtype == null) {
+            subtype = resolveSubtype(className, targetName);
+            if (subtype != null) {
+                _subtypes.put(className, subtype);
+            }
+        }
+        return subtype;
+    }
+
+    /**
+     * Clear the index.
+     */
+    void clear() {
+        _headers.clear();
+        _missing.clear();
+        _subtypes.clear();
+    }
+
+    private Boolean resolveSubtype(String className, String targetName) {
+        ClassFileHeader header = get(className);
+        if (header == null) {
+            return null;
+        }
+        boolean unresolved = false;
+        if (header.getSuperName() != null) {
+            Boolean subtype = isSubtype(header.getSuperName(), targetName);
+            if (subtype == Boolean.TRUE) {
+                return subtype;
+            }
+            unresolved = subtype == null;
+        }
+        for (String interfaceName : header.getInterfaceNames()) {
+            Boolean subtype = isSubtype(interfaceName, targetName);
+            if (subtype == Boolean.TRUE) {
+                return subtype;
+            }
+            unresolved |= subtype == null;
+        }
+        return unresolved ? null : Boolean.FALSE;
+    }
+
+    private ClassFileHeader read(String className) {
+        String resourceName = className.replace('.', '/') + ".class";
+        try {
+            InputStream classFile = Classes.getResourceAsStream(resourceName, _loader);
+            if (classFile == null) {
+                return null;
+            }
+            try {
+                return ClassFileHeader.read(classFile);
+            } finally {
+                classFile.close();
+            }
+        } catch (IOException ioe) {
+            _logger.debug("Unable to read class file '" + resourceName + "'.", ioe);
+            return null;
+        }
+    }
+}
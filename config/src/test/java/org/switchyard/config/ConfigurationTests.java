@@ -18,6 +18,8 @@
  */
 package org.switchyard.config;
 
+import java.io.StringReader;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -71,6 +73,52 @@ public class ConfigurationTests {
         return merged_config.toString();
     }
 
+    @Test
+    public void testMergeLeavesInputsUntouched() throws Exception {
+        Configuration from_config = new ConfigurationResource().pull(new ElementResource().pull(FROM_XML));
+        Configuration to_config = new ConfigurationResource().pull(new ElementResource().pull(TO_XML));
+        String from_xml = from_config.toString();
+        String to_xml = to_config.toString();
+        Configuration merged_config = Configurations.merge(from_config, to_config);
+        Assert.assertNotSame(to_config, merged_config);
+        Assert.assertEquals(from_xml, from_config.toString());
+        Assert.assertEquals(to_xml, to_config.toString());
+    }
+
+    @Test
+    public void testMergeInto() throws Exception {
+        Configuration from_config = new ConfigurationResource().pull(new ElementResource().pull(FROM_XML));
+        Configuration to_config = new ConfigurationResource().pull(new ElementResource().pull(TO_XML));
+        String expected = Configurations.merge(from_config, to_config, false).toString();
+        Assert.assertSame(to_config, Configurations.mergeInto(from_config, to_config, false));
+        XMLUnit.setIgnoreWhitespace(true);
+        Diff diff = XMLUnit.compareXML(expected, to_config.normalize().toString());
+        Assert.assertTrue(diff.toString(), diff.identical());
+    }
+
+    @Test
+    public void testMergeKeepsUnkeyedChildren() throws Exception {
+        Configuration from_config = new ConfigurationResource().pull(new StringReader("<root><child>c</child></root>"));
+        Configuration to_config = new ConfigurationResource().pull(new StringReader("<root><child>a</child><child>b</child></root>"));
+        Configuration merged_config = Configurations.merge(from_config, to_config);
+        List<Configuration> children = merged_config.getChildren();
+        Assert.assertEquals(2, children.size());
+        Assert.assertEquals("c", children.get(0).getValue());
+        Assert.assertEquals("b", children.get(1).getValue());
+    }
+
+    @Test
+    public void testMergeOrdersChildren() throws Exception {
+        Configuration from_config = new ConfigurationResource().pull(new StringReader("<root><c/></root>"));
+        Configuration to_config = new ConfigurationResource().pull(new StringReader("<root><a/><b/></root>"));
+        to_config.setChildrenOrder("b", "a");
+        List<Configuration> children = Configurations.mergeInto(from_config, to_config, false).getChildren();
+        Assert.assertEquals(3, children.size());
+        Assert.assertEquals("b", children.get(0).getName());
+        Assert.assertEquals("a", children.get(1).getName());
+        Assert.assertEquals("c", children.get(2).getName());
+    }
+
     @Test
     public void testParenthood() throws Exception {
         Configuration parent = new ConfigurationResource().pull(new ElementResource().pull(NAMESPACES_XML));
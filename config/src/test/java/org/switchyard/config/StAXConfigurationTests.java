@@ -0,0 +1,234 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.switchyard.config.model.ModelResource;
+import org.switchyard.config.model.SnapshotModelResource;
+import org.switchyard.config.model.switchyard.SwitchYardModel;
+import org.switchyard.config.util.StringResource;
+
+/**
+ * StAXConfigurationTests.
+ */
+public class StAXConfigurationTests {
+
+    private static final String FROM_XML = "/org/switchyard/config/ConfigurationTests-From.xml";
+    private static final String TO_XML = "/org/switchyard/config/ConfigurationTests-To.xml";
+    private static final String NAMESPACES_XML = "/org/switchyard/config/ConfigurationTests-Namespaces.xml";
+    private static final String SWITCHYARD_XML = "/org/switchyard/config/model/switchyard/SwitchYardModelTests-Complete.xml";
+    private static final String MIXED_XML =
+        "<one xmlns='urn:one' xmlns:b='urn:b' z='1' b:y='2' a='3'>text<!-- comment -->more<two><![CDATA[<cdata/>]]></two>"
+        + "<b:three><two b:x='4'>value</two></b:three></one>";
+
+    @Test
+    public void testReadsMatchDOM() throws Exception {
+        for (String xml : new String[] {FROM_XML, TO_XML, NAMESPACES_XML, SWITCHYARD_XML}) {
+            String str = new StringResource().pull(xml);
+            assertSameAs(dom(str), stax(str));
+        }
+        assertSameAs(dom(MIXED_XML), stax(MIXED_XML));
+    }
+
+    @Test
+    public void testReadsDontMaterialize() throws Exception {
+        StAXConfiguration config = stax(new StringResource().pull(NAMESPACES_XML));
+        assertSameAs(dom(new StringResource().pull(NAMESPACES_XML)), config);
+        config.getNamespaces();
+        config.copy().getChildren();
+        Assert.assertFalse(config.isMaterialized());
+        config.getSource();
+        Assert.assertTrue(config.isMaterialized());
+    }
+
+    @Test
+    public void testMutations() throws Exception {
+        StAXConfiguration config = stax(MIXED_XML);
+        Configuration child = config.getFirstChild("three").getFirstChild("two");
+        Configuration copy = config.copy();
+        child.setAttribute("added", "yes");
+        Assert.assertTrue(config.isMaterialized());
+        Assert.assertEquals("yes", config.getFirstChild("three").getFirstChild("two").getAttribute("added"));
+        Assert.assertEquals(child, config.getFirstChild("three").getFirstChild("two"));
+        Assert.assertEquals(config, child.getParent().getParent());
+        Assert.assertSame(child.getParent(), child.getParent());
+        // copies don't see the change
+        Assert.assertFalse(((StAXConfiguration)copy).isMaterialized());
+        Assert.assertEquals("", copy.getFirstChild("three").getFirstChild("two").getAttribute("added"));
+
+        config.addChild(stax("<four xmlns='urn:one'>added</four>"));
+        config.removeChildren("two");
+        Configuration dom = dom(MIXED_XML);
+        dom.getFirstChild("three").getFirstChild("two").setAttribute("added", "yes");
+        dom.addChild(dom("<four xmlns='urn:one'>added</four>"));
+        dom.removeChildren("two");
+        assertSameAs(dom, config);
+        Assert.assertEquals(dom.toString(), config.toString());
+    }
+
+    @Test
+    public void testUserDataPerTree() throws Exception {
+        StAXConfiguration config = stax(MIXED_XML);
+        Configuration copy = config.copy();
+        // the copy shares the nodes, but each keeps its own user data
+        config.getFirstChild("two").setUserData("model", "config");
+        copy.getFirstChild("two").setUserData("model", "copy");
+        Assert.assertEquals("config", config.getFirstChild("two").getUserData("model"));
+        Assert.assertEquals("copy", copy.getFirstChild("two").getUserData("model"));
+        Assert.assertNull(config.getFirstChild("three").getUserData("model"));
+        // and keeps it when materialized
+        config.getSource();
+        Assert.assertEquals("config", config.getFirstChild("two").getUserData("model"));
+        Assert.assertEquals("copy", copy.getFirstChild("two").getUserData("model"));
+    }
+
+    @Test
+    public void testMergeMatchesDOM() throws Exception {
+        String from = new StringResource().pull(FROM_XML);
+        String to = new StringResource().pull(TO_XML);
+        for (boolean fromOverridesTo : new boolean[] {true, false}) {
+            Configuration dom_merged = Configurations.merge(dom(from), dom(to), fromOverridesTo);
+            Configuration stax_merged = Configurations.merge(stax(from), stax(to), fromOverridesTo);
+            Assert.assertEquals(dom_merged.toString(), stax_merged.toString());
+        }
+    }
+
+    @Test
+    public void testStreamingModelResource() throws Exception {
+        SwitchYardModel dom_model = new ModelResource<SwitchYardModel>(null, false).pull(SWITCHYARD_XML);
+        SwitchYardModel stax_model = new ModelResource<SwitchYardModel>(null, true).pull(SWITCHYARD_XML);
+        Assert.assertTrue(stax_model.getModelConfiguration() instanceof StAXConfiguration);
+        Assert.assertEquals(dom_model.getComposite().getName(), stax_model.getComposite().getName());
+        Assert.assertEquals(dom_model.getComposite().getComponents().size(), stax_model.getComposite().getComponents().size());
+        Assert.assertEquals(dom_model.toString(), stax_model.toString());
+    }
+
+    @Test
+    public void testCompiledMatchesParsed() throws Exception {
+        for (String xml : new String[] {FROM_XML, TO_XML, NAMESPACES_XML, SWITCHYARD_XML}) {
+            String str = new StringResource().pull(xml);
+            assertSameAs(dom(str), compiled(stax(str)));
+        }
+        StAXConfiguration config = compiled(stax(MIXED_XML));
+        assertSameAs(dom(MIXED_XML), config);
+        Assert.assertFalse(config.isMaterialized());
+        Assert.assertEquals(dom(MIXED_XML).toString(), config.toString());
+        // a modified config can't be compiled
+        try {
+            compiled(config);
+            Assert.fail("Expected a materialized config not to compile.");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSnapshotModelResource() throws Exception {
+        File dir = File.createTempFile("snapshots", "");
+        Assert.assertTrue(dir.delete());
+        try {
+            SwitchYardModel dom_model = new ModelResource<SwitchYardModel>(null, false).pull(SWITCHYARD_XML);
+            SwitchYardModel parsed_model = new SnapshotModelResource<SwitchYardModel>(dir).pull(SWITCHYARD_XML);
+            File[] snapshots = dir.listFiles();
+            Assert.assertEquals(1, snapshots.length);
+            SwitchYardModel snapshot_model = new SnapshotModelResource<SwitchYardModel>(dir).pull(SWITCHYARD_XML);
+            for (SwitchYardModel model : new SwitchYardModel[] {parsed_model, snapshot_model}) {
+                Assert.assertEquals(dom_model.getComposite().getName(), model.getComposite().getName());
+                Assert.assertEquals(dom_model.getComposite().getComponents().size(), model.getComposite().getComponents().size());
+                Assert.assertEquals(dom_model.toString(), model.toString());
+            }
+            // a corrupt snapshot is replaced
+            FileOutputStream out = new FileOutputStream(snapshots[0]);
+            out.write(new byte[] {1, 2, 3});
+            out.close();
+            Assert.assertEquals(dom_model.toString(), new SnapshotModelResource<SwitchYardModel>(dir).pull(SWITCHYARD_XML).toString());
+            Assert.assertTrue(snapshots[0].length() > 3);
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static StAXConfiguration compiled(StAXConfiguration config) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        config.writeCompiled(out);
+        out.close();
+        return StAXConfiguration.readCompiled(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private static Configuration dom(String xml) throws Exception {
+        return new ConfigurationResource().pull(new StringReader(xml));
+    }
+
+    private static StAXConfiguration stax(String xml) throws Exception {
+        return (StAXConfiguration)new ConfigurationResource(true).pull(new StringReader(xml));
+    }
+
+    private static void assertSameAs(Configuration expected, Configuration actual) {
+        String name = expected.getName();
+        Assert.assertEquals(name, actual.getName());
+        Assert.assertEquals(expected.getQName(), actual.getQName());
+        Assert.assertEquals(expected.getQName().getPrefix(), actual.getQName().getPrefix());
+        Assert.assertEquals(name, expected.getValue(), actual.getValue());
+        Assert.assertEquals(name, expected.getAttributeNames(), actual.getAttributeNames());
+        Assert.assertEquals(name, expected.getAttributeQNames(), actual.getAttributeQNames());
+        for (String attr : expected.getAttributeNames()) {
+            Assert.assertEquals(name + "@" + attr, expected.getAttribute(attr), actual.getAttribute(attr));
+            Assert.assertEquals(name + "@" + attr, expected.hasAttribute(attr), actual.hasAttribute(attr));
+        }
+        for (QName attr : expected.getAttributeQNames()) {
+            Assert.assertEquals(name + "@" + attr, expected.getAttribute(attr), actual.getAttribute(attr));
+            Assert.assertEquals(name + "@" + attr, expected.hasAttribute(attr), actual.hasAttribute(attr));
+        }
+        Assert.assertEquals(name, expected.getAttribute("missing"), actual.getAttribute("missing"));
+        Assert.assertEquals(name, expected.hasParent(), actual.hasParent());
+        Assert.assertEquals(name, expected.getNamespaces(), actual.getNamespaces());
+        List<Configuration> expected_children = expected.getChildren();
+        List<Configuration> actual_children = actual.getChildren();
+        Assert.assertEquals(name, expected_children.size(), actual_children.size());
+        for (int i = 0; i < expected_children.size(); i++) {
+            Configuration expected_child = expected_children.get(i);
+            QName child_qname = expected_child.getQName();
+            Assert.assertEquals(expected.getChildren(child_qname).size(), actual.getChildren(child_qname).size());
+            Assert.assertEquals(expected.getChildren(child_qname.getLocalPart()).size(), actual.getChildren(child_qname.getLocalPart()).size());
+            Assert.assertEquals(expected.getFirstChild(child_qname).getQName(), actual.getFirstChild(child_qname).getQName());
+            Assert.assertEquals(expected.hasChildren(child_qname), actual.hasChildren(child_qname));
+            Assert.assertEquals(actual, actual_children.get(i).getParent());
+            assertSameAs(expected_child, actual_children.get(i));
+        }
+    }
+
+}
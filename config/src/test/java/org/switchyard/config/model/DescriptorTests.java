@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config.model;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.xml.validation.Schema;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * DescriptorTests.
+ */
+public class DescriptorTests {
+
+    private static final String SWITCHYARD_NAMESPACE = "urn:switchyard-config:switchyard:1.0";
+    private static final String SCA_NAMESPACE = "http://docs.oasis-open.org/ns/opencsa/sca/200912";
+
+    @Test
+    public void testSchemaSharedAcrossDescriptors() throws Exception {
+        Set<String> namespaces = new HashSet<String>();
+        namespaces.add(SWITCHYARD_NAMESPACE);
+        namespaces.add(SCA_NAMESPACE);
+        Schema first = new Descriptor().getSchema(namespaces);
+        Assert.assertNotNull(first);
+        Schema second = new Descriptor().getSchema(new HashSet<String>(namespaces));
+        Assert.assertSame(first, second);
+        Schema sca = new Descriptor().getSchema(Collections.singleton(SCA_NAMESPACE));
+        Assert.assertNotNull(sca);
+        Assert.assertNotSame(first, sca);
+    }
+
+    @Test
+    public void testSchemaNotSharedAcrossDifferentProperties() throws Exception {
+        Descriptor desc = new Descriptor();
+        Properties props = new Properties();
+        props.setProperty("sca.namespace", SCA_NAMESPACE);
+        props.setProperty("sca.schema", desc.getProperty(Descriptor.SCHEMA, SCA_NAMESPACE));
+        props.setProperty("sca.location", desc.getLocation(SCA_NAMESPACE));
+        Set<String> namespaces = Collections.singleton(SCA_NAMESPACE);
+        Schema other = new Descriptor(props).getSchema(namespaces);
+        Assert.assertNotNull(other);
+        Assert.assertNotSame(desc.getSchema(namespaces), other);
+    }
+
+    @Test
+    public void testDefaultShared() throws Exception {
+        Descriptor desc = Descriptor.getDefault();
+        Assert.assertSame(desc, Descriptor.getDefault());
+        Assert.assertSame(desc, new ModelResource<Model>().getDescriptor());
+        Assert.assertEquals(new Descriptor(), desc);
+    }
+
+    @Test
+    public void testMarshallerCached() throws Exception {
+        Descriptor desc = new Descriptor();
+        Marshaller marshaller = desc.getMarshaller(SCA_NAMESPACE);
+        Assert.assertNotNull(marshaller);
+        Assert.assertSame(desc, marshaller.getDescriptor());
+        Assert.assertSame(marshaller, desc.getMarshaller(SCA_NAMESPACE));
+        Assert.assertNull(desc.getMarshaller("urn:unknown"));
+        Assert.assertNull(desc.getMarshaller((String)null));
+    }
+
+    @Test
+    public void testNoSchema() throws Exception {
+        Assert.assertNull(new Descriptor().getSchema(Collections.singleton("urn:unknown")));
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config.model;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.switchyard.config.model.switchyard.SwitchYardModel;
+
+/**
+ * SnapshotModelResourceTests.
+ */
+public class SnapshotModelResourceTests {
+
+    private static final String COMPLETE_XML = "/org/switchyard/config/model/switchyard/SwitchYardModelTests-Complete.xml";
+    private static final String FRAGMENT_XML = "/org/switchyard/config/model/switchyard/SwitchYardModelTests-Fragment.xml";
+
+    private File _dir;
+
+    @Before
+    public void before() throws Exception {
+        _dir = File.createTempFile("snapshots", "");
+        Assert.assertTrue(_dir.delete());
+    }
+
+    @After
+    public void after() throws Exception {
+        File[] files = _dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        _dir.delete();
+    }
+
+    @Test
+    public void testMiss() throws Exception {
+        Assert.assertEquals(dom(COMPLETE_XML), snapshot(COMPLETE_XML));
+        Assert.assertEquals(1, _dir.listFiles().length);
+    }
+
+    @Test
+    public void testHit() throws Exception {
+        snapshot(FRAGMENT_XML);
+        File fragment = _dir.listFiles()[0];
+        snapshot(COMPLETE_XML);
+        File complete = otherThan(fragment);
+
+        // the snapshot is read rather than the document, as shown by swapping its content
+        copy(fragment, complete);
+        Assert.assertEquals(dom(FRAGMENT_XML), snapshot(COMPLETE_XML));
+    }
+
+    @Test
+    public void testStale() throws Exception {
+        snapshot(COMPLETE_XML);
+        File complete = _dir.listFiles()[0];
+
+        // a changed document doesn't read the snapshot of its previous content...
+        Assert.assertEquals(dom(FRAGMENT_XML), new SnapshotModelResource<SwitchYardModel>(null, _dir, 1).pull(FRAGMENT_XML).toString());
+
+        // ... which is evicted, as only the most recently used snapshot is kept
+        File[] snapshots = _dir.listFiles();
+        Assert.assertEquals(1, snapshots.length);
+        Assert.assertFalse(complete.equals(snapshots[0]));
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        snapshot(COMPLETE_XML);
+        File complete = _dir.listFiles()[0];
+        long length = complete.length();
+
+        // a string claiming to be longer than the snapshot...
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(complete));
+        out.writeInt(0x5359534E);
+        out.writeInt(1);
+        out.writeInt(-1);
+        out.writeInt(-1);
+        out.writeInt(Integer.MAX_VALUE);
+        out.close();
+        Assert.assertEquals(dom(COMPLETE_XML), snapshot(COMPLETE_XML));
+        Assert.assertEquals(length, complete.length());
+
+        // ... or a truncated snapshot is replaced too
+        truncate(complete, length / 2);
+        Assert.assertEquals(dom(COMPLETE_XML), snapshot(COMPLETE_XML));
+        Assert.assertEquals(length, complete.length());
+    }
+
+    private String snapshot(String xml) throws IOException {
+        return new SnapshotModelResource<SwitchYardModel>(_dir).pull(xml).toString();
+    }
+
+    private static String dom(String xml) throws IOException {
+        return new ModelResource<SwitchYardModel>(null, false).pull(xml).toString();
+    }
+
+    private File otherThan(File file) {
+        for (File other : _dir.listFiles()) {
+            if (!other.equals(file)) {
+                return other;
+            }
+        }
+        throw new AssertionError("No other snapshot than " + file);
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        byte[] bytes = read(from);
+        write(to, bytes, bytes.length);
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        write(file, read(file), (int)length);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] bytes = new byte[(int)file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private static void write(File file, byte[] bytes, int length) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes, 0, length);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package org.switchyard.config.model.composite;
 
 import java.io.StringReader;
+import java.util.List;
 
 import javax.xml.namespace.QName;
 
@@ -80,6 +81,59 @@ public class CompositeModelTests {
         Assert.assertTrue(diff.toString(), diff.identical());
     }
 
+    @Test
+    public void testChildModelsShared() throws Exception {
+        assertChildModelsShared(_res.pull(COMPLETE_XML));
+        assertChildModelsShared(new ModelResource<CompositeModel>(null, true).pull(COMPLETE_XML));
+    }
+
+    private void assertChildModelsShared(CompositeModel composite) throws Exception {
+        List<Model> children = composite.getModelChildren();
+        Assert.assertFalse(children.isEmpty());
+        List<Model> again = composite.getModelChildren();
+        Assert.assertEquals(children.size(), again.size());
+        for (int i = 0; i < children.size(); i++) {
+            Model child = children.get(i);
+            Assert.assertSame(child, again.get(i));
+            for (Model grandchild : child.getModelChildren()) {
+                Assert.assertSame(child, grandchild.getModelParent());
+            }
+        }
+        CompositeModel copy = _res.pull(composite.getModelConfiguration().copy());
+        List<Model> copied = copy.getModelChildren();
+        Assert.assertEquals(children.size(), copied.size());
+        for (int i = 0; i < children.size(); i++) {
+            Assert.assertNotSame(children.get(i), copied.get(i));
+        }
+    }
+
+    @Test
+    public void testChildModelsModified() throws Exception {
+        assertChildModelsModified(_res.pull(COMPLETE_XML));
+        assertChildModelsModified(new ModelResource<CompositeModel>(null, true).pull(COMPLETE_XML));
+    }
+
+    private void assertChildModelsModified(CompositeModel composite) throws Exception {
+        ComponentModel component = composite.getComponents().get(0);
+        Configuration component_config = component.getModelConfiguration();
+        int services = component.getServices().size();
+        Assert.assertTrue(services > 0);
+        Assert.assertSame(component, findChildModel(composite, component_config));
+        component_config.addChild(component.getServices().get(0).getModelConfiguration().copy());
+        ComponentModel modified = (ComponentModel)findChildModel(composite, component_config);
+        Assert.assertNotSame(component, modified);
+        Assert.assertEquals(services + 1, modified.getServices().size());
+    }
+
+    private Model findChildModel(Model parent, Configuration config) {
+        for (Model child : parent.getModelChildren()) {
+            if (config.equals(child.getModelConfiguration())) {
+                return child;
+            }
+        }
+        return null;
+    }
+
     @Test
     public void testReadCustomViaConfig() throws Exception {
         CompositeModel composite = _res.pull(COMPLETE_XML);
@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.config.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * XMLFactoriesTests.
+ */
+public class XMLFactoriesTests {
+
+    private static final String PRETTY_PRINT_XSL = "/org/switchyard/config/pretty-print.xsl";
+
+    @Test
+    public void testParseAfterFailure() throws Exception {
+        try {
+            XMLFactories.parse(new InputSource(new StringReader("<broken>")));
+            Assert.fail("expected an IOException");
+        } catch (IOException ioe) {
+            // expected
+        }
+        Document document = XMLFactories.parse(new InputSource(new StringReader("<!-- dropped --><ok xmlns='urn:test'/>")));
+        Assert.assertEquals("ok", document.getDocumentElement().getLocalName());
+        Assert.assertEquals("urn:test", document.getDocumentElement().getNamespaceURI());
+        Assert.assertNull(document.getDocumentElement().getPreviousSibling());
+    }
+
+    @Test
+    public void testConcurrentParse() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 100; i++) {
+                final String name = "e" + i;
+                futures.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        String xml = "<" + name + "><child/></" + name + ">";
+                        return XMLFactories.parse(new InputSource(new StringReader(xml))).getDocumentElement().getNodeName();
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertEquals("e" + i, futures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testNewTransformer() throws Exception {
+        Transformer first = XMLFactories.newTransformer(PRETTY_PRINT_XSL);
+        Transformer second = XMLFactories.newTransformer(PRETTY_PRINT_XSL);
+        Assert.assertNotSame(first, second);
+        Document document = XMLFactories.newDocument();
+        document.appendChild(document.createElementNS("urn:test", "root"));
+        StringWriter writer = new StringWriter();
+        second.transform(new DOMSource(document), new StreamResult(writer));
+        Assert.assertTrue(writer.toString(), writer.toString().contains("root"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNewTransformerNotFound() throws Exception {
+        XMLFactories.newTransformer("/org/switchyard/config/missing.xsl");
+    }
+
+}
@@ -27,9 +27,24 @@ import org.switchyard.config.DOMConfiguration;
 
 import javax.activation.CommandMap;
 import javax.activation.MailcapCommandMap;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 /**
  * @author <a href="mailto:tom.fennelly@gmail.com">tom.fennelly@gmail.com</a>
@@ -64,4 +79,216 @@ public class ClasspathScannerTest {
         Assert.assertTrue(classes.contains(CommandMap.class));
         Assert.assertTrue(classes.contains(MailcapCommandMap.class));
     }
+
+    @Test
+    public void test_parallel_scan() throws IOException {
+        List<URL> urls = new ArrayList<URL>();
+        urls.add(new File("./target/classes").toURI().toURL());
+        urls.add(new File("./src/test/resources/classpathscan-test.jar").toURI().toURL());
+
+        InstanceOfFilter sequentialFilter = new InstanceOfFilter(Object.class);
+        new ClasspathScanner(sequentialFilter).scan(urls);
+        InstanceOfFilter parallelFilter = new InstanceOfFilter(Object.class);
+        new ClasspathScanner(parallelFilter, 4).scan(urls);
+
+        Assert.assertEquals(new HashSet<Class<?>>(sequentialFilter.getMatchedTypes()), new HashSet<Class<?>>(parallelFilter.getMatchedTypes()));
+        Assert.assertEquals(sequentialFilter.getMatchedTypes().size(), parallelFilter.getMatchedTypes().size());
+        Assert.assertTrue(parallelFilter.getMatchedTypes().contains(DOMConfiguration.class));
+        Assert.assertTrue(parallelFilter.getMatchedTypes().contains(MailcapCommandMap.class));
+
+        ResourceExistsFilter existsFilter = new ResourceExistsFilter("org/switchyard/config/util/classpath/ClasspathScanner.class");
+        new ClasspathScanner(existsFilter, 4).scan(urls);
+        Assert.assertTrue(existsFilter.resourceExists());
+    }
+
+    @Test
+    public void test_unmatched_classes_not_loaded() throws IOException {
+        URL testClasses = new File("./target/test-classes").toURI().toURL();
+
+        InstanceOfFilter instanceOfFilter = new InstanceOfFilter(Scanned.class);
+        new ClasspathScanner(instanceOfFilter).scan(testClasses);
+        Assert.assertTrue(instanceOfFilter.getMatchedTypes().contains(ScannedType.class));
+        Assert.assertTrue(instanceOfFilter.getMatchedTypes().contains(ScannedSubType.class));
+        Assert.assertFalse(instanceOfFilter.getMatchedTypes().contains(UnscannedType.class));
+
+        IsAnnotationPresentFilter annotationFilter = new IsAnnotationPresentFilter(Scannable.class);
+        new ClasspathScanner(annotationFilter).scan(testClasses);
+        Assert.assertTrue(annotationFilter.getMatchedTypes().contains(ScannedType.class));
+        // @Scannable is @Inherited
+        Assert.assertTrue(annotationFilter.getMatchedTypes().contains(ScannedSubType.class));
+        Assert.assertFalse(annotationFilter.getMatchedTypes().contains(UnscannedType.class));
+
+        // neither filter should have had to load (and so initialize) the unmatched type
+        Assert.assertFalse(_unscannedTypeInitialized);
+    }
+
+    @Test
+    public void test_index() throws IOException {
+        File indexFile = File.createTempFile("scan", ".index");
+        indexFile.delete();
+        try {
+            File archive = new File("./src/test/resources/classpathscan-test.jar");
+
+            ScanIndex index = new ScanIndex(indexFile);
+            InstanceOfFilter filter = new InstanceOfFilter(CommandMap.class);
+            new ClasspathScanner(filter).setIndex(index).scan(archive.toURI().toURL());
+            Assert.assertTrue(filter.getMatchedTypes().contains(MailcapCommandMap.class));
+            Assert.assertTrue(indexFile.isFile());
+
+            // a new index reads the results back from the file...
+            index = new ScanIndex(indexFile);
+            List<String> indexed = index.get(archive, filter.getIndexKey());
+            Assert.assertNotNull(indexed);
+            Assert.assertTrue(indexed.contains("javax/activation/MailcapCommandMap.class"));
+            Assert.assertNull(index.get(archive, new InstanceOfFilter(Object.class).getIndexKey()));
+
+            // ...and the scanner hands the filter the indexed results
+            InstanceOfFilter indexedFilter = new InstanceOfFilter(CommandMap.class);
+            new ClasspathScanner(indexedFilter).setIndex(index).scan(archive.toURI().toURL());
+            Assert.assertEquals(new HashSet<Class<?>>(filter.getMatchedTypes()), new HashSet<Class<?>>(indexedFilter.getMatchedTypes()));
+
+            // a changed directory is scanned again
+            File dir = new File(indexFile.getPath() + ".dir");
+            File resource = new File(dir, "a/b.class");
+            resource.getParentFile().mkdirs();
+            resource.createNewFile();
+            index.put(dir, filter.getIndexKey(), new ArrayList<String>());
+            Assert.assertEquals(0, index.get(dir, filter.getIndexKey()).size());
+            // during a scan the directory is only stamped once...
+            index.beginScan();
+            Assert.assertNotNull(index.get(dir, filter.getIndexKey()));
+            Assert.assertTrue(resource.setLastModified(resource.lastModified() - 10000));
+            Assert.assertNotNull(index.get(dir, filter.getIndexKey()));
+            index.endScan();
+            // ...and the change is seen by the next one
+            Assert.assertNull(index.get(dir, filter.getIndexKey()));
+            resource.delete();
+            resource.getParentFile().delete();
+            dir.delete();
+        } finally {
+            indexFile.delete();
+        }
+    }
+
+    @Test
+    public void test_archive_reader() throws IOException {
+        File archive = new File("./src/test/resources/classpathscan-test.jar");
+        ZipFile zip = new ZipFile(archive);
+        ArchiveReader reader = new ArchiveReader(archive);
+        try {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            for (ArchiveReader.Entry entry : reader.getEntries()) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                Assert.assertEquals(zipEntry.getName(), entry.getName());
+                if (!zipEntry.isDirectory()) {
+                    Assert.assertTrue(zipEntry.getName(), Arrays.equals(read(zip.getInputStream(zipEntry)), read(reader.open(entry))));
+                }
+            }
+            Assert.assertFalse(zipEntries.hasMoreElements());
+        } finally {
+            reader.close();
+            zip.close();
+        }
+    }
+
+    @Test
+    public void test_nested_archive_scan() throws IOException {
+        File archive = File.createTempFile("classpathscan-test", ".war");
+        try {
+            ZipOutputStream war = new ZipOutputStream(new FileOutputStream(archive));
+            war.putNextEntry(new ZipEntry("WEB-INF/lib/classpathscan-test.jar"));
+            war.write(read(new FileInputStream("./src/test/resources/classpathscan-test.jar")));
+            war.closeEntry();
+            war.close();
+
+            ResourceExistsFilter existsFilter = new ResourceExistsFilter("WEB-INF/lib/classpathscan-test.jar");
+            new ClasspathScanner(existsFilter).scan(archive.toURI().toURL());
+            Assert.assertTrue(existsFilter.resourceExists());
+            existsFilter = new ResourceExistsFilter("javax/activation/MailcapCommandMap.class");
+            new ClasspathScanner(existsFilter).scan(archive.toURI().toURL());
+            Assert.assertTrue(existsFilter.resourceExists());
+
+            // types in nested archives couldn't be loaded through the filter's class loader
+            InstanceOfFilter filter = new InstanceOfFilter(CommandMap.class);
+            new ClasspathScanner(filter).scan(archive.toURI().toURL());
+            Assert.assertTrue(filter.getMatchedTypes().isEmpty());
+        } finally {
+            // fails (on Windows) if the scanner left the archive open
+            Assert.assertTrue(archive.delete());
+        }
+    }
+
+    @Test
+    public void test_nested_war_scan() throws IOException {
+        File archive = File.createTempFile("classpathscan-test", ".ear");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ZipOutputStream war = new ZipOutputStream(bytes);
+            war.putNextEntry(new ZipEntry("WEB-INF/web.xml"));
+            war.closeEntry();
+            war.putNextEntry(new ZipEntry("WEB-INF/classes/META-INF/switchyard.xml"));
+            war.closeEntry();
+            war.putNextEntry(new ZipEntry("WEB-INF/lib/classpathscan-test.jar"));
+            war.write(read(new FileInputStream("./src/test/resources/classpathscan-test.jar")));
+            war.closeEntry();
+            war.close();
+            ZipOutputStream ear = new ZipOutputStream(new FileOutputStream(archive));
+            ear.putNextEntry(new ZipEntry("app.war"));
+            ear.write(bytes.toByteArray());
+            ear.closeEntry();
+            ear.close();
+
+            // resources are named as on the classpath of the web application
+            ResourceExistsFilter existsFilter = new ResourceExistsFilter("META-INF/switchyard.xml");
+            new ClasspathScanner(existsFilter).scan(archive.toURI().toURL());
+            Assert.assertTrue(existsFilter.resourceExists());
+            existsFilter = new ResourceExistsFilter("javax/activation/MailcapCommandMap.class");
+            new ClasspathScanner(existsFilter).scan(archive.toURI().toURL());
+            Assert.assertTrue(existsFilter.resourceExists());
+            existsFilter = new ResourceExistsFilter("WEB-INF/classes/META-INF/switchyard.xml");
+            new ClasspathScanner(existsFilter).scan(archive.toURI().toURL());
+            Assert.assertFalse(existsFilter.resourceExists());
+            existsFilter = new ResourceExistsFilter("WEB-INF/web.xml");
+            new ClasspathScanner(existsFilter).scan(archive.toURI().toURL());
+            Assert.assertFalse(existsFilter.resourceExists());
+        } finally {
+            Assert.assertTrue(archive.delete());
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static boolean _unscannedTypeInitialized = false;
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Inherited
+    public @interface Scannable {
+    }
+
+    public interface Scanned {
+    }
+
+    @Scannable
+    public static class ScannedType implements Scanned {
+    }
+
+    public static class ScannedSubType extends ScannedType {
+    }
+
+    public static class UnscannedType {
+        static {
+            _unscannedTypeInitialized = true;
+        }
+    }
 }
@@ -32,7 +32,9 @@ import org.switchyard.config.model.Model;
  * build a list of activators for known types and enlist each activator in the
  * lifecycle of the application.  The deployer takes care of dependency ordering
  * between services, references, and bindings and invokes Activator instances
- * in the appropriate order.
+ * in the appropriate order.  A deployer may activate independent services,
+ * references and bindings concurrently, so Activator instances should be
+ * thread-safe.
  */
 public interface Activator {
     /**
@@ -0,0 +1,60 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.deploy;
+
+import java.util.Collection;
+
+/**
+ * Makes an {@link Activator} known to the deployer.  Providers are discovered
+ * with {@link java.util.ServiceLoader}, through a
+ * <code>META-INF/services/org.switchyard.deploy.ActivatorProvider</code> entry,
+ * once per class loader.  All providers are instantiated on discovery, so they
+ * should be cheap to construct, whereas the activator itself is only created
+ * when a deployment uses one of its types.
+ * <p/>
+ * The discovered instance is reused for each activator, except for a provider
+ * defined by the class loader it's discovered with: it's held weakly, so as not
+ * to keep that class loader from being collected, and instantiated again once
+ * nothing else references it.  State such a provider shares between its
+ * activators should be held by its class, or by the activators themselves.
+ */
+public interface ActivatorProvider {
+    /**
+     * The implementation types the activator deploys components for, e.g.
+     * "bean" for implementation.bean.
+     * @return implementation types, empty if none
+     */
+    Collection<String> getImplementationTypes();
+    /**
+     * The binding types the activator deploys gateways for, e.g. "soap" for
+     * binding.soap.
+     * @return binding types, empty if none
+     */
+    Collection<String> getBindingTypes();
+    /**
+     * Create the activator for a deployment.  An activator can be shared
+     * between deployments by returning the same instance each time, in which
+     * case it must be able to tell the services of one deployment from those
+     * of another (the services of two versions of an application can have
+     * the same names while one replaces the other).
+     * @return activator
+     */
+    Activator createActivator();
+}
@@ -64,6 +64,10 @@ public abstract class AbstractDeployment {
      * The Service Domain.
      */
     private ServiceDomain _serviceDomain;
+    /**
+     * Whether this deployment destroys the domain.
+     */
+    private boolean _domainOwner;
 
     /**
      * Set the parent deployment.
@@ -84,6 +88,32 @@ public abstract class AbstractDeployment {
         }
     }
 
+    /**
+     * Take over the responsibility for destroying the domain from a deployment
+     * this deployment replaces, and shares the domain with.
+     * @param previous the deployment being replaced
+     */
+    protected void takeOverDomain(AbstractDeployment previous) {
+        if (previous._domainOwner) {
+            previous._domainOwner = false;
+            _domainOwner = true;
+        }
+    }
+
+    /**
+     * Destroy the domain of this deployment, if it is responsible for it: it
+     * created the domain in {@link #init()}, or took it over.
+     */
+    protected void destroyDomain() {
+        if (_domainOwner) {
+            _domainOwner = false;
+            ServiceDomain domain = getDomain();
+            if (domain instanceof DomainImpl) {
+                ((DomainImpl)domain).destroy();
+            }
+        }
+    }
+
     /**
      * Start/un-pause the deployment.
      */
@@ -111,6 +141,19 @@ public abstract class AbstractDeployment {
         }
     }
 
+    /**
+     * Get the deployment which created the domain of this deployment, i.e. the
+     * top of its chain of parent deployments.
+     * @return root deployment
+     */
+    AbstractDeployment getRootDeployment() {
+        if (_parentDeployment == null) {
+            return this;
+        } else {
+            return _parentDeployment.getRootDeployment();
+        }
+    }
+
     private void createDomain() {
         String registryClassName = System.getProperty(REGISTRY_CLASS_NAME, DefaultServiceRegistry.class.getName());
         String endpointProviderClassName = System.getProperty(ENDPOINT_PROVIDER_CLASS_NAME, LocalExchangeBus.class.getName());
@@ -121,6 +164,7 @@ public abstract class AbstractDeployment {
             BaseTransformerRegistry transformerRegistry = new BaseTransformerRegistry();
 
             _serviceDomain = new DomainImpl(ROOT_DOMAIN, registry, endpointProvider, transformerRegistry);
+            _domainOwner = true;
         } catch (NullPointerException npe) {
             throw new RuntimeException(npe);
         }
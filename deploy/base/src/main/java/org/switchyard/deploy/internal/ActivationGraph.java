@@ -0,0 +1,198 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.deploy.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.switchyard.internal.logging.RuntimeLogger;
+
+/**
+ * Graph of the activation steps of a deployment, and the steps each depends on.
+ * <p/>
+ * Steps are run on a bounded pool as soon as all the steps they depend on have
+ * completed.  When a step fails, no further steps are started; the steps already
+ * running are allowed to complete, and the first failure is then rethrown, so
+ * the caller can roll back whatever was activated.
+ */
+final class ActivationGraph {
+
+    private static RuntimeLogger _log = RuntimeLogger.getLogger(ActivationGraph.class);
+
+    private final List<Step> _steps = new ArrayList<Step>();
+    private final Object _lock = new Object();
+    private int _running;
+    private Throwable _failure;
+
+    /**
+     * Add a step.
+     * @param description description of the step, for logging
+     * @param activation the step itself
+     * @return the step
+     */
+    Step add(String description, Runnable activation) {
+        Step step = new Step(_steps.size(), description, activation);
+        _steps.add(step);
+        return step;
+    }
+
+    /**
+     * Run all steps in dependency order.
+     * @param parallelism maximum number of steps to run at the same time
+     */
+    void activate(int parallelism) {
+        if (parallelism <= 1) {
+            activateInOrder();
+            return;
+        }
+
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private final AtomicInteger _count = new AtomicInteger();
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SwitchYard-activation-" + _count.incrementAndGet());
+                thread.setDaemon(true);
+                // activators load application classes through the TCCL of the deployer
+                thread.setContextClassLoader(loader);
+                return thread;
+            }
+        });
+        boolean interrupted = false;
+        try {
+            synchronized (_lock) {
+                for (Step step : _steps) {
+                    if (step._pending == 0) {
+                        submit(executor, step);
+                    }
+                }
+                while (_running > 0) {
+                    try {
+                        _lock.wait();
+                    } catch (InterruptedException ie) {
+                        // the interrupt is restored once the running steps completed, as
+                        // wait() would otherwise throw straight away again
+                        interrupted = true;
+                        if (_failure == null) {
+                            _failure = new RuntimeException("Interrupted while activating.", ie);
+                        }
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        rethrowFailure();
+    }
+
+    /**
+     * Runs the steps on the calling thread, in the order they were added.
+     */
+    private void activateInOrder() {
+        for (Step step : _steps) {
+            step._activation.run();
+        }
+    }
+
+    // called holding _lock
+    private void submit(final ExecutorService executor, final Step step) {
+        _running++;
+        executor.execute(new Runnable() {
+            public void run() {
+                Throwable failure = null;
+                try {
+                    _log.debug("Activating {} on {}", step._description, Thread.currentThread().getName());
+                    step._activation.run();
+                } catch (Throwable t) {
+                    failure = t;
+                }
+                synchronized (_lock) {
+                    _running--;
+                    if (failure != null) {
+                        if (_failure == null) {
+                            _failure = failure;
+                        }
+                    } else if (_failure == null) {
+                        for (Step dependent : step._dependents) {
+                            if (--dependent._pending == 0) {
+                                submit(executor, dependent);
+                            }
+                        }
+                    }
+                    if (_running == 0) {
+                        _lock.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    private void rethrowFailure() {
+        if (_failure instanceof RuntimeException) {
+            throw (RuntimeException)_failure;
+        } else if (_failure instanceof Error) {
+            throw (Error)_failure;
+        } else if (_failure != null) {
+            throw new RuntimeException(_failure);
+        }
+    }
+
+    /**
+     * A step in the graph.
+     */
+    static final class Step {
+
+        private final int _index;
+        private final String _description;
+        private final Runnable _activation;
+        private final List<Step> _dependents = new LinkedList<Step>();
+        private int _pending;
+
+        private Step(int index, String description, Runnable activation) {
+            _index = index;
+            _description = description;
+            _activation = activation;
+        }
+
+        /**
+         * Make this step wait for another step.  Steps may only depend on steps
+         * added before them, so the graph can't have cycles.
+         * @param step the step to wait for
+         * @return this step (useful for chaining)
+         */
+        Step dependsOn(Step step) {
+            if (step._index >= _index) {
+                throw new IllegalArgumentException(_description + " can't depend on " + step._description + ", which was added after it.");
+            }
+            if (!step._dependents.contains(this)) {
+                step._dependents.add(this);
+                _pending++;
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.deploy.internal;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+
+import org.switchyard.config.util.Classes;
+import org.switchyard.deploy.Activator;
+import org.switchyard.deploy.ActivatorProvider;
+import org.switchyard.internal.logging.RuntimeLogger;
+
+/**
+ * The {@link ActivatorProvider}s visible to a class loader, discovered once and
+ * cached, so the cost of starting a deployment doesn't grow with the number of
+ * deployments.  The bean and SOAP activators are known without a provider, and
+ * loaded by class name on first use, unless a provider is found for their types.
+ * <p/>
+ * Registries are cached per class loader without keeping it from being collected:
+ * nothing a registry holds strongly references its class loader, so providers
+ * defined by the class loader itself are only held weakly, and instantiated
+ * again from their class if collected.
+ */
+final class ActivatorRegistry {
+
+    private static RuntimeLogger _log = RuntimeLogger.getLogger(ActivatorRegistry.class);
+
+    // soft, so a registry is kept while its class loader is, unless memory runs short
+    private static Map<ClassLoader, SoftReference<ActivatorRegistry>> _registries =
+        new WeakHashMap<ClassLoader, SoftReference<ActivatorRegistry>>();
+
+    private final Map<String, ActivatorProvider> _implementations = new HashMap<String, ActivatorProvider>();
+    private final Map<String, ActivatorProvider> _bindings = new HashMap<String, ActivatorProvider>();
+
+    private ActivatorRegistry(ClassLoader loader) {
+        // these really need to go in a provider configuration file of their own modules
+        add(new NamedActivatorProvider("org.switchyard.component.bean.deploy.BeanComponentActivator", loader,
+                Collections.singleton("bean"), Collections.<String>emptySet()));
+        add(new NamedActivatorProvider("org.switchyard.component.soap.deploy.SOAPActivator", loader,
+                Collections.<String>emptySet(), Collections.singleton("soap")));
+
+        Iterator<ActivatorProvider> providers = ServiceLoader.load(ActivatorProvider.class, loader).iterator();
+        while (true) {
+            try {
+                if (!providers.hasNext()) {
+                    break;
+                }
+                ActivatorProvider provider = providers.next();
+                if (provider.getClass().getClassLoader() == loader) {
+                    provider = new LocalActivatorProvider(provider);
+                }
+                add(provider);
+            } catch (ServiceConfigurationError sce) {
+                _log.warn("Ignoring Activator provider which can't be loaded: {}", sce);
+            }
+        }
+    }
+
+    /**
+     * Get the activator registry of a class loader.
+     * @param loader class loader to discover activator providers with
+     * @return activator registry
+     */
+    static synchronized ActivatorRegistry forClassLoader(ClassLoader loader) {
+        SoftReference<ActivatorRegistry> reference = _registries.get(loader);
+        ActivatorRegistry registry = reference != null ? reference.get() : null;
+        if (registry == null) {
+            registry = new ActivatorRegistry(loader);
+            _registries.put(loader, new SoftReference<ActivatorRegistry>(registry));
+        }
+        return registry;
+    }
+
+    /**
+     * Get the provider of the activator for an implementation type.
+     * @param type implementation type, e.g. "bean"
+     * @return activator provider, or null if there is none
+     */
+    ActivatorProvider getImplementationProvider(String type) {
+        return _implementations.get(type);
+    }
+
+    /**
+     * Get the provider of the activator for a binding type.
+     * @param type binding type, e.g. "soap"
+     * @return activator provider, or null if there is none
+     */
+    ActivatorProvider getBindingProvider(String type) {
+        return _bindings.get(type);
+    }
+
+    private void add(ActivatorProvider provider) {
+        for (String type : provider.getImplementationTypes()) {
+            _implementations.put(type, provider);
+        }
+        for (String type : provider.getBindingTypes()) {
+            _bindings.put(type, provider);
+        }
+    }
+
+    /**
+     * Provides an activator by class name, loading the class on first use.
+     */
+    private static final class NamedActivatorProvider implements ActivatorProvider {
+
+        private final String _className;
+        // weak, as are the classes it loads, which keep their class loader
+        private final WeakReference<ClassLoader> _loader;
+        private final Collection<String> _implementationTypes;
+        private final Collection<String> _bindingTypes;
+        private volatile WeakReference<Class<?>> _activatorClass;
+
+        NamedActivatorProvider(String className, ClassLoader loader,
+                Collection<String> implementationTypes, Collection<String> bindingTypes) {
+            _className = className;
+            _loader = new WeakReference<ClassLoader>(loader);
+            _implementationTypes = implementationTypes;
+            _bindingTypes = bindingTypes;
+        }
+
+        @Override
+        public Collection<String> getImplementationTypes() {
+            return _implementationTypes;
+        }
+
+        @Override
+        public Collection<String> getBindingTypes() {
+            return _bindingTypes;
+        }
+
+        @Override
+        public Activator createActivator() {
+            WeakReference<Class<?>> reference = _activatorClass;
+            Class<?> activatorClass = reference != null ? reference.get() : null;
+            if (activatorClass == null) {
+                ClassLoader loader = _loader.get();
+                if (loader == null) {
+                    throw new IllegalStateException("The class loader of Activator class '" + _className + "' has been collected.");
+                }
+                activatorClass = Classes.forName(_className, loader);
+                if (activatorClass == null) {
+                    throw new RuntimeException("Activator class '" + _className + "' not found.");
+                }
+                _activatorClass = new WeakReference<Class<?>>(activatorClass);
+            }
+            try {
+                return (Activator)activatorClass.newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to instantiate Activator class '" + _className + "'.", e);
+            }
+        }
+    }
+
+    /**
+     * Provides activators through a provider defined by the class loader of the
+     * registry.  The provider is held weakly, so it's instantiated again from its
+     * class only once it has been collected.
+     */
+    private static final class LocalActivatorProvider implements ActivatorProvider {
+
+        private final String _className;
+        private final WeakReference<Class<? extends ActivatorProvider>> _providerClass;
+        // copied, as the provider's own collections may be of its class loader too
+        private final Collection<String> _implementationTypes;
+        private final Collection<String> _bindingTypes;
+        private WeakReference<ActivatorProvider> _provider;
+
+        LocalActivatorProvider(ActivatorProvider provider) {
+            _className = provider.getClass().getName();
+            _providerClass = new WeakReference<Class<? extends ActivatorProvider>>(provider.getClass());
+            _implementationTypes = new ArrayList<String>(provider.getImplementationTypes());
+            _bindingTypes = new ArrayList<String>(provider.getBindingTypes());
+            _provider = new WeakReference<ActivatorProvider>(provider);
+        }
+
+        @Override
+        public Collection<String> getImplementationTypes() {
+            return _implementationTypes;
+        }
+
+        @Override
+        public Collection<String> getBindingTypes() {
+            return _bindingTypes;
+        }
+
+        @Override
+        public Activator createActivator() {
+            return getProvider().createActivator();
+        }
+
+        private synchronized ActivatorProvider getProvider() {
+            ActivatorProvider provider = _provider.get();
+            if (provider == null) {
+                Class<? extends ActivatorProvider> providerClass = _providerClass.get();
+                if (providerClass == null) {
+                    throw new IllegalStateException("The class loader of Activator provider '" + _className + "' has been collected.");
+                }
+                try {
+                    provider = providerClass.newInstance();
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to instantiate Activator provider class '" + _className + "'.", e);
+                }
+                _provider = new WeakReference<ActivatorProvider>(provider);
+            }
+            return provider;
+        }
+    }
+}
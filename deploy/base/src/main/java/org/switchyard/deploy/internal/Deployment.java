@@ -20,12 +20,19 @@
 package org.switchyard.deploy.internal;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.xml.namespace.QName;
 
-import org.apache.log4j.Logger;
 import org.switchyard.ExchangeHandler;
 import org.switchyard.ServiceReference;
 import org.switchyard.config.model.ModelResource;
@@ -33,14 +40,21 @@ import org.switchyard.config.model.composite.BindingModel;
 import org.switchyard.config.model.composite.ComponentModel;
 import org.switchyard.config.model.composite.ComponentReferenceModel;
 import org.switchyard.config.model.composite.ComponentServiceModel;
+import org.switchyard.config.model.composite.CompositeModel;
 import org.switchyard.config.model.composite.CompositeReferenceModel;
 import org.switchyard.config.model.composite.CompositeServiceModel;
 import org.switchyard.config.model.switchyard.SwitchYardModel;
 import org.switchyard.config.model.transform.TransformModel;
 import org.switchyard.config.model.transform.TransformsModel;
+import org.switchyard.config.util.Classes;
 import org.switchyard.deploy.Activator;
+import org.switchyard.deploy.ActivatorProvider;
+import org.switchyard.internal.DomainImpl;
+import org.switchyard.internal.logging.RuntimeLogger;
+import org.switchyard.internal.transform.LazyTransformer;
 import org.switchyard.metadata.ServiceInterface;
 import org.switchyard.metadata.java.JavaService;
+import org.switchyard.spi.Dispatcher;
 import org.switchyard.transform.Transformer;
 import org.switchyard.transform.TransformerRegistry;
 import org.switchyard.transform.config.model.TransformerFactory;
@@ -53,35 +67,67 @@ import org.switchyard.transform.config.model.TransformerFactory;
  * @author <a href="mailto:tom.fennelly@gmail.com">tom.fennelly@gmail.com</a>
  */
 public class Deployment extends AbstractDeployment {
-    
+
     /**
-     * Activator class for implementation.bean.  This really needs to go in a config file.
+     * System property holding the default {@link #setActivationParallelism(int) activation parallelism}.
      */
-    private static final String BEAN_ACTIVATOR_CLASS = 
-        "org.switchyard.component.bean.deploy.BeanComponentActivator";
+    public static final String ACTIVATION_PARALLELISM_PROPERTY = "org.switchyard.deploy.activationParallelism";
+
     /**
-     * Activator class for binding.soap.  This really needs to go in a config file.
+     * System property holding the default {@link #setDrainTimeout(long) drain timeout}, in milliseconds.
      */
-    private static final String SOAP_ACTIVATOR_CLASS = 
-        "org.switchyard.component.soap.deploy.SOAPActivator";
+    public static final String DRAIN_TIMEOUT_PROPERTY = "org.switchyard.deploy.drainTimeout";
+
+    /**
+     * System property holding the default {@link #setTransformerLoading(TransformerLoading) transformer loading},
+     * e.g. "lazy".
+     */
+    public static final String TRANSFORMER_LOADING_PROPERTY = "org.switchyard.deploy.transformerLoading";
+
+    /**
+     * When the transformers of an application are constructed.
+     */
+    public enum TransformerLoading {
+        /**
+         * On {@link Deployment#init()}.
+         */
+        EAGER,
+        /**
+         * When each is first used.
+         */
+        LAZY,
+        /**
+         * When each is first used, or in the background after {@link Deployment#start()}, whichever comes first.
+         */
+        PREWARM
+    }
     
     /**
      * Interface type used by a Java interface, e.g. "interface.java"
      */
     private static final String JAVA_INTERFACE = "java";
 
-    private static Logger _log = Logger.getLogger(Deployment.class);
+    private static final long DEFAULT_DRAIN_TIMEOUT = 30000L;
+
+    private static RuntimeLogger _log = RuntimeLogger.getLogger(Deployment.class);
 
     private SwitchYardModel _switchyardConfig;
+    // synchronized, as activators may be created from multiple threads (see setActivationParallelism)
     private Map<String, Activator> _componentActivators =
-        new HashMap<String, Activator>();
+        Collections.synchronizedMap(new HashMap<String, Activator>());
     private Map<String, Activator> _gatewayActivators = 
-        new HashMap<String, Activator>();
+        Collections.synchronizedMap(new HashMap<String, Activator>());
     private List<Transformer> _transformers = new LinkedList<Transformer>();
-    private List<Activation> _services = new LinkedList<Activation>();
-    private List<Activation> _serviceBindings = new LinkedList<Activation>();
-    private List<Activation> _references = new LinkedList<Activation>();
-    private List<Activation> _referenceBindings = new LinkedList<Activation>();
+    // synchronized, as activations may be added from multiple threads (see setActivationParallelism)
+    private List<Activation> _services = Collections.synchronizedList(new LinkedList<Activation>());
+    private List<Activation> _serviceBindings = Collections.synchronizedList(new LinkedList<Activation>());
+    private List<Activation> _references = Collections.synchronizedList(new LinkedList<Activation>());
+    private List<Activation> _referenceBindings = Collections.synchronizedList(new LinkedList<Activation>());
+    private int _activationParallelism = Integer.getInteger(ACTIVATION_PARALLELISM_PROPERTY, 1);
+    private long _drainTimeout = Long.getLong(DRAIN_TIMEOUT_PROPERTY, DEFAULT_DRAIN_TIMEOUT);
+    private TransformerLoading _transformerLoading = getDefaultTransformerLoading();
+    private Thread _prewarmThread;
+    private boolean _replacing;
 
     /**
      * Create a new instance of Deployer from a configuration stream.
@@ -104,15 +150,60 @@ public class Deployment extends AbstractDeployment {
         _switchyardConfig = configModel;
     }
     
+    /**
+     * Set the number of threads used to construct the transformers and {@link Activator}s
+     * of the application on {@link #init()}, and to activate its services, references and
+     * bindings on {@link #start()}.  With more than one thread, transformers and activators
+     * are constructed concurrently, as are independent activations, and the activators used
+     * must be thread-safe.  The default is 1 (construct and activate in order on the
+     * calling thread), or the value of the {@link #ACTIVATION_PARALLELISM_PROPERTY}
+     * system property.
+     * @param parallelism maximum number of concurrent activations
+     */
+    public void setActivationParallelism(int parallelism) {
+        _activationParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Set how long {@link #stop()} waits for the exchanges in flight through the services
+     * of the application to complete.  The services stop receiving new exchanges first,
+     * and any exchanges still in flight at the timeout are abandoned, and reported.  The
+     * default is 30 seconds, or the value of the {@link #DRAIN_TIMEOUT_PROPERTY} system
+     * property.
+     * @param drainTimeout maximum time to wait, in milliseconds
+     */
+    public void setDrainTimeout(long drainTimeout) {
+        _drainTimeout = Math.max(0, drainTimeout);
+    }
+
+    /**
+     * Set when the transformers of the application are constructed.  Lazily constructed
+     * transformers are registered as a {@link LazyTransformer} under the from and to names
+     * of their configuration, and errors constructing them only show when they are first
+     * used (or prewarmed).  The default is {@link TransformerLoading#EAGER}, or the value
+     * of the {@link #TRANSFORMER_LOADING_PROPERTY} system property.
+     * <p/>
+     * This must be called before calling {@link #init()}.
+     * @param transformerLoading when to construct the transformers
+     */
+    public void setTransformerLoading(TransformerLoading transformerLoading) {
+        _transformerLoading = transformerLoading;
+    }
+
     /**
      * Initialize the deployment.
      */
     public void init() {
         super.init();
-        _log.debug("Initializing deployment for application " + _switchyardConfig.getName());
+        _log.debug("Initializing deployment for application {}", _switchyardConfig.getName());
         // create a new domain and load transformer and activator instances for lifecycle
         registerTransformers();
-        createActivators();
+        try {
+            createActivators();
+        } catch (RuntimeException e) {
+            unregisterTransformers();
+            throw e;
+        }
     }
     
     /**
@@ -120,33 +211,112 @@ public class Deployment extends AbstractDeployment {
      * activators are triggered.
      */
     public void start() {
-        _log.debug("Starting deployment for application " + _switchyardConfig.getName());
+        start(true);
+    }
+
+    /**
+     * Start this deployment in place of a running deployment of the same application,
+     * e.g. of its previous version, without a window in which its services can't be
+     * found:
+     * <ol>
+     * <li>this deployment is initialized and started alongside the previous one, up
+     * to its service bindings, while the services of the previous one keep receiving
+     * new exchanges</li>
+     * <li>the service bindings of the previous deployment are stopped, and those of
+     * this deployment started, as both can't listen on the same endpoints</li>
+     * <li>new exchanges switch to the services of this deployment, all at once</li>
+     * <li>the exchanges in flight through the services of the previous deployment
+     * are given up to the drain timeout to complete, and the previous deployment is
+     * then stopped and destroyed</li>
+     * </ol>
+     * Transformers with unchanged configuration are shared by both deployments if they
+     * have the same class loader.  Otherwise those of this deployment take the place of
+     * the previous deployment's in the registry, from when this deployment is initialized,
+     * as their code may have changed.  A transformer whose configuration changed can't be
+     * registered alongside the previous one, which fails the replacement.  If this
+     * deployment fails to start, including its service bindings, it is destroyed and the
+     * previous deployment is left running as is, with its service bindings restarted.
+     * <p/>
+     * Call this instead of {@link #init()} and {@link #start()}.
+     * @param previous the running deployment to replace
+     * @param drainTimeout maximum time to wait, in milliseconds, for the exchanges in
+     * flight through the services of the previous deployment
+     */
+    public void replace(Deployment previous, long drainTimeout) {
+        _log.debug("Replacing deployment for application {}", _switchyardConfig.getName());
+        // share the domain, without keeping the chain of all previous versions reachable
+        setParentDeployment(previous.getRootDeployment());
+        _replacing = true;
+        init();
+        try {
+            start(false);
+        } catch (RuntimeException e) {
+            destroy();
+            throw e;
+        }
+
+        previous.undeployServiceBindings();
+        try {
+            startServiceBindings();
+        } catch (RuntimeException e1) {
+            // the previous deployment is still in use, so it takes over again
+            _log.debug("Restoring the previous deployment of application {}", _switchyardConfig.getName());
+            try {
+                stop();
+                destroy();
+                previous.startServiceBindings();
+            } catch (RuntimeException e2) {
+                _log.debug("Failed to restore the previous deployment of application {}", _switchyardConfig.getName(), e2);
+            }
+            throw e1;
+        }
+
+        takeOverDomain(previous);
+        List<Dispatcher> previousDispatchers = unregisterServices(previous.getRegisteredServices());
+        try {
+            drain(previousDispatchers, drainTimeout);
+        } finally {
+            previous.stop();
+            previous.destroy();
+        }
+    }
+
+    private void startServiceBindings() {
+        ActivationGraph serviceBindings = new ActivationGraph();
+        addServiceBindings(serviceBindings, null, null);
+        serviceBindings.activate(_activationParallelism);
+    }
+
+    private void start(boolean withServiceBindings) {
+        _log.debug("Starting deployment for application {}", _switchyardConfig.getName());
         // ordered startup lifecycle
         try {
-            deployReferenceBindings();
-            deployServices();
-            deployReferences();
-            deployServiceBindings();
+            createActivationGraph(withServiceBindings).activate(_activationParallelism);
         } catch (RuntimeException e1) {
             // Undo partial deployment...
-            _log.debug("Undeploying partially deployed artifacts of failed deployment for application " + _switchyardConfig.getName());
+            _log.debug("Undeploying partially deployed artifacts of failed deployment for application {}", _switchyardConfig.getName());
             try {
                 stop();
             } catch (RuntimeException e2) {
                 // Nothing we can do...
-                _log.debug("Failed to properly undeploy a partial/failed deployment for application " +  _switchyardConfig.getName(), e2);
+                _log.debug("Failed to properly undeploy a partial/failed deployment for application {}", _switchyardConfig.getName(), e2);
             }
             // Rethrow the exception...
             throw e1;
         }
+        if (_transformerLoading == TransformerLoading.PREWARM) {
+            prewarmTransformers();
+        }
     }
 
     /**
      * Stops the deployment.  All services are unregistered and the appropriate
-     * activators are triggered.
+     * activators are triggered.  Each group of services is unregistered first, and
+     * stopped once the exchanges in flight through them have completed, or the
+     * {@link #setDrainTimeout(long) drain timeout} has expired.
      */
     public void stop() {
-        _log.debug("Stopping deployment for application " + _switchyardConfig.getName());
+        _log.debug("Stopping deployment for application {}", _switchyardConfig.getName());
         undeployServiceBindings();
         undeployServices();
         undeployReferences();
@@ -157,8 +327,11 @@ public class Deployment extends AbstractDeployment {
      * Tear everything down.
      */
     public void destroy() {
-        _log.debug("Destroying deployment for application " + _switchyardConfig.getName());
+        _log.debug("Destroying deployment for application {}", _switchyardConfig.getName());
         
+        if (_prewarmThread != null) {
+            _prewarmThread.interrupt();
+        }
         destroyDomain();
         
         // Clean up our list of activations, just in case something's left
@@ -170,29 +343,88 @@ public class Deployment extends AbstractDeployment {
         unregisterTransformers();
     }
 
-    private void createActivators() {
-        createComponentActivator("bean", BEAN_ACTIVATOR_CLASS);
-        createGatewayActivator("soap", SOAP_ACTIVATOR_CLASS);
+    private List<ServiceReference> getRegisteredServices() {
+        List<ServiceReference> services = new ArrayList<ServiceReference>();
+        synchronized (_services) {
+            for (Activation activation : _services) {
+                services.add(activation.getService());
+            }
+        }
+        synchronized (_referenceBindings) {
+            for (Activation activation : _referenceBindings) {
+                services.add(activation.getService());
+            }
+        }
+        return services;
     }
 
-    private void createGatewayActivator(String type, String runtimeClass) {
-        try {
-            _gatewayActivators.put(
-                    type,
-                    (Activator)loadClass(runtimeClass).newInstance());
-        } catch (Exception ex) {
-            _log.debug("Failed to load Gateway Activator class '" + runtimeClass + "' for component type '" + type + "'.");
+    private List<Dispatcher> unregisterServices(List<ServiceReference> services) {
+        // the domain is always created by a Deployment (see AbstractDeployment)
+        return ((DomainImpl)getDomain()).unregisterServices(services);
+    }
+
+    private void drain(List<Dispatcher> dispatchers, long timeout) {
+        // one deadline for all of them, as they drain concurrently
+        long deadline = System.currentTimeMillis() + timeout;
+        for (Dispatcher dispatcher : dispatchers) {
+            long remaining = Math.max(0, deadline - System.currentTimeMillis());
+            List<String> abandoned = dispatcher.stop(remaining);
+            if (!abandoned.isEmpty()) {
+                _log.warn("Abandoned {} exchanges in flight for service {} after {} ms: {}",
+                        abandoned.size(), dispatcher.getService().getName(), timeout, abandoned);
+            }
         }
     }
-    
-    private void createComponentActivator(String type, String runtimeClass) {
-        try {
-            _componentActivators.put(
-                    type,
-                    (Activator)loadClass(runtimeClass).newInstance());
-        } catch (Exception ex) {
-            _log.debug("Failed to load Component Activator class '" + runtimeClass + "' for component type '" + type + "'.");
+
+    private void createActivators() {
+        CompositeModel composite = _switchyardConfig.getComposite();
+        if (composite == null) {
+            return;
+        }
+
+        // only the activators of the types used by the application
+        Set<String> implementationTypes = new LinkedHashSet<String>();
+        for (ComponentModel component : composite.getComponents()) {
+            implementationTypes.add(component.getImplementation().getType());
+        }
+        Set<String> bindingTypes = new LinkedHashSet<String>();
+        for (CompositeServiceModel service : composite.getServices()) {
+            for (BindingModel binding : service.getBindings()) {
+                bindingTypes.add(binding.getType());
+            }
         }
+        for (CompositeReferenceModel reference : composite.getReferences()) {
+            for (BindingModel binding : reference.getBindings()) {
+                bindingTypes.add(binding.getType());
+            }
+        }
+
+        ActivatorRegistry registry = ActivatorRegistry.forClassLoader(getDeploymentClassLoader());
+        ActivationGraph graph = new ActivationGraph();
+        for (String type : implementationTypes) {
+            addActivator(graph, "implementation", type, registry.getImplementationProvider(type), _componentActivators);
+        }
+        for (String type : bindingTypes) {
+            addActivator(graph, "binding", type, registry.getBindingProvider(type), _gatewayActivators);
+        }
+        graph.activate(_activationParallelism);
+    }
+
+    private static void addActivator(ActivationGraph graph, final String kind, final String type,
+            final ActivatorProvider provider, final Map<String, Activator> activators) {
+        if (provider == null) {
+            // reported if a component or binding of the type is deployed
+            return;
+        }
+        graph.add("activator for " + kind + " type " + type, new Runnable() {
+            public void run() {
+                try {
+                    activators.put(type, provider.createActivator());
+                } catch (RuntimeException e) {
+                    throw new RuntimeException("Failed to create the Activator for " + kind + " type '" + type + "'.", e);
+                }
+            }
+        });
     }
 
     private void registerTransformers() {
@@ -206,149 +438,336 @@ public class Deployment extends AbstractDeployment {
             return;
         }
 
+        SharedTransformers sharedTransformers = SharedTransformers.forRegistry(transformerRegistry);
+        ClassLoader loader = getDeploymentClassLoader();
         try {
+            // reuse the transformers already registered by other deployments of the domain...
+            List<TransformModel> unsharedModels = new ArrayList<TransformModel>();
             for (TransformModel transformModel : transforms.getTransforms()) {
-                Transformer<?, ?> transformer = TransformerFactory.newTransformer(transformModel);
-                Transformer<?, ?> registeredTransformer = transformerRegistry.getTransformer(transformer.getFrom(), transformer.getTo());
-
-                // TODO: Need to review this... need a formalised way of sharing Transformer instance between apps in a Domain.
-                if (registeredTransformer != null) {
-                    throw new RuntimeException("Failed to register Transformer '" + toDescription(transformer)
-                            + "'.  A Transformer for these types is already registered: '"
-                            + toDescription(registeredTransformer) + "'.");
+                Transformer<?, ?> sharedTransformer = sharedTransformers.acquire(transformModel, loader);
+                if (sharedTransformer != null) {
+                    _log.debug("Sharing transformer => \nFrom: {}\nTo: {}", transformModel.getFrom(), transformModel.getTo());
+                    _transformers.add(sharedTransformer);
+                } else {
+                    unsharedModels.add(transformModel);
                 }
+            }
+
+            // ...then construct all of the others first (the slow part, e.g. for Smooks), and only
+            // then register them, so nothing is registered if any of them can't be constructed
+            List<Transformer<?, ?>> transformers;
+            if (_transformerLoading == TransformerLoading.EAGER) {
+                transformers = newTransformers(unsharedModels);
+            } else {
+                transformers = newLazyTransformers(unsharedModels);
+            }
 
-                _log.debug("Adding transformer => \n"
-                       + "From: " + transformer.getFrom()
-                       + "To:" + transformer.getTo());
-                transformerRegistry.addTransformer(transformer);
-                _transformers.add(transformer);
+            for (int i = 0; i < transformers.size(); i++) {
+                Transformer<?, ?> transformer = transformers.get(i);
+                _log.debug("Adding transformer => \nFrom: {}\nTo: {}", transformer.getFrom(), transformer.getTo());
+                // when replacing a deployment, its transformers give way to (possibly new code of) ours
+                _transformers.add(sharedTransformers.add(transformerRegistry, unsharedModels.get(i), transformer, loader, _replacing));
             }
         } catch (RuntimeException e) {
-            // If there was an exception for any reason... remove all Transformer instance that have
+            // If there was an exception for any reason... release all Transformer instances that have
             // already been registered with the domain...
             unregisterTransformers();
             throw e;
         }
     }
 
+    private List<Transformer<?, ?>> newTransformers(List<TransformModel> transformModels) {
+        final Transformer<?, ?>[] transformers = new Transformer<?, ?>[transformModels.size()];
+        ActivationGraph graph = new ActivationGraph();
+        for (int i = 0; i < transformers.length; i++) {
+            final int index = i;
+            final TransformModel transformModel = transformModels.get(i);
+            graph.add("transformer " + transformModel.getFrom() + " -> " + transformModel.getTo(), new Runnable() {
+                public void run() {
+                    transformers[index] = TransformerFactory.newTransformer(transformModel);
+                }
+            });
+        }
+        // activate() waits for the steps under a lock, so their writes to the array are visible here
+        graph.activate(_activationParallelism);
+        return Arrays.asList(transformers);
+    }
+
+    private List<Transformer<?, ?>> newLazyTransformers(List<TransformModel> transformModels) {
+        // construct with the classloader of the deployer, not of the thread first using the transformer
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        List<Transformer<?, ?>> transformers = new ArrayList<Transformer<?, ?>>(transformModels.size());
+        for (final TransformModel transformModel : transformModels) {
+            transformers.add(new LazyTransformer<Object, Object>(transformModel.getFrom(), transformModel.getTo(),
+                    new Callable<Transformer<Object, Object>>() {
+                        @SuppressWarnings("unchecked")
+                        public Transformer<Object, Object> call() {
+                            _log.debug("Constructing lazy transformer => \nFrom: {}\nTo: {}", transformModel.getFrom(), transformModel.getTo());
+                            ClassLoader previous = Classes.setTCCL(loader);
+                            try {
+                                return (Transformer<Object, Object>)TransformerFactory.newTransformer(transformModel);
+                            } finally {
+                                Classes.setTCCL(previous);
+                            }
+                        }
+                    }));
+        }
+        return transformers;
+    }
+
+    private void prewarmTransformers() {
+        final List<LazyTransformer<?, ?>> pending = new ArrayList<LazyTransformer<?, ?>>();
+        for (Transformer<?, ?> transformer : _transformers) {
+            if (transformer instanceof LazyTransformer && !((LazyTransformer<?, ?>)transformer).isConstructed()) {
+                pending.add((LazyTransformer<?, ?>)transformer);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        _prewarmThread = new Thread("SwitchYard-transformer-prewarm-" + _switchyardConfig.getName()) {
+            public void run() {
+                for (LazyTransformer<?, ?> transformer : pending) {
+                    if (isInterrupted()) {
+                        return;
+                    }
+                    try {
+                        transformer.getTransformer();
+                    } catch (RuntimeException e) {
+                        // it will be retried, and fail for real, when it is used
+                        _log.warn("Failed to prewarm transformer {} -> {}: {}", transformer.getFrom(), transformer.getTo(), e);
+                    }
+                }
+            }
+        };
+        _prewarmThread.setDaemon(true);
+        _prewarmThread.setPriority(Thread.MIN_PRIORITY);
+        _prewarmThread.start();
+    }
+
     private void unregisterTransformers() {
-        for (Transformer transformer : _transformers) {
-            getDomain().getTransformerRegistry().removeTransformer(transformer);
+        TransformerRegistry transformerRegistry = getDomain().getTransformerRegistry();
+        SharedTransformers sharedTransformers = SharedTransformers.forRegistry(transformerRegistry);
+        for (Transformer<?, ?> transformer : _transformers) {
+            sharedTransformers.release(transformerRegistry, transformer);
         }
+        _transformers.clear();
     }
 
-    private void deployReferenceBindings() {
-        _log.debug("Deploying reference bindings ...");
-        // activate bindings for each service
-        for (CompositeReferenceModel reference : _switchyardConfig.getComposite().getReferences()) {
-            for (BindingModel binding : reference.getBindings()) {
-                _log.debug("Deploying binding " + binding.getType() + " for reference " + reference.getName());
-                Activator activator = _gatewayActivators.get(binding.getType());
-                ExchangeHandler handler = activator.init(reference.getQName(), reference);
-                ServiceReference serviceRef = getDomain().registerService(reference.getQName(), handler);
-                Activation activation = new Activation(serviceRef, activator);
-                activation.start();
-                _referenceBindings.add(activation);
+    /**
+     * Plan the activation of the application.  Steps are added in the order of the
+     * sequential startup lifecycle (reference bindings, services, references and then
+     * service bindings), and each waits only for what it needs:
+     * <ul>
+     * <li>a component reference waits for the services and reference bindings providing
+     * the referenced service, and for the services of its own component</li>
+     * <li>a service binding exposes the application, so waits for all services and
+     * references to be wired</li>
+     * </ul>
+     */
+    private ActivationGraph createActivationGraph(boolean withServiceBindings) {
+        ActivationGraph graph = new ActivationGraph();
+        Map<QName, List<ActivationGraph.Step>> providers = new HashMap<QName, List<ActivationGraph.Step>>();
+        List<ActivationGraph.Step> wiring = new LinkedList<ActivationGraph.Step>();
+
+        for (final CompositeReferenceModel reference : _switchyardConfig.getComposite().getReferences()) {
+            for (final BindingModel binding : reference.getBindings()) {
+                ActivationGraph.Step step = graph.add("binding " + binding.getType() + " for reference " + reference.getName(), new Runnable() {
+                    public void run() {
+                        deployReferenceBinding(reference, binding);
+                    }
+                });
+                addProvider(providers, reference.getQName(), step);
             }
         }
+
+        List<ComponentModel> components = _switchyardConfig.getComposite().getComponents();
+        List<Activator> componentActivators = new ArrayList<Activator>(components.size());
+        List<List<ActivationGraph.Step>> componentServices = new ArrayList<List<ActivationGraph.Step>>(components.size());
+        for (final ComponentModel component : components) {
+            final Activator activator = getActivator(component);
+            List<ActivationGraph.Step> steps = new LinkedList<ActivationGraph.Step>();
+            for (final ComponentServiceModel service : component.getServices()) {
+                ActivationGraph.Step step = graph.add("service " + service.getName(), new Runnable() {
+                    public void run() {
+                        deployService(component, activator, service);
+                    }
+                });
+                addProvider(providers, service.getQName(), step);
+                steps.add(step);
+                wiring.add(step);
+            }
+            componentActivators.add(activator);
+            componentServices.add(steps);
+        }
+
+        for (int i = 0; i < components.size(); i++) {
+            final ComponentModel component = components.get(i);
+            final Activator activator = componentActivators.get(i);
+            for (final ComponentReferenceModel reference : component.getReferences()) {
+                ActivationGraph.Step step = graph.add("reference " + reference.getName(), new Runnable() {
+                    public void run() {
+                        deployReference(component, activator, reference);
+                    }
+                });
+                dependsOn(step, providers.get(reference.getQName()));
+                dependsOn(step, componentServices.get(i));
+                wiring.add(step);
+            }
+        }
+
+        if (withServiceBindings) {
+            addServiceBindings(graph, providers, wiring);
+        }
+
+        return graph;
     }
 
-    private void deployServices() {
-        _log.debug("Deploying services ...");
-        // deploy services to each implementation found in the application
-        for (ComponentModel component : _switchyardConfig.getComposite().getComponents()) {
-            Activator activator = getActivator(component);
-            // register a service for each one declared in the component
-            for (ComponentServiceModel service : component.getServices()) {
-                _log.debug("Registering service " + service.getName()  
-                       + " for component " + component.getImplementation().getType());
-                ExchangeHandler handler = activator.init(service.getQName(), service);
-                ServiceReference serviceRef = null;
-                if (service.getInterface().getType().equals(JAVA_INTERFACE)) {
-                    ServiceInterface si = JavaService.fromClass(
-                            loadClass(service.getInterface().getInterface()));
-                    serviceRef = getDomain().registerService(service.getQName(), handler, si);
-                } else {
-                    serviceRef = getDomain().registerService(service.getQName(), handler);
+    private void addServiceBindings(ActivationGraph graph,
+            Map<QName, List<ActivationGraph.Step>> providers, List<ActivationGraph.Step> wiring) {
+        for (final CompositeServiceModel service : _switchyardConfig.getComposite().getServices()) {
+            for (final BindingModel binding : service.getBindings()) {
+                ActivationGraph.Step step = graph.add("binding " + binding.getType() + " for service " + service.getName(), new Runnable() {
+                    public void run() {
+                        deployServiceBinding(service, binding);
+                    }
+                });
+                if (providers != null) {
+                    dependsOn(step, providers.get(service.getQName()));
                 }
-                Activation activation = new Activation(serviceRef, activator);
-                activation.start();
-                _services.add(activation);
+                dependsOn(step, wiring);
             }
         }
-        
     }
-    
-    private void deployReferences() {
-        _log.debug("Deploying references ...");
-        for (ComponentModel component : _switchyardConfig.getComposite().getComponents()) {
-            Activator activator = getActivator(component);
-            // register a service for each one declared in the component
-            for (ComponentReferenceModel reference : component.getReferences()) {
-                _log.debug("Registering reference " + reference.getName()  
-                       + " for component " + component.getImplementation().getType());
-                ServiceReference service = getDomain().getService(reference.getQName());
-                activator.init(reference.getQName(), reference);
-                Activation activation = new Activation(service, activator);
-                activation.start();
-                _references.add(activation);
+
+    private static void addProvider(Map<QName, List<ActivationGraph.Step>> providers, QName name, ActivationGraph.Step step) {
+        List<ActivationGraph.Step> steps = providers.get(name);
+        if (steps == null) {
+            steps = new LinkedList<ActivationGraph.Step>();
+            providers.put(name, steps);
+        }
+        steps.add(step);
+    }
+
+    private static void dependsOn(ActivationGraph.Step step, List<ActivationGraph.Step> dependencies) {
+        if (dependencies != null) {
+            for (ActivationGraph.Step dependency : dependencies) {
+                step.dependsOn(dependency);
             }
         }
     }
 
-    private void deployServiceBindings() {
-        _log.debug("Deploying service bindings ...");
-        // activate bindings for each service
-        for (CompositeServiceModel service : _switchyardConfig.getComposite().getServices()) {
-            for (BindingModel binding : service.getBindings()) {
-                _log.debug("Deploying binding " + binding.getType() + " for service " + service.getName());
-                Activator activator = _gatewayActivators.get(binding.getType());
-                ServiceReference serviceRef = getDomain().getService(service.getQName());
-                activator.init(serviceRef.getName(), service);
-                Activation activation = new Activation(serviceRef, activator);
-                activation.start();
-                _serviceBindings.add(activation);
+    private void deployReferenceBinding(CompositeReferenceModel reference, BindingModel binding) {
+        _log.debug("Deploying binding {} for reference {}", binding.getType(), reference.getName());
+        Activator activator = getGatewayActivator(binding);
+        ExchangeHandler handler = activator.init(reference.getQName(), reference);
+        ServiceReference serviceRef = getDomain().registerService(reference.getQName(), handler);
+        Activation activation = new Activation(serviceRef, activator);
+        activation.start();
+        _referenceBindings.add(activation);
+    }
+
+    private void deployService(ComponentModel component, Activator activator, ComponentServiceModel service) {
+        _log.debug("Registering service {} for component {}", service.getName(), component.getImplementation().getType());
+        ExchangeHandler handler = activator.init(service.getQName(), service);
+        ServiceReference serviceRef = null;
+        if (service.getInterface().getType().equals(JAVA_INTERFACE)) {
+            ServiceInterface si = JavaService.fromClass(
+                    loadClass(service.getInterface().getInterface()));
+            serviceRef = getDomain().registerService(service.getQName(), handler, si);
+        } else {
+            serviceRef = getDomain().registerService(service.getQName(), handler);
+        }
+        Activation activation = new Activation(serviceRef, activator);
+        activation.start();
+        _services.add(activation);
+    }
+
+    private void deployReference(ComponentModel component, Activator activator, ComponentReferenceModel reference) {
+        _log.debug("Registering reference {} for component {}", reference.getName(), component.getImplementation().getType());
+        ServiceReference service = getProvidedService(reference.getQName());
+        activator.init(reference.getQName(), reference);
+        Activation activation = new Activation(service, activator);
+        activation.start();
+        _references.add(activation);
+    }
+
+    /**
+     * The registration of a service by this deployment, if it provides the service,
+     * otherwise the service the domain routes to.  While replacing a deployment, the
+     * domain still routes to the previous version's registration.
+     */
+    private ServiceReference getProvidedService(QName serviceName) {
+        ServiceReference service = findService(_services, serviceName);
+        if (service == null) {
+            service = findService(_referenceBindings, serviceName);
+        }
+        return service != null ? service : getDomain().getService(serviceName);
+    }
+
+    private static ServiceReference findService(List<Activation> activations, QName serviceName) {
+        synchronized (activations) {
+            for (Activation activation : activations) {
+                if (activation.getService().getName().equals(serviceName)) {
+                    return activation.getService();
+                }
             }
         }
+        return null;
+    }
+
+    private void deployServiceBinding(CompositeServiceModel service, BindingModel binding) {
+        _log.debug("Deploying binding {} for service {}", binding.getType(), service.getName());
+        Activator activator = getGatewayActivator(binding);
+        ServiceReference serviceRef = getProvidedService(service.getQName());
+        activator.init(serviceRef.getName(), service);
+        Activation activation = new Activation(serviceRef, activator);
+        activation.start();
+        _serviceBindings.add(activation);
     }
 
     private void undeployServiceBindings() {
-        _log.debug("Undeploying reference bindings ...");
-       for (Activation activation : _serviceBindings) {
-           activation.stop();
-           activation.destroy();
-       }
+        _log.debug("Undeploying service bindings ...");
+        undeploy(_serviceBindings, false);
     }
 
     private void undeployServices() {
         _log.debug("Undeploying services ...");
-        for (Activation activation : _services) {
-            activation.stop();
-            activation.destroy();
-        }
+        undeploy(_services, true);
     }
 
     private void undeployReferences() {
         _log.debug("Undeploying references ...");
-        for (Activation activation : _references) {
-            activation.stop();
-            activation.destroy();
-        }
+        undeploy(_references, false);
     }
 
     private void undeployReferenceBindings() {
         _log.debug("Undeploying reference bindings ...");
-        for (Activation activation : _referenceBindings) {
+        undeploy(_referenceBindings, true);
+    }
+
+    private void undeploy(List<Activation> activations, boolean registered) {
+        List<Activation> undeployed;
+        synchronized (activations) {
+            // cleared, so undeploying again (e.g. stop() after replace()) does nothing
+            undeployed = new ArrayList<Activation>(activations);
+            activations.clear();
+        }
+        if (registered) {
+            // stop new exchanges reaching the services, and let those in flight complete,
+            // before they're stopped
+            List<ServiceReference> services = new ArrayList<ServiceReference>();
+            for (Activation activation : undeployed) {
+                services.add(activation.getService());
+            }
+            drain(unregisterServices(services), _drainTimeout);
+        }
+        for (Activation activation : undeployed) {
             activation.stop();
             activation.destroy();
         }
     }
 
-    private void destroyDomain() {
-
-    }
-
     private Class<?> loadClass(String className) {
         try {
             return Class.forName(className);
@@ -357,8 +776,22 @@ public class Deployment extends AbstractDeployment {
         }
     }
 
-    private String toDescription(Transformer<?, ?> transformer) {
-        return transformer.getClass().getName() + "(" + transformer.getFrom() + ", " + transformer.getTo() + ")";
+    // the class loader of the application: the context class loader of the deployer
+    private static ClassLoader getDeploymentClassLoader() {
+        ClassLoader loader = Classes.getTCCL();
+        return loader != null ? loader : Deployment.class.getClassLoader();
+    }
+
+    private static TransformerLoading getDefaultTransformerLoading() {
+        String transformerLoading = System.getProperty(TRANSFORMER_LOADING_PROPERTY);
+        if (transformerLoading != null) {
+            try {
+                return TransformerLoading.valueOf(transformerLoading.trim().toUpperCase());
+            } catch (IllegalArgumentException iae) {
+                _log.warn("Ignoring unknown {} '{}'.", TRANSFORMER_LOADING_PROPERTY, transformerLoading);
+            }
+        }
+        return TransformerLoading.EAGER;
     }
 
     private Activator getActivator(ComponentModel component) {
@@ -371,6 +804,17 @@ public class Deployment extends AbstractDeployment {
 
         return activator;
     }
+
+    private Activator getGatewayActivator(BindingModel binding) {
+        String type = binding.getType();
+        Activator activator = _gatewayActivators.get(type);
+
+        if (activator == null) {
+            throw new RuntimeException("Unknown configuration binding type '" + type + "'.  No Activator implementation registered for this type.");
+        }
+
+        return activator;
+    }
 }
 
 class Activation {
@@ -0,0 +1,266 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.deploy.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+
+import org.switchyard.config.Configuration;
+import org.switchyard.config.model.transform.TransformModel;
+import org.switchyard.transform.Transformer;
+import org.switchyard.transform.TransformerRegistry;
+
+/**
+ * Transformers shared by the deployments of a domain.
+ * <p/>
+ * A deployment whose transform configuration is identical to that of a transformer
+ * already registered in the domain, and whose class loader is the same, reuses the
+ * registered instance rather than constructing its own.  Deployments with different
+ * class loaders never share, as the transformer classes of each may differ.  Shared
+ * transformers are reference counted, and only removed from the
+ * {@link TransformerRegistry} when the last deployment using them releases them.  A transformer already registered for the same types with a different
+ * configuration, or not registered through this class, is a conflict.
+ */
+final class SharedTransformers {
+
+    private static Map<TransformerRegistry, SharedTransformers> _registries =
+        new WeakHashMap<TransformerRegistry, SharedTransformers>();
+
+    // the registry isn't referenced from here, as it's the weak key of _registries
+    private final Map<String, Share> _definitions = new HashMap<String, Share>();
+    private final Map<Transformer<?, ?>, Share> _shares = new IdentityHashMap<Transformer<?, ?>, Share>();
+
+    private SharedTransformers() {
+    }
+
+    /**
+     * Get the shared transformers of a domain.
+     * @param registry the transformer registry of the domain
+     * @return shared transformers
+     */
+    static synchronized SharedTransformers forRegistry(TransformerRegistry registry) {
+        SharedTransformers sharedTransformers = _registries.get(registry);
+        if (sharedTransformers == null) {
+            sharedTransformers = new SharedTransformers();
+            _registries.put(registry, sharedTransformers);
+        }
+        return sharedTransformers;
+    }
+
+    /**
+     * Acquire the transformer registered by another deployment for an identical
+     * transform configuration and the same class loader.
+     * @param transformModel transform configuration
+     * @param loader class loader of the deployment
+     * @return the shared transformer, or null if there is none
+     */
+    synchronized Transformer<?, ?> acquire(TransformModel transformModel, ClassLoader loader) {
+        Share share = _definitions.get(definitionOf(transformModel));
+        if (share == null || share.getLoader() != loader) {
+            return null;
+        }
+        share.acquire();
+        return share.getTransformer();
+    }
+
+    /**
+     * Register a newly constructed transformer, and acquire it.  If another deployment
+     * registered a transformer for an identical configuration since {@link #acquire}
+     * was called, that one is acquired instead.
+     * <p/>
+     * A transformer registered for an identical configuration by another class loader
+     * is a conflict, unless it may be superseded (the deployment replaces the one which
+     * registered it): the new transformer then takes its place in the registry, and the
+     * superseded one is no longer shared, nor removed from the registry when released.
+     * @param registry the transformer registry of the domain
+     * @param transformModel transform configuration
+     * @param transformer transformer constructed from the configuration
+     * @param loader class loader of the deployment
+     * @param supersede whether a transformer of another class loader may be superseded
+     * @return the shared transformer
+     * @throws RuntimeException if a different transformer is registered for its types
+     */
+    synchronized Transformer<?, ?> add(TransformerRegistry registry, TransformModel transformModel,
+            Transformer<?, ?> transformer, ClassLoader loader, boolean supersede) {
+        String definition = definitionOf(transformModel);
+        Transformer<?, ?> registered = registry.getTransformer(transformer.getFrom(), transformer.getTo());
+        Share superseded = null;
+        if (registered != null) {
+            Share share = _shares.get(registered);
+            if (share != null && share.getDefinition().equals(definition)) {
+                if (share.getLoader() == loader) {
+                    share.acquire();
+                    return registered;
+                }
+                if (supersede) {
+                    _definitions.remove(definition);
+                    share.supersede();
+                    superseded = share;
+                    registered = null;
+                }
+            }
+            if (registered != null) {
+                throw new RuntimeException("Failed to register Transformer '" + toDescription(transformer)
+                        + "'.  A Transformer for these types is already registered: '"
+                        + toDescription(registered) + "'.");
+            }
+        }
+        // replaces a superseded transformer in one step
+        registry.addTransformer(transformer);
+        Share share = new Share(definition, loader, transformer);
+        share.setSuperseded(superseded);
+        _definitions.put(definition, share);
+        _shares.put(transformer, share);
+        return transformer;
+    }
+
+    /**
+     * Release an acquired transformer, removing it from the registry if it is no longer
+     * used by any deployment.
+     * @param registry the transformer registry of the domain
+     * @param transformer transformer
+     */
+    synchronized void release(TransformerRegistry registry, Transformer<?, ?> transformer) {
+        Share share = _shares.get(transformer);
+        if (share != null && share.release() == 0) {
+            _shares.remove(transformer);
+            Share superseded = share.getSuperseded();
+            if (share.isSuperseded()) {
+                return;
+            } else if (superseded != null && superseded.isInUse()) {
+                // e.g. the superseding deployment failed, so the superseded one takes its place back
+                superseded.restore();
+                _definitions.put(superseded.getDefinition(), superseded);
+                registry.addTransformer(superseded.getTransformer());
+            } else {
+                _definitions.remove(share.getDefinition());
+                registry.removeTransformer(transformer);
+            }
+        }
+    }
+
+    private static String toDescription(Transformer<?, ?> transformer) {
+        return transformer.getClass().getName() + "(" + transformer.getFrom() + ", " + transformer.getTo() + ")";
+    }
+
+    // the definition of a transform configuration, independent of namespace prefixes and attribute order
+    private static String definitionOf(TransformModel transformModel) {
+        StringBuilder definition = new StringBuilder();
+        appendDefinition(transformModel.getModelConfiguration(), definition);
+        return definition.toString();
+    }
+
+    private static void appendDefinition(Configuration config, StringBuilder definition) {
+        definition.append('<').append(config.getQName());
+        List<QName> attributes = new ArrayList<QName>();
+        for (QName attribute : config.getAttributeQNames()) {
+            if (!XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+                attributes.add(attribute);
+            }
+        }
+        Collections.sort(attributes, new Comparator<QName>() {
+            public int compare(QName a, QName b) {
+                return a.toString().compareTo(b.toString());
+            }
+        });
+        for (QName attribute : attributes) {
+            definition.append(' ').append(attribute).append("=\"").append(config.getAttribute(attribute)).append('"');
+        }
+        definition.append('>');
+        String value = config.getValue();
+        if (value != null) {
+            definition.append(value.trim());
+        }
+        for (Configuration child : config.getChildren()) {
+            appendDefinition(child, definition);
+        }
+        definition.append("</>");
+    }
+
+    private static final class Share {
+        private final String _definition;
+        // pinned while the transformer is in use, as it is by the deployments sharing it anyway
+        private final ClassLoader _loader;
+        private final Transformer<?, ?> _transformer;
+        private int _references = 1;
+        private boolean _superseded;
+        // the share this one took the place of, if any
+        private Share _supersedes;
+
+        Share(String definition, ClassLoader loader, Transformer<?, ?> transformer) {
+            _definition = definition;
+            _loader = loader;
+            _transformer = transformer;
+        }
+
+        String getDefinition() {
+            return _definition;
+        }
+
+        ClassLoader getLoader() {
+            return _loader;
+        }
+
+        boolean isSuperseded() {
+            return _superseded;
+        }
+
+        void supersede() {
+            _superseded = true;
+        }
+
+        void restore() {
+            _superseded = false;
+        }
+
+        Share getSuperseded() {
+            return _supersedes;
+        }
+
+        void setSuperseded(Share superseded) {
+            _supersedes = superseded;
+        }
+
+        boolean isInUse() {
+            return _references > 0;
+        }
+
+        Transformer<?, ?> getTransformer() {
+            return _transformer;
+        }
+
+        void acquire() {
+            _references++;
+        }
+
+        int release() {
+            return --_references;
+        }
+    }
+}
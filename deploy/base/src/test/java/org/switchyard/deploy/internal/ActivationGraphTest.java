@@ -0,0 +1,134 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.deploy.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ActivationGraphTest {
+
+    @Test
+    public void testInOrder() {
+        List<String> activated = new ArrayList<String>();
+        ActivationGraph graph = new ActivationGraph();
+        graph.add("a", record(activated, "a"));
+        graph.add("b", record(activated, "b"));
+        ActivationGraph.Step c = graph.add("c", record(activated, "c"));
+        graph.add("d", record(activated, "d")).dependsOn(c);
+        graph.activate(1);
+        Assert.assertEquals("[a, b, c, d]", activated.toString());
+    }
+
+    @Test
+    public void testDependencies() {
+        List<String> activated = Collections.synchronizedList(new ArrayList<String>());
+        ActivationGraph graph = new ActivationGraph();
+        ActivationGraph.Step service1 = graph.add("service1", record(activated, "service1"));
+        ActivationGraph.Step service2 = graph.add("service2", record(activated, "service2"));
+        ActivationGraph.Step reference = graph.add("reference", record(activated, "reference")).dependsOn(service1);
+        graph.add("binding", record(activated, "binding")).dependsOn(service1).dependsOn(service2).dependsOn(reference);
+        graph.activate(4);
+
+        Assert.assertEquals(4, activated.size());
+        Assert.assertTrue(activated.indexOf("reference") > activated.indexOf("service1"));
+        Assert.assertEquals("binding", activated.get(3));
+    }
+
+    @Test
+    public void testIndependentStepsRunConcurrently() throws Exception {
+        final CountDownLatch running = new CountDownLatch(2);
+        Runnable awaitOther = new Runnable() {
+            public void run() {
+                running.countDown();
+                try {
+                    if (!running.await(10, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("Steps not run concurrently.");
+                    }
+                } catch (InterruptedException ie) {
+                    throw new IllegalStateException(ie);
+                }
+            }
+        };
+        ActivationGraph graph = new ActivationGraph();
+        graph.add("a", awaitOther);
+        graph.add("b", awaitOther);
+        graph.activate(2);
+    }
+
+    @Test
+    public void testFailure() {
+        List<String> activated = Collections.synchronizedList(new ArrayList<String>());
+        ActivationGraph graph = new ActivationGraph();
+        ActivationGraph.Step failing = graph.add("failing", new Runnable() {
+            public void run() {
+                throw new IllegalStateException("failed");
+            }
+        });
+        graph.add("dependent", record(activated, "dependent")).dependsOn(failing);
+        try {
+            graph.activate(2);
+            Assert.fail("Expected activation to fail.");
+        } catch (IllegalStateException ise) {
+            Assert.assertEquals("failed", ise.getMessage());
+        }
+        Assert.assertFalse(activated.contains("dependent"));
+    }
+
+    @Test
+    public void testContextClassLoader() {
+        final List<ClassLoader> loaders = Collections.synchronizedList(new ArrayList<ClassLoader>());
+        ClassLoader loader = new ClassLoader(getClass().getClassLoader()) { };
+        ClassLoader previous = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(loader);
+        try {
+            ActivationGraph graph = new ActivationGraph();
+            graph.add("a", new Runnable() {
+                public void run() {
+                    loaders.add(Thread.currentThread().getContextClassLoader());
+                }
+            });
+            graph.activate(2);
+        } finally {
+            Thread.currentThread().setContextClassLoader(previous);
+        }
+        Assert.assertSame(loader, loaders.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testForwardDependency() {
+        ActivationGraph graph = new ActivationGraph();
+        ActivationGraph.Step a = graph.add("a", record(new ArrayList<String>(), "a"));
+        a.dependsOn(graph.add("b", record(new ArrayList<String>(), "b")));
+    }
+
+    private static Runnable record(final List<String> activated, final String name) {
+        return new Runnable() {
+            public void run() {
+                activated.add(name);
+            }
+        };
+    }
+}
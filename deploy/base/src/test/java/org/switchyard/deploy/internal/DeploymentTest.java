@@ -21,13 +21,28 @@ package org.switchyard.deploy.internal;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.switchyard.Exchange;
 import org.switchyard.ServiceDomain;
+import org.switchyard.ServiceReference;
+import org.switchyard.deploy.ActivatorProvider;
+import org.switchyard.deploy.internal.activators.MockActivatorProvider;
+import org.switchyard.deploy.internal.activators.MockActivatorProvider.MockHandler;
 import org.switchyard.deploy.internal.transformers.ABTransformer;
 import org.switchyard.deploy.internal.transformers.CDTransformer;
+import org.switchyard.internal.transform.LazyTransformer;
+import org.switchyard.metadata.ExchangeContract;
 import org.switchyard.transform.Transformer;
 
 import javax.xml.namespace.QName;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author <a href="mailto:tom.fennelly@gmail.com">tom.fennelly@gmail.com</a>
@@ -64,4 +79,378 @@ public class DeploymentTest {
 
         // Check that the transformers are undeployed...
     }
+
+    @Test
+    public void test_parallel_transform_registration() {
+        InputStream swConfigStream = getClass().getResourceAsStream("/switchyard-config-transform-01.xml");
+        Deployment deployment = new Deployment(swConfigStream);
+        deployment.setActivationParallelism(4);
+
+        deployment.init();
+
+        ServiceDomain domain = deployment.getDomain();
+        Assert.assertTrue(domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b")) instanceof ABTransformer);
+        Assert.assertTrue(domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "c"), new QName("http://www.switchyard.org", "d")) instanceof CDTransformer);
+
+        deployment.destroy();
+    }
+
+    @Test
+    public void test_parallel_activation() {
+        Deployment deployment = new Deployment(getClass().getResourceAsStream("/switchyard-config-activator-01.xml"));
+        deployment.setActivationParallelism(4);
+        deployment.init();
+        deployment.start();
+        Assert.assertNotNull(deployment.getDomain().getService(new QName("MockService")));
+        Assert.assertEquals(1, MockActivatorProvider.ACTIVATOR.getStarted());
+
+        deployment.stop();
+        deployment.destroy();
+        Assert.assertEquals(0, MockActivatorProvider.ACTIVATOR.getStarted());
+    }
+
+    @Test
+    public void test_interrupted_activation() {
+        Deployment deployment = new Deployment(getClass().getResourceAsStream("/switchyard-config-activator-01.xml"));
+        deployment.setActivationParallelism(4);
+        deployment.init();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuTime = threads.getCurrentThreadCpuTime();
+        MockActivatorProvider.ACTIVATOR.setStartDelay(500);
+        Thread.currentThread().interrupt();
+        try {
+            deployment.start();
+            Assert.fail("Expected the interrupt to fail the deployment.");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("Interrupted"));
+        } finally {
+            MockActivatorProvider.ACTIVATOR.setStartDelay(0);
+            // the interrupt is kept...
+            Assert.assertTrue(Thread.interrupted());
+        }
+
+        // ... the deployer waited for the running step without spinning...
+        if (cpuTime != -1) {
+            Assert.assertTrue(threads.getCurrentThreadCpuTime() - cpuTime < TimeUnit.MILLISECONDS.toNanos(250));
+        }
+
+        // ... and then rolled it back
+        Assert.assertEquals(0, MockActivatorProvider.ACTIVATOR.getStarted());
+        deployment.destroy();
+    }
+
+    @Test
+    public void test_failed_transform_registration() {
+        InputStream swConfigStream = getClass().getResourceAsStream("/switchyard-config-transform-02.xml");
+        Deployment deployment = new Deployment(swConfigStream);
+        deployment.setActivationParallelism(4);
+
+        try {
+            deployment.init();
+            Assert.fail("Expected init to fail on the unknown Transformer class.");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("UnknownTransformer"));
+        }
+
+        // None of the transformers should be registered...
+        ServiceDomain domain = deployment.getDomain();
+        Assert.assertNull(domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b")));
+        Assert.assertNull(domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "c"), new QName("http://www.switchyard.org", "d")));
+    }
+
+    @Test
+    public void test_lazy_transform_registration() {
+        InputStream swConfigStream = getClass().getResourceAsStream("/switchyard-config-transform-03.xml");
+        Deployment deployment = new Deployment(swConfigStream);
+        deployment.setTransformerLoading(Deployment.TransformerLoading.LAZY);
+
+        // The unknown Transformer class isn't noticed until it's used...
+        deployment.init();
+
+        ServiceDomain domain = deployment.getDomain();
+        LazyTransformer<?,?> abTransformer = (LazyTransformer<?,?>)domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b"));
+        Assert.assertFalse(abTransformer.isConstructed());
+        Assert.assertTrue(abTransformer.getTransformer() instanceof ABTransformer);
+        Assert.assertTrue(abTransformer.isConstructed());
+
+        try {
+            ((LazyTransformer<?,?>)domain.getTransformerRegistry().getTransformer(new QName("E"), new QName("F"))).getTransformer();
+            Assert.fail("Expected the unknown Transformer class to fail on first use.");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("UnknownTransformer"));
+        }
+
+        deployment.destroy();
+        Assert.assertNull(domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b")));
+    }
+
+    @Test
+    public void test_prewarm_transformers() throws InterruptedException {
+        InputStream swConfigStream = getClass().getResourceAsStream("/switchyard-config-transform-03.xml");
+        Deployment deployment = new Deployment(swConfigStream);
+        deployment.setTransformerLoading(Deployment.TransformerLoading.PREWARM);
+
+        deployment.init();
+        LazyTransformer<?,?> cdTransformer = (LazyTransformer<?,?>)deployment.getDomain().getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "c"), new QName("http://www.switchyard.org", "d"));
+        Assert.assertFalse(cdTransformer.isConstructed());
+
+        deployment.start();
+        for (int i = 0; i < 100 && !cdTransformer.isConstructed(); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(cdTransformer.isConstructed());
+
+        deployment.stop();
+        deployment.destroy();
+    }
+
+    @Test
+    public void test_shared_transform_registration() {
+        Deployment deployment1 = new Deployment(getClass().getResourceAsStream("/switchyard-config-transform-01.xml"));
+        deployment1.init();
+        Deployment deployment2 = new Deployment(getClass().getResourceAsStream("/switchyard-config-transform-01.xml"));
+        deployment2.setParentDeployment(deployment1);
+        deployment2.init();
+
+        // Both deployments use the same instance...
+        ServiceDomain domain = deployment1.getDomain();
+        Transformer<?,?> abTransformer = domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b"));
+        Assert.assertTrue(abTransformer instanceof ABTransformer);
+
+        // ... which is only unregistered when the last of them is undeployed...
+        deployment1.destroy();
+        Assert.assertSame(abTransformer, domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b")));
+        deployment2.destroy();
+        Assert.assertNull(domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b")));
+    }
+
+    @Test
+    public void test_conflicting_transform_registration() {
+        Deployment deployment1 = new Deployment(getClass().getResourceAsStream("/switchyard-config-transform-01.xml"));
+        deployment1.init();
+        Deployment deployment2 = new Deployment(getClass().getResourceAsStream("/switchyard-config-transform-04.xml"));
+        deployment2.setParentDeployment(deployment1);
+
+        // A -> B is identical (bar prefixes and attribute order), but C -> D's Transformer is
+        // registered for the same types as A -> B's...
+        try {
+            deployment2.init();
+            Assert.fail("Expected the conflicting C -> D Transformer to fail the deployment.");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("already registered"));
+        }
+
+        // ...so the failed deployment releases its share of A -> B
+        ServiceDomain domain = deployment1.getDomain();
+        Assert.assertNotNull(domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b")));
+        deployment1.destroy();
+        Assert.assertNull(domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b")));
+        Assert.assertNull(domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "c"), new QName("http://www.switchyard.org", "d")));
+    }
+
+    @Test
+    public void test_replace_deployment() {
+        Deployment deployment1 = new Deployment(getClass().getResourceAsStream("/switchyard-config-transform-03.xml"));
+        deployment1.setTransformerLoading(Deployment.TransformerLoading.LAZY);
+        deployment1.init();
+        deployment1.start();
+        ServiceDomain domain = deployment1.getDomain();
+        Transformer<?,?> abTransformer = domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b"));
+
+        // The new version takes over the domain, and the transformers that didn't change...
+        Deployment deployment2 = new Deployment(getClass().getResourceAsStream("/switchyard-config-transform-03.xml"));
+        deployment2.setTransformerLoading(Deployment.TransformerLoading.LAZY);
+        deployment2.replace(deployment1, 1000);
+        Assert.assertSame(domain, deployment2.getDomain());
+        Assert.assertSame(abTransformer, domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b")));
+
+        // ... which are released with the new version
+        deployment2.stop();
+        deployment2.destroy();
+        Assert.assertNull(domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b")));
+    }
+
+    @Test
+    public void test_replace_deployment_in_flight() throws Exception {
+        final Deployment deployment1 = new Deployment(getClass().getResourceAsStream("/switchyard-config-activator-01.xml"));
+        deployment1.init();
+        deployment1.start();
+        ServiceDomain domain = deployment1.getDomain();
+        MockHandler version1 = MockActivatorProvider.ACTIVATOR.getLastHandler();
+        QName serviceName = new QName("MockService");
+        ServiceReference service1 = domain.getService(serviceName);
+
+        // An exchange is in flight through the previous version...
+        MockHandler consumer = new MockHandler();
+        Exchange inFlight = domain.createExchange(service1, ExchangeContract.IN_OUT, consumer);
+        inFlight.send(inFlight.createMessage());
+        Exchange received = version1.poll(1000);
+        Assert.assertNotNull(received);
+
+        // ... so replace() waits for it to complete
+        final Deployment deployment2 = new Deployment(getClass().getResourceAsStream("/switchyard-config-activator-01.xml"));
+        final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+        Thread replacing = new Thread() {
+            public void run() {
+                try {
+                    deployment2.replace(deployment1, 10000);
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }
+        };
+        long started = System.currentTimeMillis();
+        replacing.start();
+        long deadline = started + 5000;
+        while (domain.getService(serviceName) == service1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        ServiceReference service2 = domain.getService(serviceName);
+        Assert.assertNotSame(service1, service2);
+        Assert.assertTrue(replacing.isAlive());
+
+        // New exchanges reach the new version...
+        MockHandler version2 = MockActivatorProvider.ACTIVATOR.getLastHandler();
+        Assert.assertNotSame(version1, version2);
+        Exchange exchange = domain.createExchange(service2, ExchangeContract.IN_ONLY);
+        exchange.send(exchange.createMessage());
+        Assert.assertNotNull(version2.poll(1000));
+        Assert.assertNull(version1.poll(0));
+
+        // ... while the previous one still completes the exchange in flight
+        received.send(received.createMessage());
+        Assert.assertNotNull(consumer.poll(1000));
+        replacing.join(10000);
+        Assert.assertFalse(replacing.isAlive());
+        Assert.assertTrue(failures.isEmpty());
+        // drained, rather than given up on at the timeout
+        Assert.assertTrue(System.currentTimeMillis() - started < 10000);
+        Assert.assertEquals(1, MockActivatorProvider.ACTIVATOR.getStarted());
+
+        deployment2.stop();
+        deployment2.destroy();
+        Assert.assertEquals(0, MockActivatorProvider.ACTIVATOR.getStarted());
+    }
+
+    @Test
+    public void test_replace_deployment_failed_bindings() throws Exception {
+        Deployment deployment1 = new Deployment(getClass().getResourceAsStream("/switchyard-config-activator-02.xml"));
+        deployment1.init();
+        deployment1.start();
+        ServiceDomain domain = deployment1.getDomain();
+        QName serviceName = new QName("MockService");
+        ServiceReference service1 = domain.getService(serviceName);
+        MockHandler version1 = MockActivatorProvider.ACTIVATOR.getLastHandler();
+        Assert.assertEquals(2, MockActivatorProvider.ACTIVATOR.getStarted());
+
+        // The service bindings of the new version fail to start...
+        Deployment deployment2 = new Deployment(getClass().getResourceAsStream("/switchyard-config-activator-02.xml"));
+        MockActivatorProvider.ACTIVATOR.failNextBinding();
+        try {
+            deployment2.replace(deployment1, 1000);
+            Assert.fail("Expected the service binding to fail the replacement.");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("Failed to initialize binding"));
+        }
+
+        // ... so the previous version keeps running, service bindings included
+        Assert.assertSame(service1, domain.getService(serviceName));
+        Assert.assertEquals(2, MockActivatorProvider.ACTIVATOR.getStarted());
+        Exchange exchange = domain.createExchange(service1, ExchangeContract.IN_ONLY);
+        exchange.send(exchange.createMessage());
+        Assert.assertNotNull(version1.poll(1000));
+
+        deployment1.stop();
+        deployment1.destroy();
+        Assert.assertEquals(0, MockActivatorProvider.ACTIVATOR.getStarted());
+    }
+
+    @Test
+    public void test_replace_deployment_class_loader() {
+        Deployment deployment1 = new Deployment(getClass().getResourceAsStream("/switchyard-config-transform-03.xml"));
+        deployment1.setTransformerLoading(Deployment.TransformerLoading.LAZY);
+        deployment1.init();
+        deployment1.start();
+        ServiceDomain domain = deployment1.getDomain();
+        Transformer<?,?> abTransformer = domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b"));
+
+        Thread thread = Thread.currentThread();
+        ClassLoader tccl = thread.getContextClassLoader();
+        thread.setContextClassLoader(new URLClassLoader(new URL[0], getClass().getClassLoader()));
+        try {
+            // A deployment with another class loader doesn't share the transformers...
+            Deployment deployment2 = new Deployment(getClass().getResourceAsStream("/switchyard-config-transform-03.xml"));
+            deployment2.setTransformerLoading(Deployment.TransformerLoading.LAZY);
+            deployment2.setParentDeployment(deployment1);
+            try {
+                deployment2.init();
+                Assert.fail("Expected the A -> B Transformer of another class loader to fail the deployment.");
+            } catch (RuntimeException e) {
+                Assert.assertTrue(e.getMessage().contains("already registered"));
+            }
+            Assert.assertSame(abTransformer, domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b")));
+
+            // ... but a new version of it takes them over
+            Deployment deployment3 = new Deployment(getClass().getResourceAsStream("/switchyard-config-transform-03.xml"));
+            deployment3.setTransformerLoading(Deployment.TransformerLoading.LAZY);
+            deployment3.replace(deployment1, 1000);
+            Transformer<?,?> newTransformer = domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b"));
+            Assert.assertNotNull(newTransformer);
+            Assert.assertNotSame(abTransformer, newTransformer);
+
+            deployment3.stop();
+            deployment3.destroy();
+            Assert.assertNull(domain.getTransformerRegistry().getTransformer(new QName("http://www.switchyard.org", "a"), new QName("http://www.switchyard.org", "b")));
+        } finally {
+            thread.setContextClassLoader(tccl);
+        }
+    }
+
+    @Test
+    public void test_activator_registry() {
+        // Activator providers are discovered once per class loader...
+        ClassLoader loader = getClass().getClassLoader();
+        Assert.assertSame(ActivatorRegistry.forClassLoader(loader), ActivatorRegistry.forClassLoader(loader));
+        Assert.assertNotNull(ActivatorRegistry.forClassLoader(loader).getImplementationProvider("mock"));
+
+        // ... and this one shares its activator between deployments
+        Deployment deployment1 = new Deployment(getClass().getResourceAsStream("/switchyard-config-activator-01.xml"));
+        deployment1.init();
+        deployment1.start();
+        Deployment deployment2 = new Deployment(getClass().getResourceAsStream("/switchyard-config-activator-01.xml"));
+        deployment2.init();
+        deployment2.start();
+        Assert.assertEquals(2, MockActivatorProvider.ACTIVATOR.getStarted());
+
+        deployment1.stop();
+        deployment1.destroy();
+        deployment2.stop();
+        deployment2.destroy();
+        Assert.assertEquals(0, MockActivatorProvider.ACTIVATOR.getStarted());
+    }
+
+    @Test
+    public void test_activator_registry_provider_reused() {
+        // The provider, of the registry's own class loader, isn't instantiated per activator
+        ActivatorProvider provider = ActivatorRegistry.forClassLoader(getClass().getClassLoader()).getImplementationProvider("mock");
+        int instances = MockActivatorProvider.getInstances();
+        provider.createActivator();
+        provider.createActivator();
+        provider.createActivator();
+        Assert.assertTrue(MockActivatorProvider.getInstances() - instances <= 1);
+    }
+
+    @Test
+    public void test_activator_registry_class_loader() throws Exception {
+        // The registry of a class loader doesn't keep it from being collected
+        ClassLoader loader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        Assert.assertNotNull(ActivatorRegistry.forClassLoader(loader).getImplementationProvider("bean"));
+        WeakReference<ClassLoader> reference = new WeakReference<ClassLoader>(loader);
+        loader = null;
+        for (int i = 0; i < 10 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(reference.get());
+    }
 }
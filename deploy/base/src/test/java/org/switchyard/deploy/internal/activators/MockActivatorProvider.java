@@ -0,0 +1,163 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.deploy.internal.activators;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.namespace.QName;
+
+import org.switchyard.BaseHandler;
+import org.switchyard.Exchange;
+import org.switchyard.ExchangeHandler;
+import org.switchyard.HandlerException;
+import org.switchyard.ServiceReference;
+import org.switchyard.config.model.Model;
+import org.switchyard.config.model.composite.CompositeServiceModel;
+import org.switchyard.deploy.Activator;
+import org.switchyard.deploy.ActivatorProvider;
+
+/**
+ * Provides one activator, shared by all deployments, for implementation.mock and
+ * binding.mock.
+ */
+public class MockActivatorProvider implements ActivatorProvider {
+
+    public static final MockActivator ACTIVATOR = new MockActivator();
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    public MockActivatorProvider() {
+        INSTANCES.incrementAndGet();
+    }
+
+    /**
+     * The number of providers instantiated.
+     */
+    public static int getInstances() {
+        return INSTANCES.get();
+    }
+
+    @Override
+    public Collection<String> getImplementationTypes() {
+        return Collections.singleton("mock");
+    }
+
+    @Override
+    public Collection<String> getBindingTypes() {
+        return Collections.singleton("mock");
+    }
+
+    @Override
+    public Activator createActivator() {
+        return ACTIVATOR;
+    }
+
+    public static class MockActivator implements Activator {
+
+        private final AtomicInteger _started = new AtomicInteger();
+        private final List<MockHandler> _handlers = new CopyOnWriteArrayList<MockHandler>();
+        private volatile long _startDelay;
+        private final AtomicBoolean _failBinding = new AtomicBoolean();
+
+        public int getStarted() {
+            return _started.get();
+        }
+
+        /**
+         * Make starting a service take a while.
+         */
+        public void setStartDelay(long startDelay) {
+            _startDelay = startDelay;
+        }
+
+        /**
+         * Make initializing the next service binding fail.
+         */
+        public void failNextBinding() {
+            _failBinding.set(true);
+        }
+
+        /**
+         * The handler of the service last initialized.
+         */
+        public MockHandler getLastHandler() {
+            return _handlers.get(_handlers.size() - 1);
+        }
+
+        @Override
+        public ExchangeHandler init(QName name, Model config) {
+            if (config instanceof CompositeServiceModel) {
+                if (_failBinding.compareAndSet(true, false)) {
+                    throw new RuntimeException("Failed to initialize binding for service " + name);
+                }
+                return new BaseHandler();
+            }
+            MockHandler handler = new MockHandler();
+            _handlers.add(handler);
+            return handler;
+        }
+
+        @Override
+        public void start(ServiceReference service) {
+            if (_startDelay > 0) {
+                try {
+                    Thread.sleep(_startDelay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            _started.incrementAndGet();
+        }
+
+        @Override
+        public void stop(ServiceReference service) {
+            _started.decrementAndGet();
+        }
+
+        @Override
+        public void destroy(ServiceReference service) {
+        }
+    }
+
+    /**
+     * Keeps the exchanges it receives, without replying.
+     */
+    public static class MockHandler extends BaseHandler {
+
+        private final BlockingQueue<Exchange> _received = new LinkedBlockingQueue<Exchange>();
+
+        @Override
+        public void handleMessage(Exchange exchange) throws HandlerException {
+            _received.add(exchange);
+        }
+
+        public Exchange poll(long timeout) throws InterruptedException {
+            return _received.poll(timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+}
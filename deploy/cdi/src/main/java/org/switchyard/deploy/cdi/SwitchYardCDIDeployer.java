@@ -19,6 +19,8 @@
 
 package org.switchyard.deploy.cdi;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -27,6 +29,9 @@ import javax.enterprise.inject.spi.AfterDeploymentValidation;
 import javax.enterprise.inject.spi.BeforeShutdown;
 import javax.enterprise.inject.spi.Extension;
 
+import org.switchyard.config.model.ModelResource;
+import org.switchyard.config.model.SnapshotModelResource;
+import org.switchyard.config.model.switchyard.SwitchYardModel;
 import org.switchyard.deploy.internal.AbstractDeployment;
 import org.switchyard.deploy.internal.Deployment;
 
@@ -42,7 +47,10 @@ public class SwitchYardCDIDeployer implements Extension {
     private Deployment _deployment;
 
     /**
-     * {@link AfterDeploymentValidation} CDI event observer.
+     * {@link AfterDeploymentValidation} CDI event observer.  If the
+     * {@link SnapshotModelResource#DIRECTORY_PROPERTY} system property is set,
+     * a compiled snapshot of the configuration is kept there, so an unchanged
+     * configuration isn't parsed again on restart.
      *
      * @param event         CDI Event instance.
      */
@@ -50,12 +58,30 @@ public class SwitchYardCDIDeployer implements Extension {
         InputStream swConfigStream = Thread.currentThread().getContextClassLoader().getResourceAsStream(AbstractDeployment.SWITCHYARD_XML);
 
         if (swConfigStream != null) {
-            _deployment = new Deployment(swConfigStream);
+            _deployment = new Deployment(pullSwitchYardConfig(swConfigStream));
             _deployment.init();
             _deployment.start();
         }
     }
 
+    private SwitchYardModel pullSwitchYardConfig(InputStream swConfigStream) {
+        File snapshotDirectory = SnapshotModelResource.getDefaultDirectory();
+        try {
+            if (snapshotDirectory != null) {
+                return new SnapshotModelResource<SwitchYardModel>(snapshotDirectory).pull(swConfigStream);
+            }
+            return new ModelResource<SwitchYardModel>().pull(swConfigStream);
+        } catch (IOException ioEx) {
+            throw new RuntimeException("Failed to read switchyard config.", ioEx);
+        } finally {
+            try {
+                swConfigStream.close();
+            } catch (IOException ioEx) {
+                // ignore, the config has been read (or failed to be read) by now
+            }
+        }
+    }
+
     /**
      * {@link BeforeShutdown} CDI event observer.
      *
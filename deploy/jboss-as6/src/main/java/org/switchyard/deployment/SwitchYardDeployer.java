@@ -19,6 +19,7 @@
 
 package org.switchyard.deployment;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
 
@@ -30,6 +31,7 @@ import org.jboss.deployers.structure.spi.DeploymentUnit;
 import org.jboss.deployers.vfs.spi.deployer.AbstractSimpleVFSRealDeployer;
 import org.jboss.deployers.vfs.spi.structure.VFSDeploymentUnit;
 import org.switchyard.config.model.ModelResource;
+import org.switchyard.config.model.SnapshotModelResource;
 import org.switchyard.config.model.switchyard.SwitchYardModel;
 
 /**
@@ -38,6 +40,7 @@ import org.switchyard.config.model.switchyard.SwitchYardModel;
 public class SwitchYardDeployer extends AbstractSimpleVFSRealDeployer<SwitchYardMetaData> {
     
     private static final String BEAN_PREFIX = "switchyard";
+    private static final String SERVER_DATA_DIR = "jboss.server.data.dir";
     
     /**
      * No args constructor.
@@ -61,15 +64,35 @@ public class SwitchYardDeployer extends AbstractSimpleVFSRealDeployer<SwitchYard
     }
     
     /**
-     * Parse the SwitchYard configuration
+     * Parse the SwitchYard configuration.  When streaming configurations are enabled (see
+     * {@link ModelResource#STREAMING_PROPERTY}), a compiled snapshot of the configuration is kept
+     * in the {@link SnapshotModelResource#DIRECTORY_PROPERTY} directory (by default, under the
+     * server's data directory), so an unchanged configuration isn't parsed again on restart.
      * @param metaData SwitchYard MetaData
      * @throws IOException IOException
      */
     private void parseSwitchYardConfig(SwitchYardMetaData metaData) throws IOException {
         InputStream is = metaData.getSwitchYardFile().openStream();
+        try {
+            SwitchYardModel switchyardModel = getModelResource().pull(is);
+            metaData.setSwitchYardModel(switchyardModel);
+        } finally {
+            is.close();
+        }
+    }
 
-        SwitchYardModel switchyardModel = new ModelResource<SwitchYardModel>().pull(is);
-        metaData.setSwitchYardModel(switchyardModel);
+    private ModelResource<SwitchYardModel> getModelResource() {
+        if (!Boolean.getBoolean(ModelResource.STREAMING_PROPERTY)) {
+            return new ModelResource<SwitchYardModel>();
+        }
+        File snapshotDirectory = SnapshotModelResource.getDefaultDirectory();
+        if (snapshotDirectory == null && System.getProperty(SERVER_DATA_DIR) != null) {
+            snapshotDirectory = new File(System.getProperty(SERVER_DATA_DIR), "switchyard" + File.separator + "snapshots");
+        }
+        if (snapshotDirectory == null) {
+            return new ModelResource<SwitchYardModel>();
+        }
+        return new SnapshotModelResource<SwitchYardModel>(snapshotDirectory);
     }
     
     /**
@@ -21,13 +21,16 @@ package org.switchyard.handlers;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.namespace.QName;
 
-import org.apache.log4j.Logger;
 import org.switchyard.BaseHandler;
 import org.switchyard.Exchange;
 import org.switchyard.HandlerException;
+import org.switchyard.internal.logging.RuntimeLogger;
+import org.switchyard.internal.trace.ExchangeTracer;
+import org.switchyard.internal.trace.TraceEvent;
 import org.switchyard.internal.transform.BaseTransformerRegistry;
 import org.switchyard.transform.TransformSequence;
 import org.switchyard.transform.Transformer;
@@ -44,10 +47,18 @@ import org.switchyard.transform.TransformerRegistry;
  */
 public class TransformHandler extends BaseHandler {
 
-    private static Logger _logger = Logger.getLogger(TransformHandler.class);
+    private static RuntimeLogger _logger = RuntimeLogger.getLogger(TransformHandler.class);
+    private static ExchangeTracer _tracer = ExchangeTracer.getInstance();
 
     private TransformerRegistry _registry;
 
+    /**
+     * "Transformations not applied" fault descriptions, keyed by expected and
+     * then actual payload type, so repeated failures don't rebuild the string.
+     */
+    private final ConcurrentHashMap<QName, ConcurrentHashMap<QName, String>> _notAppliedDescriptions =
+        new ConcurrentHashMap<QName, ConcurrentHashMap<QName, String>>();
+
     /**
      * Create a new TransformHandler.  The specified TransformerRegistry will
      * be used to locate transformers for each handled exchange.
@@ -78,28 +89,49 @@ public class TransformHandler extends BaseHandler {
      */
     @Override
     public void handleMessage(Exchange exchange) throws HandlerException {
+        _tracer.trace(exchange, TraceEvent.Type.TRANSFORM_ENTER, null);
         // Apply transforms to the message...
         TransformSequence.applySequence(exchange, _registry);
+        _tracer.trace(exchange, TraceEvent.Type.TRANSFORM_EXIT, null);
         if (!TransformSequence.assertTransformsApplied(exchange)) {
             QName actualPayloadType = TransformSequence.getCurrentMessageType(exchange);
             QName expectedPayloadType = TransformSequence.getTargetMessageType(exchange);
 
-            throw new HandlerException("Transformations not applied.  Required payload type of '" + expectedPayloadType + "'.  Actual payload type is '" + actualPayloadType + "'.  You must define and register a Transformer to transform between these types.");
+            throw new HandlerException(describeNotApplied(expectedPayloadType, actualPayloadType));
         }
     }
 
     @Override
     public void handleFault(Exchange exchange) {
+        _tracer.trace(exchange, TraceEvent.Type.TRANSFORM_ENTER, null);
         // Apply transforms to the fault...
         TransformSequence.applySequence(exchange, _registry);
+        _tracer.trace(exchange, TraceEvent.Type.TRANSFORM_EXIT, null);
         if (!TransformSequence.assertTransformsApplied(exchange)) {
             QName actualPayloadType = TransformSequence.getCurrentMessageType(exchange);
             QName expectedPayloadType = TransformSequence.getTargetMessageType(exchange);
 
             if (_logger.isDebugEnabled()) {
-                _logger.debug("Transformations not applied.  Required payload type of '" + expectedPayloadType + "'.  Actual payload type is '" + actualPayloadType + "'.  You must define and register a Transformer to transform between these types.");
+                _logger.debug(describeNotApplied(expectedPayloadType, actualPayloadType));
+            }
+        }
+    }
+
+    private String describeNotApplied(QName expectedPayloadType, QName actualPayloadType) {
+        ConcurrentHashMap<QName, String> descriptions = _notAppliedDescriptions.get(expectedPayloadType);
+        if (descriptions == null) {
+            descriptions = new ConcurrentHashMap<QName, String>();
+            ConcurrentHashMap<QName, String> existing = _notAppliedDescriptions.putIfAbsent(expectedPayloadType, descriptions);
+            if (existing != null) {
+                descriptions = existing;
             }
         }
+        String description = descriptions.get(actualPayloadType);
+        if (description == null) {
+            description = "Transformations not applied.  Required payload type of '" + expectedPayloadType + "'.  Actual payload type is '" + actualPayloadType + "'.  You must define and register a Transformer to transform between these types.";
+            descriptions.put(actualPayloadType, description);
+        }
+        return description;
     }
 }
 
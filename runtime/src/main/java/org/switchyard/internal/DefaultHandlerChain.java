@@ -24,13 +24,15 @@ import java.util.List;
 
 import javax.xml.namespace.QName;
 
-import org.apache.log4j.Logger;
 import org.switchyard.Exchange;
 import org.switchyard.ExchangeHandler;
 import org.switchyard.ExchangeState;
 import org.switchyard.HandlerException;
 import org.switchyard.Message;
 import org.switchyard.handlers.HandlerChain;
+import org.switchyard.internal.logging.RuntimeLogger;
+import org.switchyard.internal.trace.ExchangeTracer;
+import org.switchyard.internal.trace.TraceEvent;
 import org.switchyard.metadata.ExchangeContract;
 import org.switchyard.metadata.java.JavaService;
 import org.switchyard.transform.TransformSequence;
@@ -39,7 +41,8 @@ import org.switchyard.transform.TransformSequence;
  * Default handler chain.
  */
 public class DefaultHandlerChain implements HandlerChain {
-    private static Logger _logger = Logger.getLogger(DefaultHandlerChain.class);
+    private static RuntimeLogger _logger = RuntimeLogger.getLogger(DefaultHandlerChain.class);
+    private static ExchangeTracer _tracer = ExchangeTracer.getInstance();
     private final LinkedList<HandlerRef> _chain = new LinkedList<HandlerRef>();
     
     /**
@@ -98,7 +101,9 @@ public class DefaultHandlerChain implements HandlerChain {
     public void handleFault(Exchange exchange) {
         try {
             for (HandlerRef ref : listHandlers()) {
+                _tracer.trace(exchange, TraceEvent.Type.HANDLER_ENTER, ref.getName());
                 ref.getHandler().handleFault(exchange);
+                _tracer.trace(exchange, TraceEvent.Type.HANDLER_EXIT, ref.getName());
             }
         } catch (Exception e) {
             // This is terminal... a fault on a fault...
@@ -108,9 +113,13 @@ public class DefaultHandlerChain implements HandlerChain {
 
     @Override
     public void handleMessage(Exchange exchange) {
+        HandlerRef current = null;
         try {
             for (HandlerRef ref : listHandlers()) {
+                current = ref;
+                _tracer.trace(exchange, TraceEvent.Type.HANDLER_ENTER, ref.getName());
                 ref.getHandler().handleMessage(exchange);
+                _tracer.trace(exchange, TraceEvent.Type.HANDLER_EXIT, ref.getName());
 
                 if (exchange.getState() == ExchangeState.FAULT) {
                     // Exchange state has changed to FAULT.
@@ -119,7 +128,8 @@ public class DefaultHandlerChain implements HandlerChain {
                 }
             }
         } catch (HandlerException handlerEx) {
-            _logger.error(handlerEx);
+            _tracer.trace(exchange, TraceEvent.Type.HANDLER_FAULT, current.getName());
+            _logger.errorLimited(handlerEx);
 
             Message faultMessage = exchange.createMessage().setContent(handlerEx);
             initFaultTransformsequence(exchange, handlerEx, faultMessage);
@@ -129,14 +139,20 @@ public class DefaultHandlerChain implements HandlerChain {
 
     private void initFaultTransformsequence(Exchange exchange, HandlerException handlerEx, Message faultMessage) {
         ExchangeContract contract = exchange.getContract();
-        QName exceptionTypeName = contract.getServiceOperation().getFaultType();
         QName invokerFaultTypeName = contract.getInvokerInvocationMetaData().getFaultType();
 
+        if (invokerFaultTypeName == null) {
+            // No fault transformation required, so don't bother resolving the exception type...
+            return;
+        }
+
+        QName exceptionTypeName = contract.getServiceOperation().getFaultType();
         if (exceptionTypeName == null) {
+            // cached by JavaService, so this doesn't reflect on the exception class for every fault
             exceptionTypeName = JavaService.toMessageType(handlerEx.getClass());
         }
 
-        if (exceptionTypeName != null && invokerFaultTypeName != null) {
+        if (exceptionTypeName != null) {
             // Set up the type info on the message context so as the exception gets transformed
             // appropriately for the invoker...
             TransformSequence.
@@ -19,7 +19,13 @@
 
 package org.switchyard.internal;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.xml.namespace.QName;
 
@@ -30,6 +36,7 @@ import org.switchyard.ServiceDomain;
 import org.switchyard.ServiceReference;
 import org.switchyard.handlers.HandlerChain;
 import org.switchyard.handlers.TransformHandler;
+import org.switchyard.internal.trace.ExchangeTracer;
 import org.switchyard.metadata.ExchangeContract;
 import org.switchyard.metadata.InOutService;
 import org.switchyard.metadata.ServiceInterface;
@@ -49,6 +56,12 @@ public class DomainImpl implements ServiceDomain {
     private final ServiceRegistry _registry;
     private final ExchangeBus _exchangeBus;
     private final TransformerRegistry _transformerRegistry;
+    // The registration each service name resolves to: the earliest of its live
+    // registrations, so a new version of a service stays out of the way until the
+    // old one is unregistered.  Replaced as a whole, so a switch of several services
+    // is seen at once by new exchanges.
+    private volatile Map<QName, Service> _routes = Collections.emptyMap();
+    private final AtomicBoolean _destroyed = new AtomicBoolean();
 
     /**
      * Constructor.
@@ -71,6 +84,19 @@ public class DomainImpl implements ServiceDomain {
         // handled this via config.
         _defaultHandlers = new DefaultHandlerChain();
         _defaultHandlers.addFirst("transformation", new TransformHandler(_transformerRegistry));
+
+        ExchangeTracer.getInstance().registerMBean();
+    }
+
+    /**
+     * Releases the resources held by the domain on behalf of the runtime, e.g.
+     * its registration of the exchange tracer MBean.  The domain should not be
+     * used once destroyed.
+     */
+    public void destroy() {
+        if (_destroyed.compareAndSet(false, true)) {
+            ExchangeTracer.getInstance().unregisterMBean();
+        }
     }
 
     @Override
@@ -83,7 +109,9 @@ public class DomainImpl implements ServiceDomain {
     @Override
     public Exchange createExchange(
             ServiceReference service, ExchangeContract contract, ExchangeHandler handler) {
-        Dispatcher dispatcher = _exchangeBus.getDispatcher(service);
+        Service route = _routes.get(service.getName());
+        Dispatcher dispatcher = route != null
+            ? route.getEndpoint() : _exchangeBus.getDispatcher(service);
         HandlerChain replyChain = null;
         
         if (handler != null) {
@@ -116,7 +144,52 @@ public class DomainImpl implements ServiceDomain {
         Dispatcher ep = _exchangeBus.createDispatcher(reference, handlers);
         
         // register the service
-        return _registry.registerService(reference, ep, this).getReference();
+        Service registration = _registry.registerService(reference, ep, this);
+        synchronized (this) {
+            if (!_routes.containsKey(serviceName)) {
+                Map<QName, Service> routes = new HashMap<QName, Service>(_routes);
+                routes.put(serviceName, registration);
+                _routes = Collections.unmodifiableMap(routes);
+            }
+        }
+        return reference;
+    }
+
+    @Override
+    public void unregisterService(ServiceReference service) {
+        unregisterServices(Collections.singletonList(service));
+    }
+
+    /**
+     * Unregister a group of services in one step: new exchanges for any of the
+     * services switch to the next registration of the same name (if there is
+     * one) at the same time.  Exchanges already created for the unregistered
+     * services are still delivered through their dispatchers.
+     * @param services references returned when registering the services
+     * @return the dispatchers of the unregistered services, e.g. to wait for
+     * the exchanges in flight through them
+     */
+    public synchronized List<Dispatcher> unregisterServices(Collection<ServiceReference> services) {
+        List<Dispatcher> dispatchers = new ArrayList<Dispatcher>();
+        Map<QName, Service> routes = new HashMap<QName, Service>(_routes);
+        for (ServiceReference service : services) {
+            for (Service registration : _registry.getServices(service.getName())) {
+                if (registration.getReference() == service) {
+                    _registry.unregisterService(registration);
+                    dispatchers.add(registration.getEndpoint());
+                }
+            }
+            routes.remove(service.getName());
+            for (Service registration : _registry.getServices(service.getName())) {
+                // the registry may be shared with other domains
+                if (registration.getDomain() == this) {
+                    routes.put(service.getName(), registration);
+                    break;
+                }
+            }
+        }
+        _routes = Collections.unmodifiableMap(routes);
+        return dispatchers;
     }
 
     @Override
@@ -131,6 +204,10 @@ public class DomainImpl implements ServiceDomain {
     
     @Override
     public ServiceReference getService(QName serviceName) {
+        Service route = _routes.get(serviceName);
+        if (route != null) {
+            return route.getReference();
+        }
         List<Service> services = _registry.getServices(serviceName);
         return services.isEmpty() ? null : services.get(0).getReference();
     }
@@ -23,7 +23,6 @@ import java.util.UUID;
 
 import javax.xml.namespace.QName;
 
-import org.apache.log4j.Logger;
 import org.switchyard.Context;
 import org.switchyard.Exchange;
 import org.switchyard.ExchangePattern;
@@ -32,6 +31,9 @@ import org.switchyard.ExchangeState;
 import org.switchyard.Message;
 import org.switchyard.ServiceReference;
 import org.switchyard.handlers.HandlerChain;
+import org.switchyard.internal.logging.RuntimeLogger;
+import org.switchyard.internal.trace.ExchangeTracer;
+import org.switchyard.internal.trace.TraceEvent;
 import org.switchyard.metadata.ExchangeContract;
 import org.switchyard.spi.Dispatcher;
 import org.switchyard.transform.TransformSequence;
@@ -41,7 +43,8 @@ import org.switchyard.transform.TransformSequence;
  */
 public class ExchangeImpl implements Exchange {
 
-    private static Logger _log = Logger.getLogger(ExchangeImpl.class);
+    private static RuntimeLogger _log = RuntimeLogger.getLogger(ExchangeImpl.class);
+    private static ExchangeTracer _tracer = ExchangeTracer.getInstance();
 
     private final String            _exchangeId;
     private final ExchangeContract  _contract;
@@ -105,9 +108,23 @@ public class ExchangeImpl implements Exchange {
      * @param contract exchange contract
      */
     public ExchangeImpl(String exchangeId, Dispatcher dispatch, ExchangePhase phase, ExchangeContract contract) {
+        this(exchangeId, dispatch, phase, ExchangeState.OK, contract);
+    }
+
+    /**
+     * Creates an exchange implementation in a specific state, which may be a fault.
+     * This constructor is used when deserializing an exchange.
+     * @param exchangeId exchange unique ID
+     * @param dispatch dispatcher used to send exchange
+     * @param phase exchange phase
+     * @param state exchange state
+     * @param contract exchange contract
+     */
+    public ExchangeImpl(String exchangeId, Dispatcher dispatch, ExchangePhase phase, ExchangeState state, ExchangeContract contract) {
         _exchangeId = exchangeId;
         _dispatch = dispatch;
         _phase = phase;
+        _state = state;
         _contract = contract;
         
         // TODO : update once serialization impl is ready
@@ -156,6 +173,7 @@ public class ExchangeImpl implements Exchange {
                     "Send message not allowed for exchange in phase " + _phase);
         }
         
+        _tracer.trace(_exchangeId, TraceEvent.Type.SEND, _phase.name());
         sendInternal(message);
     }
 
@@ -170,6 +188,7 @@ public class ExchangeImpl implements Exchange {
         
         _phase = ExchangePhase.OUT;
         _state = ExchangeState.FAULT;
+        _tracer.trace(_exchangeId, TraceEvent.Type.SEND_FAULT, _phase.name());
         sendInternal(message);
     }
 
@@ -231,13 +250,32 @@ public class ExchangeImpl implements Exchange {
         // if a fault was thrown by the handler chain and there's no reply chain
         // we need to log.
         // TODO : stick this in a central fault/error queue
-        if (ExchangeState.FAULT.equals(_state) && _replyChain == null) {
-            _log.warn("Fault generated during exchange without a handler: " + _message);
+        if (ExchangeState.FAULT.equals(_state) && _replyChain == null
+                && _contract.getServiceOperation().getExchangePattern() != ExchangePattern.IN_OUT) {
+            _log.warnLimited(unhandledFaultKey(), "Fault generated during exchange without a handler: {}", _message);
             return;
         }
+        // an IN_OUT exchange only lacks a reply chain when deserialized, as its dispatcher
+        // holds it: the fault is dispatched all the same, which also completes the exchange
         _dispatch.dispatch(this);
     }
 
+    /**
+     * Unhandled faults are rate-limited per service and fault, so a storm of
+     * faults from one service doesn't hide the faults of others.
+     */
+    private Object unhandledFaultKey() {
+        QName serviceName = _service != null ? _service.getName() : null;
+        Object content = _message != null ? _message.getContent() : null;
+        Object fault = null;
+        if (content instanceof Throwable) {
+            fault = RuntimeLogger.limitKey(content.getClass(), ((Throwable)content).getMessage());
+        } else if (content != null) {
+            fault = content.getClass();
+        }
+        return RuntimeLogger.limitKey(serviceName, fault);
+    }
+
     private void assertExchangeStateOK() {
         if (_state == ExchangeState.FAULT) {
             throw new IllegalStateException("Exchange instance is in a FAULT state.");
@@ -0,0 +1,127 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.switchyard.Exchange;
+
+/**
+ * The exchanges in flight through a dispatcher, i.e. dispatched to the service
+ * and not yet completed.  Exchanges are tracked by id, so ending an exchange
+ * more than once is harmless, and a deserialized copy of an exchange ends the
+ * original.  Once closed, no new exchanges are admitted.
+ */
+public final class InFlightExchanges {
+
+    private final Set<String> _exchangeIds =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean _closed;
+
+    /**
+     * Start tracking an exchange.
+     * @param exchange exchange dispatched to the service
+     * @return false if the exchange isn't admitted, as this has been closed
+     */
+    public boolean begin(Exchange exchange) {
+        _exchangeIds.add(exchange.getId());
+        // checked after adding, so an exchange is either refused or waited for by close()
+        if (_closed) {
+            end(exchange);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stop tracking an exchange.
+     * @param exchange completed exchange
+     */
+    public void end(Exchange exchange) {
+        if (_exchangeIds.remove(exchange.getId()) && _exchangeIds.isEmpty()) {
+            // a waiter holds the monitor from its check until it waits, so this can't be missed
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * The number of exchanges in flight.
+     * @return number of exchanges in flight
+     */
+    public int size() {
+        return _exchangeIds.size();
+    }
+
+    /**
+     * The ids of the exchanges in flight.
+     * @return exchange ids
+     */
+    public List<String> getExchangeIds() {
+        return new ArrayList<String>(_exchangeIds);
+    }
+
+    /**
+     * Stop admitting new exchanges, and wait for those in flight to complete.
+     * @param timeout maximum time to wait, in milliseconds
+     * @return the ids of the exchanges still in flight at the timeout, or when
+     * interrupted (the interrupt status is kept)
+     */
+    public List<String> close(long timeout) {
+        _closed = true;
+        try {
+            await(timeout);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return getExchangeIds();
+    }
+
+    /**
+     * Has this been closed.
+     * @return true if new exchanges are no longer admitted
+     */
+    public boolean isClosed() {
+        return _closed;
+    }
+
+    /**
+     * Wait for all exchanges in flight to complete.
+     * @param timeout maximum time to wait, in milliseconds
+     * @return true if no exchanges are in flight, false if the timeout expired first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean await(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!_exchangeIds.isEmpty()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+}
@@ -19,13 +19,18 @@
 
 package org.switchyard.internal;
 
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.namespace.QName;
 
 import org.switchyard.Exchange;
+import org.switchyard.ExchangePattern;
+import org.switchyard.ExchangePhase;
 import org.switchyard.ServiceReference;
 import org.switchyard.handlers.HandlerChain;
+import org.switchyard.internal.trace.ExchangeTracer;
+import org.switchyard.internal.trace.TraceEvent;
 import org.switchyard.spi.Dispatcher;
 import org.switchyard.spi.ExchangeBus;
 
@@ -52,8 +57,11 @@ public class LocalExchangeBus implements ExchangeBus {
 }
 
 class LocalDispatcher implements Dispatcher {
+    private static ExchangeTracer _tracer = ExchangeTracer.getInstance();
     private HandlerChain _handlerChain;
     private ServiceReference _service;
+    // replaced when restarted, as a closed tracker admits no exchanges
+    private volatile InFlightExchanges _inFlight = new InFlightExchanges();
 
     /**
      * Constructor.
@@ -66,12 +74,36 @@ class LocalDispatcher implements Dispatcher {
 
     @Override
     public void dispatch(final Exchange exchange) {
+        _tracer.trace(exchange, TraceEvent.Type.DISPATCH, exchange.getPhase().name());
         switch (exchange.getPhase()) {
         case IN:
-            _handlerChain.handle(exchange);
+            InFlightExchanges inFlight = _inFlight;
+            if (!inFlight.begin(exchange)) {
+                throw new IllegalStateException("Dispatcher for service " + _service.getName() + " is stopped.");
+            }
+            boolean replyPending = false;
+            try {
+                _handlerChain.handle(exchange);
+                // an IN_OUT exchange completes when its reply has been handled (see OUT below),
+                // unless there is no reply chain, in which case nothing waits for the reply
+                replyPending = exchange.getPhase() == ExchangePhase.IN
+                    && exchange.getContract().getServiceOperation().getExchangePattern() == ExchangePattern.IN_OUT
+                    && ((ExchangeImpl)exchange).getReplyChain() != null;
+            } finally {
+                if (!replyPending) {
+                    inFlight.end(exchange);
+                }
+            }
             break;
         case OUT:
-            ((ExchangeImpl)exchange).getReplyChain().handle(exchange);
+            try {
+                HandlerChain replyChain = ((ExchangeImpl)exchange).getReplyChain();
+                if (replyChain != null) {
+                    replyChain.handle(exchange);
+                }
+            } finally {
+                _inFlight.end(exchange);
+            }
             break;
         default:
             throw new IllegalStateException("Invalid phase for dispatch: " + exchange.getPhase());
@@ -84,12 +116,30 @@ class LocalDispatcher implements Dispatcher {
     }
 
     @Override
-    public void start() {
-        // NOP
+    public int getInFlightCount() {
+        return _inFlight.size();
+    }
+
+    @Override
+    public boolean awaitInFlight(long timeout) throws InterruptedException {
+        return _inFlight.await(timeout);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (_inFlight.isClosed()) {
+            _inFlight = new InFlightExchanges();
+        }
     }
 
     @Override
     public void stop() {
-        // NOP
+        stop(0);
+    }
+
+    @Override
+    public synchronized List<String> stop(long timeout) {
+        // nothing else to release, exchanges are delivered on the sender's thread
+        return _inFlight.close(timeout);
     }
 }
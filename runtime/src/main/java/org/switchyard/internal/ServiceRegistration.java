@@ -54,7 +54,12 @@ public class ServiceRegistration implements Service {
 
     @Override
     public void unregister() {
-        _registry.unregisterService(this);
+        if (_domain instanceof DomainImpl) {
+            // let the domain route new exchanges to another registration
+            ((DomainImpl)_domain).unregisterService(_reference);
+        } else {
+            _registry.unregisterService(this);
+        }
     }
 
     /**
@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.internal.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a repeated log record should be written or suppressed.
+ * <p/>
+ * Records are grouped by key.  The first record for a key within each time
+ * window is let through; the rest are counted and suppressed until the window
+ * expires.  The next record let through for that key reports how many were
+ * suppressed in the meantime.
+ */
+public class LogRateLimiter {
+
+    /**
+     * Returned by {@link #acquire(Object)} when a record should be suppressed.
+     */
+    public static final int SUPPRESSED = -1;
+
+    /**
+     * Upper bound on the number of distinct keys tracked.  Once exceeded the
+     * tracked keys are discarded, so a flood of unique faults can't grow the
+     * limiter without bound.
+     */
+    private static final int MAX_KEYS = 1024;
+
+    private final long _windowMillis;
+    private final ConcurrentHashMap<Object, Window> _windows =
+        new ConcurrentHashMap<Object, Window>();
+
+    /**
+     * Create a new rate limiter.
+     * @param windowMillis length of the suppression window in milliseconds
+     */
+    public LogRateLimiter(long windowMillis) {
+        _windowMillis = windowMillis;
+    }
+
+    /**
+     * Acquire permission to write a log record with the specified key.
+     * @param key identifies records which are considered identical (by equals)
+     * @return {@link #SUPPRESSED} if the record should not be written,
+     * otherwise the number of identical records suppressed since the last
+     * one was written
+     */
+    public int acquire(Object key) {
+        long now = System.currentTimeMillis();
+        Window window = _windows.get(key);
+        if (window == null) {
+            if (_windows.size() >= MAX_KEYS) {
+                _windows.clear();
+            }
+            window = new Window(now);
+            Window existing = _windows.putIfAbsent(key, window);
+            if (existing == null) {
+                return 0;
+            }
+            window = existing;
+        }
+        long start = window._start.get();
+        if (now - start >= _windowMillis && window._start.compareAndSet(start, now)) {
+            return window._suppressed.getAndSet(0);
+        }
+        window._suppressed.incrementAndGet();
+        return SUPPRESSED;
+    }
+
+    /**
+     * Forget all tracked keys.
+     */
+    public void reset() {
+        _windows.clear();
+    }
+
+    private static final class Window {
+        private final AtomicLong _start;
+        private final AtomicInteger _suppressed = new AtomicInteger();
+
+        private Window(long start) {
+            _start = new AtomicLong(start);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.internal.logging;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Logging facade used on the runtime's hot paths.
+ * <p/>
+ * Messages are written as patterns with <code>{}</code> placeholders, e.g.
+ * <pre>
+ * _log.debug("Registering service {} for component {}", name, type);
+ * </pre>
+ * The message string is only built if the level is enabled, so callers don't
+ * need to guard each statement.  The <i>Limited</i> variants additionally
+ * rate-limit identical records, so a storm of identical faults results in one
+ * record per window (see {@link #WINDOW_PROPERTY}) rather than one per fault.
+ */
+public final class RuntimeLogger {
+
+    /**
+     * System property holding the rate-limit window, in milliseconds, for
+     * repeated log records.
+     */
+    public static final String WINDOW_PROPERTY = "org.switchyard.log.rateLimitWindow";
+
+    private static final long DEFAULT_WINDOW = 10000L;
+    private static final String PLACEHOLDER = "{}";
+    private static final int ARG_LENGTH_ESTIMATE = 16;
+
+    private static LogRateLimiter _limiter =
+        new LogRateLimiter(Long.getLong(WINDOW_PROPERTY, DEFAULT_WINDOW));
+
+    private final Logger _logger;
+
+    private RuntimeLogger(Logger logger) {
+        _logger = logger;
+    }
+
+    /**
+     * Get the logger for the specified class.
+     * @param type class doing the logging
+     * @return logger
+     */
+    public static RuntimeLogger getLogger(Class<?> type) {
+        return new RuntimeLogger(Logger.getLogger(type));
+    }
+
+    /**
+     * Is debug logging enabled.
+     * @return true if debug records will be written
+     */
+    public boolean isDebugEnabled() {
+        return _logger.isDebugEnabled();
+    }
+
+    /**
+     * Log a debug message.
+     * @param message message pattern
+     * @param arg pattern argument
+     */
+    public void debug(String message, Object arg) {
+        if (_logger.isDebugEnabled()) {
+            _logger.debug(format(message, arg));
+        }
+    }
+
+    /**
+     * Log a debug message.
+     * @param message message pattern
+     * @param arg1 first pattern argument
+     * @param arg2 second pattern argument
+     */
+    public void debug(String message, Object arg1, Object arg2) {
+        if (_logger.isDebugEnabled()) {
+            _logger.debug(format(message, arg1, arg2));
+        }
+    }
+
+    /**
+     * Log a debug message.
+     * @param message message pattern
+     * @param args pattern arguments
+     */
+    public void debug(String message, Object... args) {
+        if (_logger.isDebugEnabled()) {
+            _logger.debug(format(message, args));
+        }
+    }
+
+    /**
+     * Log a debug message with an exception.
+     * @param message message pattern
+     * @param arg pattern argument
+     * @param t exception
+     */
+    public void debug(String message, Object arg, Throwable t) {
+        if (_logger.isDebugEnabled()) {
+            _logger.debug(format(message, arg), t);
+        }
+    }
+
+    /**
+     * Log an info message.
+     * @param message message pattern
+     * @param args pattern arguments
+     */
+    public void info(String message, Object... args) {
+        if (_logger.isEnabledFor(Level.INFO)) {
+            _logger.info(format(message, args));
+        }
+    }
+
+    /**
+     * Log a warning.
+     * @param message message pattern
+     * @param args pattern arguments
+     */
+    public void warn(String message, Object... args) {
+        if (_logger.isEnabledFor(Level.WARN)) {
+            _logger.warn(format(message, args));
+        }
+    }
+
+    /**
+     * Log an error.
+     * @param message message pattern
+     * @param arg pattern argument
+     * @param t exception
+     */
+    public void error(String message, Object arg, Throwable t) {
+        if (_logger.isEnabledFor(Level.ERROR)) {
+            _logger.error(format(message, arg), t);
+        }
+    }
+
+    /**
+     * Log a warning, rate-limited on the specified key.
+     * @param key records with equal keys are considered identical, see
+     * {@link #limitKey(Object, Object)}
+     * @param message message pattern
+     * @param args pattern arguments
+     */
+    public void warnLimited(Object key, String message, Object... args) {
+        if (_logger.isEnabledFor(Level.WARN)) {
+            int suppressed = _limiter.acquire(key);
+            if (suppressed != LogRateLimiter.SUPPRESSED) {
+                _logger.warn(withSuppressed(format(message, args), suppressed));
+            }
+        }
+    }
+
+    /**
+     * Log a fault at error level, rate-limited on the fault type and message.
+     * The full stack trace is only written for the first occurrence of a
+     * fault in each rate-limit window.
+     * @param fault the fault
+     */
+    public void errorLimited(Throwable fault) {
+        if (_logger.isEnabledFor(Level.ERROR)) {
+            // the description is only built for the records written
+            int suppressed = _limiter.acquire(new LimitKey(fault.getClass(), fault.getMessage()));
+            if (suppressed != LogRateLimiter.SUPPRESSED) {
+                _logger.error(withSuppressed(fault.toString(), suppressed), fault);
+            }
+        }
+    }
+
+    /**
+     * Create a rate-limit key made up of two parts, e.g. a service name and a
+     * fault type, without building a string of them.
+     * @param first first part of the key, may be null
+     * @param second second part of the key, may be null
+     * @return key, equal to the keys made up of equal parts
+     */
+    public static Object limitKey(Object first, Object second) {
+        return new LimitKey(first, second);
+    }
+
+    private static final class LimitKey {
+        private final Object _first;
+        private final Object _second;
+
+        private LimitKey(Object first, Object second) {
+            _first = first;
+            _second = second;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LimitKey)) {
+                return false;
+            }
+            LimitKey other = (LimitKey)obj;
+            return equal(_first, other._first) && equal(_second, other._second);
+        }
+
+        @Override
+        public int hashCode() {
+            return (_first != null ? _first.hashCode() : 0) * 31 + (_second != null ? _second.hashCode() : 0);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == b || (a != null && a.equals(b));
+        }
+    }
+
+    private static String withSuppressed(String message, int suppressed) {
+        if (suppressed == 0) {
+            return message;
+        }
+        return message + " [" + suppressed + " identical records suppressed]";
+    }
+
+    /**
+     * Substitute the arguments for the <code>{}</code> placeholders in the
+     * message pattern.  Surplus arguments are ignored, surplus placeholders
+     * are left as is.
+     * @param message message pattern
+     * @param args pattern arguments
+     * @return formatted message
+     */
+    static String format(String message, Object... args) {
+        if (message == null || args == null || args.length == 0) {
+            return message;
+        }
+        StringBuilder formatted = new StringBuilder(message.length() + args.length * ARG_LENGTH_ESTIMATE);
+        int start = 0;
+        for (Object arg : args) {
+            int index = message.indexOf(PLACEHOLDER, start);
+            if (index == -1) {
+                break;
+            }
+            formatted.append(message, start, index).append(arg);
+            start = index + PLACEHOLDER.length();
+        }
+        formatted.append(message, start, message.length());
+        return formatted.toString();
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.internal.trace;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+import org.switchyard.Exchange;
+
+/**
+ * Always-on, in-memory exchange trace log.
+ * <p/>
+ * Trace events are written into preallocated ring buffers without locking
+ * or allocation, so the tracer can stay enabled in production.  The buffer
+ * is striped: each thread writes to one of several rings, picked by its id,
+ * so concurrent exchanges don't contend on a single cursor.  Once a ring is
+ * full its oldest events are overwritten.  The buffer contents can be dumped
+ * on demand through {@link #getEvents()}, {@link #dump()} or the
+ * {@link ExchangeTracerMBean} registered under {@link #OBJECT_NAME} while a
+ * service domain is {@link #registerMBean() using} the tracer.
+ * <p/>
+ * The tracer is configured through the following system properties:
+ * <ul>
+ * <li>{@link #ENABLED_PROPERTY} - "false" disables tracing (default "true")
+ * <li>{@link #CAPACITY_PROPERTY} - buffer size, rounded up to a power of two (default 8192)
+ * <li>{@link #SAMPLE_RATE_PROPERTY} - trace one in every N exchanges (default 1)
+ * </ul>
+ */
+public final class ExchangeTracer implements ExchangeTracerMBean {
+
+    /**
+     * System property used to enable/disable tracing.
+     */
+    public static final String ENABLED_PROPERTY = "org.switchyard.trace.enabled";
+    /**
+     * System property used to set the trace buffer capacity.
+     */
+    public static final String CAPACITY_PROPERTY = "org.switchyard.trace.capacity";
+    /**
+     * System property used to set the trace sample rate.
+     */
+    public static final String SAMPLE_RATE_PROPERTY = "org.switchyard.trace.sampleRate";
+    /**
+     * JMX name of the tracer MBean.
+     */
+    public static final String OBJECT_NAME = "org.switchyard:type=ExchangeTracer";
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    // slot sequences which never match an event: the slot is empty, or being written
+    private static final long EMPTY = -1L;
+    private static final long BUSY = -2L;
+
+    private static Logger _log = Logger.getLogger(ExchangeTracer.class);
+    private static final ExchangeTracer INSTANCE = new ExchangeTracer(
+            Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY),
+            Runtime.getRuntime().availableProcessors(),
+            Integer.getInteger(SAMPLE_RATE_PROPERTY, 1),
+            Boolean.valueOf(System.getProperty(ENABLED_PROPERTY, "true")));
+
+    private final Ring[] _rings;
+    private final int _ringMask;
+    private volatile boolean _enabled;
+    private volatile int _sampleRate;
+    private int _registrations;
+
+    /**
+     * Create a new tracer with a single ring.  Most callers should use the
+     * shared {@link #getInstance() instance} rather than creating their own.
+     * @param capacity number of events held before the buffer wraps; rounded
+     * up to the next power of two
+     * @param sampleRate trace one in every <i>sampleRate</i> exchanges
+     * @param enabled whether tracing is initially enabled
+     */
+    public ExchangeTracer(int capacity, int sampleRate, boolean enabled) {
+        this(capacity, 1, sampleRate, enabled);
+    }
+
+    /**
+     * Create a new tracer.  Most callers should use the shared
+     * {@link #getInstance() instance} rather than creating their own.
+     * @param capacity number of events held before the buffer wraps; rounded
+     * up to the next power of two
+     * @param stripes number of rings the capacity is split between; rounded
+     * up to the next power of two, but no more than the capacity
+     * @param sampleRate trace one in every <i>sampleRate</i> exchanges
+     * @param enabled whether tracing is initially enabled
+     */
+    public ExchangeTracer(int capacity, int stripes, int sampleRate, boolean enabled) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Trace buffer capacity must be greater than zero.");
+        }
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Trace buffer stripes must be greater than zero.");
+        }
+        int size = powerOfTwo(capacity);
+        int rings = Math.min(powerOfTwo(stripes), size);
+        _rings = new Ring[rings];
+        for (int i = 0; i < rings; i++) {
+            _rings[i] = new Ring(size / rings);
+        }
+        _ringMask = rings - 1;
+        setSampleRate(sampleRate);
+        _enabled = enabled;
+    }
+
+    private static int powerOfTwo(int value) {
+        int power = Integer.highestOneBit(value);
+        return power < value ? power << 1 : power;
+    }
+
+    /**
+     * The shared, runtime-wide tracer instance.
+     * @return exchange tracer
+     */
+    public static ExchangeTracer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record a trace event for the specified exchange.  This method is cheap
+     * enough to call from the exchange hot path: it returns immediately when
+     * tracing is disabled or the exchange is not sampled, and it never
+     * allocates.
+     * @param exchange exchange being traced
+     * @param type event type
+     * @param detail event detail, may be null
+     */
+    public void trace(Exchange exchange, TraceEvent.Type type, String detail) {
+        if (_enabled) {
+            trace(exchange.getId(), type, detail);
+        }
+    }
+
+    /**
+     * Record a trace event for the specified exchange id.
+     * @param exchangeId id of the exchange being traced
+     * @param type event type
+     * @param detail event detail, may be null
+     */
+    public void trace(String exchangeId, TraceEvent.Type type, String detail) {
+        if (!_enabled || exchangeId == null || !isSampled(exchangeId)) {
+            return;
+        }
+        _rings[(int)Thread.currentThread().getId() & _ringMask].write(exchangeId, type, detail);
+    }
+
+    private boolean isSampled(String exchangeId) {
+        int rate = _sampleRate;
+        return rate == 1 || (exchangeId.hashCode() & Integer.MAX_VALUE) % rate == 0;
+    }
+
+    /**
+     * Take a snapshot of the events currently held in the trace buffer.
+     * Events being written while the snapshot is taken are skipped.
+     * @return trace events, oldest first
+     */
+    public List<TraceEvent> getEvents() {
+        return getEvents(null);
+    }
+
+    /**
+     * Take a snapshot of the events currently held in the trace buffer for
+     * a single exchange.
+     * @param exchangeId exchange id, or null for all exchanges
+     * @return trace events, oldest first
+     */
+    public List<TraceEvent> getEvents(String exchangeId) {
+        List<TraceEvent> events = new ArrayList<TraceEvent>();
+        for (Ring ring : _rings) {
+            ring.read(exchangeId, events);
+        }
+        // sequences are per ring, so events are ordered by time first
+        Collections.sort(events, new Comparator<TraceEvent>() {
+            public int compare(TraceEvent e1, TraceEvent e2) {
+                long d = e1.getTimestamp() - e2.getTimestamp();
+                if (d == 0) {
+                    d = e1.getSequence() - e2.getSequence();
+                }
+                return d < 0 ? -1 : (d == 0 ? 0 : 1);
+            }
+        });
+        return events;
+    }
+
+    @Override
+    public String dump() {
+        return format(getEvents());
+    }
+
+    @Override
+    public String dump(String exchangeId) {
+        return format(getEvents(exchangeId));
+    }
+
+    private String format(List<TraceEvent> events) {
+        StringBuilder dump = new StringBuilder();
+        if (!events.isEmpty()) {
+            long start = events.get(0).getTimestamp();
+            for (TraceEvent event : events) {
+                long offset = TimeUnit.NANOSECONDS.toMicros(event.getTimestamp() - start);
+                dump.append('+').append(offset).append("us ").append(event).append('\n');
+            }
+        }
+        return dump.toString();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        _enabled = enabled;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return _sampleRate;
+    }
+
+    @Override
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Trace sample rate must be greater than zero.");
+        }
+        _sampleRate = sampleRate;
+    }
+
+    @Override
+    public int getCapacity() {
+        return _rings.length * _rings[0].capacity();
+    }
+
+    @Override
+    public long getEventCount() {
+        long count = 0;
+        for (Ring ring : _rings) {
+            count += ring.count();
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (Ring ring : _rings) {
+            ring.clear();
+        }
+    }
+
+    /**
+     * Register the tracer MBean under {@link #OBJECT_NAME}, on behalf of a
+     * service domain.  Registrations are counted: the MBean stays registered
+     * until each of them has been matched by {@link #unregisterMBean()}.
+     */
+    public synchronized void registerMBean() {
+        if (_registrations++ > 0) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            // tracing still works through the API, it just isn't visible via JMX
+            _log.debug("Unable to register exchange tracer MBean '" + OBJECT_NAME + "'.", e);
+        }
+    }
+
+    /**
+     * Release a registration made with {@link #registerMBean()}, unregistering
+     * the tracer MBean once no service domain is using it.
+     */
+    public synchronized void unregisterMBean() {
+        if (_registrations == 0 || --_registrations > 0) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            _log.debug("Unable to unregister exchange tracer MBean '" + OBJECT_NAME + "'.", e);
+        }
+    }
+
+    /**
+     * Number of registrations made with {@link #registerMBean()} which are
+     * still outstanding.
+     * @return registration count
+     */
+    synchronized int getRegistrations() {
+        return _registrations;
+    }
+
+    /**
+     * One stripe of the trace buffer.  A writer claims a slot by swapping its
+     * sequence for BUSY, and publishes the slot's sequence once the event
+     * fields are written; readers only keep events whose sequence is the same
+     * before and after reading the fields, so an event overwritten (even by a
+     * writer which lapped another) is never returned torn.
+     */
+    private static final class Ring {
+
+        private final int _mask;
+        private final AtomicLong _cursor = new AtomicLong();
+        // events with a lower sequence were cleared
+        private volatile long _base;
+        private final AtomicLongArray _sequences;
+        private final AtomicLongArray _timestamps;
+        private final AtomicReferenceArray<String> _exchangeIds;
+        private final AtomicReferenceArray<TraceEvent.Type> _types;
+        private final AtomicReferenceArray<String> _details;
+
+        private Ring(int capacity) {
+            _mask = capacity - 1;
+            _sequences = new AtomicLongArray(capacity);
+            _timestamps = new AtomicLongArray(capacity);
+            _exchangeIds = new AtomicReferenceArray<String>(capacity);
+            _types = new AtomicReferenceArray<TraceEvent.Type>(capacity);
+            _details = new AtomicReferenceArray<String>(capacity);
+            for (int i = 0; i < capacity; i++) {
+                _sequences.set(i, EMPTY);
+            }
+        }
+
+        private int capacity() {
+            return _mask + 1;
+        }
+
+        private long count() {
+            return _cursor.get() - _base;
+        }
+
+        private void write(String exchangeId, TraceEvent.Type type, String detail) {
+            long sequence = _cursor.getAndIncrement();
+            int slot = (int)(sequence & _mask);
+            long published = _sequences.get(slot);
+            // a slot still being written, or already holding a newer event, is
+            // left alone: the event is lost, as it would be on the next wrap
+            if (published == BUSY || published > sequence
+                    || !_sequences.compareAndSet(slot, published, BUSY)) {
+                return;
+            }
+            _timestamps.lazySet(slot, System.nanoTime());
+            _exchangeIds.lazySet(slot, exchangeId);
+            _types.lazySet(slot, type);
+            _details.lazySet(slot, detail);
+            _sequences.set(slot, sequence);
+        }
+
+        private void read(String exchangeId, List<TraceEvent> events) {
+            long base = _base;
+            for (int slot = 0; slot <= _mask; slot++) {
+                long sequence = _sequences.get(slot);
+                if (sequence < base) {
+                    // empty, being written, or cleared
+                    continue;
+                }
+                long timestamp = _timestamps.get(slot);
+                String id = _exchangeIds.get(slot);
+                TraceEvent.Type type = _types.get(slot);
+                String detail = _details.get(slot);
+                if (_sequences.get(slot) != sequence) {
+                    // overwritten while we were reading it
+                    continue;
+                }
+                if (exchangeId == null || exchangeId.equals(id)) {
+                    events.add(new TraceEvent(sequence, timestamp, id, type, detail));
+                }
+            }
+        }
+
+        private void clear() {
+            _base = _cursor.get();
+            for (int slot = 0; slot <= _mask; slot++) {
+                // claim the slot like a writer would, so no event is torn
+                long published = _sequences.get(slot);
+                if (published >= 0 && published < _base
+                        && _sequences.compareAndSet(slot, published, BUSY)) {
+                    _exchangeIds.lazySet(slot, null);
+                    _details.lazySet(slot, null);
+                    _sequences.set(slot, EMPTY);
+                }
+            }
+        }
+    }
+}
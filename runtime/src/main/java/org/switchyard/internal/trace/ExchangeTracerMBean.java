@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.internal.trace;
+
+/**
+ * JMX management interface for the {@link ExchangeTracer}.
+ */
+public interface ExchangeTracerMBean {
+
+    /**
+     * Is exchange tracing currently enabled.
+     * @return true if trace events are being recorded
+     */
+    boolean isEnabled();
+
+    /**
+     * Enable or disable exchange tracing.
+     * @param enabled true to record trace events
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * The sample rate, i.e. one in every <i>sampleRate</i> exchanges is traced.
+     * @return sample rate
+     */
+    int getSampleRate();
+
+    /**
+     * Set the sample rate.  A rate of 1 traces every exchange.
+     * @param sampleRate sample rate, must be greater than zero
+     */
+    void setSampleRate(int sampleRate);
+
+    /**
+     * The number of events the trace buffer can hold before wrapping.
+     * @return buffer capacity
+     */
+    int getCapacity();
+
+    /**
+     * Total number of events recorded since the tracer was created or cleared.
+     * @return recorded event count
+     */
+    long getEventCount();
+
+    /**
+     * Dump the current contents of the trace buffer.
+     * @return one line per trace event, oldest first
+     */
+    String dump();
+
+    /**
+     * Dump the trace events recorded for a single exchange.
+     * @param exchangeId exchange id
+     * @return one line per trace event, oldest first
+     */
+    String dump(String exchangeId);
+
+    /**
+     * Discard all recorded trace events.
+     */
+    void clear();
+}
@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.internal.trace;
+
+/**
+ * A single exchange trace event, as read back out of the {@link ExchangeTracer}
+ * ring buffer.  Instances are only created when the buffer is dumped; the
+ * tracing hot path never allocates events.
+ */
+public class TraceEvent {
+
+    /**
+     * The kind of exchange activity recorded by a trace event.
+     */
+    public enum Type {
+        /** A message was sent on the exchange. */
+        SEND,
+        /** A fault was sent on the exchange. */
+        SEND_FAULT,
+        /** The exchange was handed to a dispatcher. */
+        DISPATCH,
+        /** A handler in a handler chain was entered. */
+        HANDLER_ENTER,
+        /** A handler in a handler chain returned. */
+        HANDLER_EXIT,
+        /** A handler in a handler chain threw an exception. */
+        HANDLER_FAULT,
+        /** Transformation of the exchange message started. */
+        TRANSFORM_ENTER,
+        /** Transformation of the exchange message completed. */
+        TRANSFORM_EXIT
+    }
+
+    private final long _sequence;
+    private final long _timestamp;
+    private final String _exchangeId;
+    private final Type _type;
+    private final String _detail;
+
+    /**
+     * Create a new trace event.
+     * @param sequence position of the event in its ring of the trace log
+     * @param timestamp event time, as reported by {@link System#nanoTime()}
+     * @param exchangeId id of the traced exchange
+     * @param type event type
+     * @param detail event detail (handler name, exchange phase, etc.), may be null
+     */
+    public TraceEvent(long sequence, long timestamp, String exchangeId, Type type, String detail) {
+        _sequence = sequence;
+        _timestamp = timestamp;
+        _exchangeId = exchangeId;
+        _type = type;
+        _detail = detail;
+    }
+
+    /**
+     * Position of this event in its ring of the trace log.  Events written by
+     * threads using different rings are ordered by their timestamps instead.
+     * @return event sequence number
+     */
+    public long getSequence() {
+        return _sequence;
+    }
+
+    /**
+     * The event time in nanoseconds.  Only meaningful relative to other
+     * events from the same JVM.
+     * @return event timestamp
+     */
+    public long getTimestamp() {
+        return _timestamp;
+    }
+
+    /**
+     * The id of the exchange this event was recorded for.
+     * @return exchange id
+     */
+    public String getExchangeId() {
+        return _exchangeId;
+    }
+
+    /**
+     * The event type.
+     * @return event type
+     */
+    public Type getType() {
+        return _type;
+    }
+
+    /**
+     * Event detail, e.g. the handler name for handler events.
+     * @return event detail, or null if there is none
+     */
+    public String getDetail() {
+        return _detail;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + _sequence + " " + _exchangeId + " " + _type
+            + (_detail != null ? " " + _detail : "");
+    }
+}
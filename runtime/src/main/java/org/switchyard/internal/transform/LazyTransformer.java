@@ -0,0 +1,130 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.internal.transform;
+
+import java.util.concurrent.Callable;
+
+import javax.xml.namespace.QName;
+
+import org.switchyard.transform.Transformer;
+
+/**
+ * Transformer which is only constructed when it is first used.
+ * <p/>
+ * The proxy answers {@link #getFrom()} and {@link #getTo()} itself, so it can be
+ * registered in (and removed from) a {@link BaseTransformerRegistry} without
+ * constructing the real transformer.  Anything else constructs the real
+ * transformer, once, through the supplied factory.  If construction fails, the
+ * failure is thrown to the caller and construction is retried on the next use.
+ *
+ * @param <F> Java type representing the from, or source, format
+ * @param <T> Java type representing the to, or target, format
+ */
+public class LazyTransformer<F, T> implements Transformer<F, T> {
+
+    private final QName _from;
+    private final QName _to;
+    private final Callable<Transformer<F, T>> _factory;
+    private volatile Transformer<F, T> _transformer;
+
+    /**
+     * Create a new lazy transformer.
+     * @param from the name of the from message
+     * @param to the name of the to message
+     * @param factory constructs the real transformer, which must transform from and to the same messages
+     */
+    public LazyTransformer(QName from, QName to, Callable<Transformer<F, T>> factory) {
+        _from = from;
+        _to = to;
+        _factory = factory;
+    }
+
+    @Override
+    public T transform(F from) {
+        return getTransformer().transform(from);
+    }
+
+    @Override
+    public Class<F> getFromType() {
+        return getTransformer().getFromType();
+    }
+
+    @Override
+    public Class<T> getToType() {
+        return getTransformer().getToType();
+    }
+
+    @Override
+    public QName getFrom() {
+        return _from;
+    }
+
+    @Override
+    public QName getTo() {
+        return _to;
+    }
+
+    /**
+     * Has the real transformer been constructed yet.
+     * @return true if it has
+     */
+    public boolean isConstructed() {
+        return _transformer != null;
+    }
+
+    /**
+     * Get the real transformer, constructing it if that hasn't happened yet.
+     * @return the real transformer
+     */
+    public Transformer<F, T> getTransformer() {
+        Transformer<F, T> transformer = _transformer;
+        if (transformer != null) {
+            return transformer;
+        }
+        return construct();
+    }
+
+    private synchronized Transformer<F, T> construct() {
+        if (_transformer == null) {
+            Transformer<F, T> transformer;
+            try {
+                transformer = _factory.call();
+            } catch (RuntimeException re) {
+                throw re;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to construct Transformer for " + _from + " -> " + _to + ".", e);
+            }
+            // the registry has it under our names, so it had better use the same ones
+            if ((transformer.getFrom() != null && !transformer.getFrom().equals(_from))
+                    || (transformer.getTo() != null && !transformer.getTo().equals(_to))) {
+                throw new IllegalStateException("Transformer " + transformer.getClass().getName() + " transforms "
+                        + transformer.getFrom() + " -> " + transformer.getTo() + ", but was configured for "
+                        + _from + " -> " + _to + ".");
+            }
+            _transformer = transformer;
+        }
+        return _transformer;
+    }
+
+    @Override
+    public String toString() {
+        return "LazyTransformer(" + _from + " -> " + _to + (_transformer != null ? ", " + _transformer : "") + ")";
+    }
+}
@@ -19,6 +19,8 @@
 
 package org.switchyard.spi;
 
+import java.util.List;
+
 import org.switchyard.Exchange;
 import org.switchyard.ServiceReference;
 
@@ -38,6 +40,21 @@ public interface Dispatcher {
      * @param exchange exchange
      */
     void dispatch(Exchange exchange);
+
+    /**
+     * The number of exchanges in flight through this dispatcher, i.e.
+     * dispatched to the service and, for IN_OUT exchanges, not yet replied to.
+     * @return number of exchanges in flight
+     */
+    int getInFlightCount();
+
+    /**
+     * Wait for the exchanges in flight through this dispatcher to complete.
+     * @param timeout maximum time to wait, in milliseconds
+     * @return true if no exchanges are in flight, false if the timeout expired first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitInFlight(long timeout) throws InterruptedException;
     
     /**
      * Starts delivery of exchanges via this dispatcher.
@@ -45,7 +62,19 @@ public interface Dispatcher {
     void start();
     
     /**
-     * Stops deliver of exchanges vis this dispatcher.
+     * Stops delivery of exchanges via this dispatcher, without waiting for the
+     * exchanges in flight, i.e. <code>stop(0)</code>.
      */
     void stop();
+
+    /**
+     * Stops delivery of exchanges via this dispatcher gracefully.  New
+     * exchanges are refused at once, and the exchanges in flight (including
+     * any queued for delivery) are given up to the timeout to complete before
+     * the resources of the dispatcher are released.
+     * @param timeout maximum time to wait, in milliseconds
+     * @return the ids of the exchanges abandoned at the timeout, empty if all
+     * of them completed
+     */
+    List<String> stop(long timeout);
 }
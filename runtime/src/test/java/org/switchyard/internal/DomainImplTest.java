@@ -19,6 +19,10 @@
 
 package org.switchyard.internal;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
 import javax.xml.namespace.QName;
 
 import junit.framework.Assert;
@@ -32,6 +36,7 @@ import org.switchyard.ServiceReference;
 import org.switchyard.metadata.ExchangeContract;
 import org.switchyard.metadata.ServiceInterface;
 import org.switchyard.metadata.java.JavaService;
+import org.switchyard.spi.Dispatcher;
 
 /**
  *  Unit tests for the DomainImpl class.
@@ -85,6 +90,104 @@ public class DomainImplTest {
         ServiceReference service = _domain.getService(SERVICE);
         Assert.assertNotNull(service);
     }
+
+    @Test
+    public void testUnregisterServiceSwitchesToNextRegistration() {
+        MockHandler v1 = new MockHandler();
+        MockHandler v2 = new MockHandler();
+        ServiceReference service1 = _domain.registerService(new QName("versioned"), v1);
+        ServiceReference service2 = _domain.registerService(new QName("versioned"), v2);
+
+        // the earliest registration is used until it is unregistered...
+        Assert.assertSame(service1, _domain.getService(new QName("versioned")));
+        Exchange exchange = _domain.createExchange(service2, ExchangeContract.IN_ONLY);
+        exchange.send(exchange.createMessage());
+        Assert.assertEquals(1, v1.getMessages().size());
+
+        List<Dispatcher> dispatchers = _domain.unregisterServices(Collections.singletonList(service1));
+        Assert.assertEquals(1, dispatchers.size());
+
+        // ... and then the next
+        Assert.assertSame(service2, _domain.getService(new QName("versioned")));
+        exchange = _domain.createExchange(service1, ExchangeContract.IN_ONLY);
+        exchange.send(exchange.createMessage());
+        Assert.assertEquals(1, v1.getMessages().size());
+        Assert.assertEquals(1, v2.getMessages().size());
+
+        _domain.unregisterService(service2);
+        Assert.assertNull(_domain.getService(new QName("versioned")));
+    }
+
+    @Test
+    public void testInFlightExchanges() throws InterruptedException {
+        MockHandler provider = new MockHandler();
+        ServiceReference service = _domain.registerService(new QName("in-flight"), provider);
+        Exchange exchange = _domain.createExchange(service, ExchangeContract.IN_OUT, new MockHandler());
+        Dispatcher dispatcher = ((ExchangeImpl)exchange).getDispatcher();
+        exchange.send(exchange.createMessage());
+
+        // in flight until the provider replies
+        Assert.assertEquals(1, dispatcher.getInFlightCount());
+        Assert.assertFalse(dispatcher.awaitInFlight(10));
+        Exchange received = provider.getMessages().poll();
+        received.send(received.createMessage());
+        Assert.assertEquals(0, dispatcher.getInFlightCount());
+        Assert.assertTrue(dispatcher.awaitInFlight(0));
+    }
+
+    @Test
+    public void testFaultWithoutReplyHandler() {
+        MockHandler provider = new MockHandler();
+        ServiceReference service = _domain.registerService(new QName("fault-without-reply"), provider);
+        Dispatcher dispatcher = ((ExchangeImpl)_domain.createExchange(service, ExchangeContract.IN_ONLY)).getDispatcher();
+
+        // an IN_OUT exchange without a reply chain, as when deserialized...
+        Exchange exchange = new ExchangeImpl(UUID.randomUUID().toString(), dispatcher, null, ExchangeContract.IN_OUT);
+        exchange.send(exchange.createMessage());
+        Assert.assertEquals(0, dispatcher.getInFlightCount());
+
+        // ... isn't left in flight when it faults later on
+        Exchange received = provider.getMessages().poll();
+        received.sendFault(received.createMessage());
+        Assert.assertEquals(0, dispatcher.getInFlightCount());
+        Assert.assertTrue(dispatcher.stop(0).isEmpty());
+    }
+
+    @Test
+    public void testGracefulStop() {
+        MockHandler provider = new MockHandler();
+        ServiceReference service = _domain.registerService(new QName("graceful"), provider);
+        Exchange exchange = _domain.createExchange(service, ExchangeContract.IN_OUT, new MockHandler());
+        Dispatcher dispatcher = ((ExchangeImpl)exchange).getDispatcher();
+        exchange.send(exchange.createMessage());
+
+        // the exchange awaiting its reply is abandoned at the timeout...
+        Assert.assertEquals(Collections.singletonList(exchange.getId()), dispatcher.stop(10));
+
+        // ... and new exchanges are refused
+        Exchange refused = _domain.createExchange(service, ExchangeContract.IN_ONLY);
+        try {
+            refused.send(refused.createMessage());
+            Assert.fail("Expected the stopped dispatcher to refuse the exchange.");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(1, provider.getMessages().size());
+        }
+    }
+
+    @Test
+    public void testRestart() {
+        MockHandler provider = new MockHandler();
+        ServiceReference service = _domain.registerService(new QName("restart"), provider);
+        Exchange exchange = _domain.createExchange(service, ExchangeContract.IN_ONLY);
+        Dispatcher dispatcher = ((ExchangeImpl)exchange).getDispatcher();
+        dispatcher.stop(0);
+
+        // a restarted dispatcher admits exchanges again
+        dispatcher.start();
+        exchange.send(exchange.createMessage());
+        Assert.assertEquals(1, provider.getMessages().size());
+        Assert.assertEquals(0, dispatcher.getInFlightCount());
+    }
     
 }
 
@@ -0,0 +1,74 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.internal.logging;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ *  Unit tests for RuntimeLogger and LogRateLimiter.
+ */
+public class RuntimeLoggerTest {
+
+    @Test
+    public void testFormat() {
+        Assert.assertEquals("a 1 b 2", RuntimeLogger.format("a {} b {}", 1, 2));
+        Assert.assertEquals("a 1 b {}", RuntimeLogger.format("a {} b {}", 1));
+        Assert.assertEquals("a 1", RuntimeLogger.format("a {}", 1, 2));
+        Assert.assertEquals("null arg", RuntimeLogger.format("{} arg", (Object)null));
+        Assert.assertEquals("no args", RuntimeLogger.format("no args"));
+    }
+
+    @Test
+    public void testRepeatedRecordsSuppressed() {
+        LogRateLimiter limiter = new LogRateLimiter(60000);
+        Assert.assertEquals(0, limiter.acquire("fault"));
+        Assert.assertEquals(LogRateLimiter.SUPPRESSED, limiter.acquire("fault"));
+        Assert.assertEquals(LogRateLimiter.SUPPRESSED, limiter.acquire("fault"));
+        // a different key is not affected
+        Assert.assertEquals(0, limiter.acquire("other"));
+    }
+
+    @Test
+    public void testSuppressedCountReported() throws Exception {
+        LogRateLimiter limiter = new LogRateLimiter(0);
+        Assert.assertEquals(0, limiter.acquire("fault"));
+        Thread.sleep(2);
+        Assert.assertEquals(0, limiter.acquire("fault"));
+
+        limiter = new LogRateLimiter(50);
+        limiter.acquire("fault");
+        limiter.acquire("fault");
+        limiter.acquire("fault");
+        Thread.sleep(60);
+        Assert.assertEquals(2, limiter.acquire("fault"));
+    }
+
+    @Test
+    public void testLimitKeys() {
+        LogRateLimiter limiter = new LogRateLimiter(60000);
+        Assert.assertEquals(0, limiter.acquire(RuntimeLogger.limitKey("service", IllegalStateException.class)));
+        Assert.assertEquals(LogRateLimiter.SUPPRESSED, limiter.acquire(RuntimeLogger.limitKey("service", IllegalStateException.class)));
+        // the same fault from another service, or another fault from the same service, is not affected
+        Assert.assertEquals(0, limiter.acquire(RuntimeLogger.limitKey("other", IllegalStateException.class)));
+        Assert.assertEquals(0, limiter.acquire(RuntimeLogger.limitKey("service", null)));
+    }
+}
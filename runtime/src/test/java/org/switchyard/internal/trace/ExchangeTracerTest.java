@@ -0,0 +1,170 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved.
+ * See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU Lesser General Public License, v. 2.1.
+ * This program is distributed in the hope that it will be useful, but WITHOUT A
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ * You should have received a copy of the GNU Lesser General Public License,
+ * v.2.1 along with this distribution; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.internal.trace;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.ObjectName;
+import javax.xml.namespace.QName;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.switchyard.Exchange;
+import org.switchyard.MockDomain;
+import org.switchyard.MockHandler;
+import org.switchyard.ServiceDomain;
+import org.switchyard.ServiceReference;
+import org.switchyard.internal.DomainImpl;
+import org.switchyard.metadata.ExchangeContract;
+
+/**
+ *  Unit tests for the ExchangeTracer class.
+ */
+public class ExchangeTracerTest {
+
+    @Test
+    public void testCapacityRoundedToPowerOfTwo() {
+        Assert.assertEquals(16, new ExchangeTracer(10, 1, true).getCapacity());
+        Assert.assertEquals(16, new ExchangeTracer(16, 1, true).getCapacity());
+    }
+
+    @Test
+    public void testEventsInOrder() {
+        ExchangeTracer tracer = new ExchangeTracer(8, 1, true);
+        tracer.trace("ex1", TraceEvent.Type.SEND, "IN");
+        tracer.trace("ex2", TraceEvent.Type.SEND, "IN");
+        tracer.trace("ex1", TraceEvent.Type.HANDLER_ENTER, "provider");
+
+        List<TraceEvent> events = tracer.getEvents();
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals(TraceEvent.Type.SEND, events.get(0).getType());
+        Assert.assertEquals("provider", events.get(2).getDetail());
+
+        List<TraceEvent> ex1Events = tracer.getEvents("ex1");
+        Assert.assertEquals(2, ex1Events.size());
+    }
+
+    @Test
+    public void testBufferWraps() {
+        ExchangeTracer tracer = new ExchangeTracer(4, 1, true);
+        for (int i = 0; i < 10; i++) {
+            tracer.trace("ex" + i, TraceEvent.Type.SEND, null);
+        }
+        List<TraceEvent> events = tracer.getEvents();
+        Assert.assertEquals(4, events.size());
+        Assert.assertEquals("ex6", events.get(0).getExchangeId());
+        Assert.assertEquals("ex9", events.get(3).getExchangeId());
+        Assert.assertEquals(10, tracer.getEventCount());
+    }
+
+    @Test
+    public void testDisabled() {
+        ExchangeTracer tracer = new ExchangeTracer(4, 1, false);
+        tracer.trace("ex1", TraceEvent.Type.SEND, null);
+        Assert.assertTrue(tracer.getEvents().isEmpty());
+        Assert.assertEquals("", tracer.dump());
+    }
+
+    @Test
+    public void testClear() {
+        ExchangeTracer tracer = new ExchangeTracer(4, 1, true);
+        tracer.trace("ex1", TraceEvent.Type.SEND, null);
+        tracer.clear();
+        Assert.assertTrue(tracer.getEvents().isEmpty());
+        Assert.assertEquals(0, tracer.getEventCount());
+    }
+
+    @Test
+    public void testExchangeIsTraced() {
+        ServiceDomain domain = new MockDomain();
+        ServiceReference service = domain.registerService(
+                new QName("TracedService"), new MockHandler());
+        Exchange exchange = domain.createExchange(service, ExchangeContract.IN_ONLY);
+        exchange.send(exchange.createMessage());
+
+        String dump = ExchangeTracer.getInstance().dump(exchange.getId());
+        Assert.assertTrue(dump, dump.contains("SEND IN"));
+        Assert.assertTrue(dump, dump.contains("HANDLER_ENTER provider"));
+        Assert.assertTrue(dump, dump.contains("HANDLER_EXIT provider"));
+    }
+
+    @Test
+    public void testStripedCapacity() {
+        ExchangeTracer tracer = new ExchangeTracer(16, 4, 1, true);
+        Assert.assertEquals(16, tracer.getCapacity());
+        // no more rings than slots
+        Assert.assertEquals(2, new ExchangeTracer(2, 8, 1, true).getCapacity());
+    }
+
+    @Test
+    public void testConcurrentWritesNotTorn() throws Exception {
+        final ExchangeTracer tracer = new ExchangeTracer(64, 2, 1, true);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            final String prefix = "t" + i + "-";
+            writers[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    for (int j = 0; j < 20000; j++) {
+                        String id = prefix + j;
+                        tracer.trace(id, TraceEvent.Type.SEND, id);
+                    }
+                }
+            };
+            writers[i].start();
+        }
+        start.countDown();
+        int read = 0;
+        while (writers[writers.length - 1].isAlive() || read == 0) {
+            for (TraceEvent event : tracer.getEvents()) {
+                // the detail is written separately from the id, so a torn event shows
+                Assert.assertEquals(event.getExchangeId(), event.getDetail());
+                read++;
+            }
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        Assert.assertTrue(read > 0);
+        Assert.assertEquals(4 * 20000, tracer.getEventCount());
+    }
+
+    @Test
+    public void testMBeanRegisteredWhileDomainsLive() throws Exception {
+        ExchangeTracer tracer = ExchangeTracer.getInstance();
+        ObjectName name = new ObjectName(ExchangeTracer.OBJECT_NAME);
+        int registrations = tracer.getRegistrations();
+        DomainImpl domain = new MockDomain();
+        Assert.assertEquals(registrations + 1, tracer.getRegistrations());
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        domain.destroy();
+        domain.destroy();
+        Assert.assertEquals(registrations, tracer.getRegistrations());
+        Assert.assertEquals(registrations > 0, ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
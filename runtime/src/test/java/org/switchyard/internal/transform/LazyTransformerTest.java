@@ -0,0 +1,106 @@
+/* 
+ * JBoss, Home of Professional Open Source 
+ * Copyright 2011 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @author tags. All rights reserved. 
+ * See the copyright.txt in the distribution for a 
+ * full listing of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use, 
+ * modify, copy, or redistribute it subject to the terms and conditions 
+ * of the GNU Lesser General Public License, v. 2.1. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT A 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details. 
+ * You should have received a copy of the GNU Lesser General Public License, 
+ * v.2.1 along with this distribution; if not, write to the Free Software 
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, 
+ * MA  02110-1301, USA.
+ */
+
+package org.switchyard.internal.transform;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.switchyard.transform.BaseTransformer;
+import org.switchyard.transform.Transformer;
+
+public class LazyTransformerTest {
+
+    private static final QName FROM = new QName("a");
+    private static final QName TO = new QName("b");
+
+    @Test
+    public void testConstructedOnFirstUse() {
+        final AtomicInteger constructed = new AtomicInteger();
+        LazyTransformer<String, Integer> lazy = new LazyTransformer<String, Integer>(FROM, TO, new Callable<Transformer<String, Integer>>() {
+            public Transformer<String, Integer> call() {
+                constructed.incrementAndGet();
+                return new LengthTransformer(FROM, TO);
+            }
+        });
+
+        // registering and looking up doesn't construct it...
+        BaseTransformerRegistry registry = new BaseTransformerRegistry();
+        registry.addTransformer(lazy);
+        Assert.assertSame(lazy, registry.getTransformer(FROM, TO));
+        Assert.assertFalse(lazy.isConstructed());
+        Assert.assertEquals(0, constructed.get());
+
+        // ...using it does, once
+        Assert.assertEquals(Integer.valueOf(3), lazy.transform("abc"));
+        Assert.assertEquals(Integer.valueOf(2), lazy.transform("ab"));
+        Assert.assertEquals(String.class, lazy.getFromType());
+        Assert.assertTrue(lazy.isConstructed());
+        Assert.assertEquals(1, constructed.get());
+
+        Assert.assertTrue(registry.removeTransformer(lazy));
+    }
+
+    @Test
+    public void testFailedConstructionRetried() {
+        final AtomicInteger attempts = new AtomicInteger();
+        LazyTransformer<String, Integer> lazy = new LazyTransformer<String, Integer>(FROM, TO, new Callable<Transformer<String, Integer>>() {
+            public Transformer<String, Integer> call() throws Exception {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new Exception("not yet");
+                }
+                return new LengthTransformer(FROM, TO);
+            }
+        });
+
+        try {
+            lazy.transform("abc");
+            Assert.fail("Expected construction to fail.");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("not yet", e.getCause().getMessage());
+        }
+        Assert.assertFalse(lazy.isConstructed());
+        Assert.assertEquals(Integer.valueOf(3), lazy.transform("abc"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNamesMustMatch() {
+        new LazyTransformer<String, Integer>(FROM, TO, new Callable<Transformer<String, Integer>>() {
+            public Transformer<String, Integer> call() {
+                return new LengthTransformer(FROM, new QName("c"));
+            }
+        }).transform("abc");
+    }
+
+    private static class LengthTransformer extends BaseTransformer<String, Integer> {
+        LengthTransformer(QName from, QName to) {
+            super(from, to);
+        }
+
+        @Override
+        public Integer transform(String from) {
+            return from.length();
+        }
+    }
+}
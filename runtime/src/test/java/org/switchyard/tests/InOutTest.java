@@ -21,13 +21,17 @@ package org.switchyard.tests;
 
 import javax.xml.namespace.QName;
 
+import junit.framework.Assert;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.switchyard.Exchange;
+import org.switchyard.HandlerException;
 import org.switchyard.MockHandler;
 import org.switchyard.ServiceReference;
 import org.switchyard.ServiceDomain;
 import org.switchyard.MockDomain;
+import org.switchyard.StacklessHandlerException;
 import org.switchyard.metadata.ExchangeContract;
 
 public class InOutTest {
@@ -80,4 +84,30 @@ public class InOutTest {
         consumer.waitForFaultMessage();
         
     }
+
+    @Test
+    public void testInOutStacklessFault() throws Exception {
+
+        final QName serviceName = new QName("inOutStacklessFault");
+        final StacklessHandlerException fault = new StacklessHandlerException("invalid");
+        Assert.assertEquals(0, fault.getStackTrace().length);
+
+        // Provide the service
+        MockHandler provider = new MockHandler() {
+            @Override
+            public void handleMessage(Exchange exchange) throws HandlerException {
+                throw fault;
+            }
+        };
+        ServiceReference service = _domain.registerService(serviceName, provider);
+
+        // Consume the service
+        MockHandler consumer = new MockHandler();
+        Exchange exchange = _domain.createExchange(
+                service, ExchangeContract.IN_OUT, consumer);
+        exchange.send(exchange.createMessage());
+
+        consumer.waitForFaultMessage();
+        Assert.assertSame(fault, consumer.getFaults().poll().getMessage().getContent());
+    }
 }
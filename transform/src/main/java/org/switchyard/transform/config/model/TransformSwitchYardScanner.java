@@ -22,6 +22,9 @@ package org.switchyard.transform.config.model;
 import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import org.switchyard.config.model.Scanner;
@@ -33,6 +36,7 @@ import org.switchyard.config.model.transform.TransformsModel;
 import org.switchyard.config.model.transform.v1.V1TransformsModel;
 import org.switchyard.config.util.classpath.ClasspathScanner;
 import org.switchyard.config.util.classpath.InstanceOfFilter;
+import org.switchyard.config.util.classpath.ScanIndex;
 import org.switchyard.transform.Transformer;
 import org.switchyard.transform.config.model.v1.V1JavaTransformModel;
 import org.switchyard.transform.smooks.internal.SmooksTransformer;
@@ -94,13 +98,19 @@ public class TransformSwitchYardScanner implements Scanner<SwitchYardModel> {
 
     private List<Class<?>> scanForTransformers(List<URL> urls) throws IOException {
         InstanceOfFilter filter = new InstanceOfFilter(Transformer.class);
-        ClasspathScanner scanner = new ClasspathScanner(filter);
+        ClasspathScanner scanner = new ClasspathScanner(filter, Runtime.getRuntime().availableProcessors());
+        scanner.setIndex(ScanIndex.getDefault());
 
-        for (URL url : urls) {
-            scanner.scan(url);
-        }
+        scanner.scan(urls);
 
-        return filter.getMatchedTypes();
+        // the scan order isn't deterministic, but the generated config should be
+        List<Class<?>> transformerClasses = new ArrayList<Class<?>>(filter.getMatchedTypes());
+        Collections.sort(transformerClasses, new Comparator<Class<?>>() {
+            public int compare(Class<?> c1, Class<?> c2) {
+                return c1.getName().compareTo(c2.getName());
+            }
+        });
+        return transformerClasses;
     }
 
 }